@@ -0,0 +1,559 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+/** A B+ tree: a balanced tree whose nodes hold many keys each, kept in arrays.
+ *
+ *  Since each node holds up to a few dozen keys, finding a key takes only a few
+ *  node loads, each followed by a binary search in the node's key array, rather
+ *  than one node load per comparison. The entries are all kept in the leaves,
+ *  which are linked together, so iterating over the map is a sequential scan.
+ *
+ *  Like {@link BinaryTree}, null keys are not allowed.
+ */
+public class BTreeMap implements SortedMap {
+	/** The number of keys per node used by the constructor without one. */
+	public static final int DEFAULT_NODE_SIZE = 64;
+
+	private BTreeNode root;
+	private int size;
+	private Comparator comparator;
+	/** The most keys a node can hold. */
+	private int maxKeys;
+	/** The fewest keys a node other than the root can hold. */
+	private int minKeys;
+	/** The nodes from the root down to the last node reached by findPathTo. */
+	private BTreeNode[] pathNodes;
+	/** The index of the child followed from each node in pathNodes. */
+	private int[] pathIndices;
+
+	/** Creates a new BTreeMap, using the specified {@link Comparator} and nodes
+	 *  of {@link #DEFAULT_NODE_SIZE} keys.
+	 * @param keyComparator A Comparator to compare keys. Usually, this will be one
+	 *  of the ones provided in {@link Comparators}.
+	 */
+	public BTreeMap(Comparator keyComparator) {
+		this(keyComparator, DEFAULT_NODE_SIZE);
+	}
+
+	/** Creates a new BTreeMap, using the specified {@link Comparator} and node size.
+	 * @param keyComparator A Comparator to compare keys.
+	 * @param nodeSize The most keys each node can hold, at least 4. Larger nodes
+	 *  mean a shallower tree, but more keys to move around on every put and remove.
+	 */
+	public BTreeMap(Comparator keyComparator, int nodeSize) {
+		if(nodeSize < 4)
+			throw new IllegalArgumentException("nodeSize must be at least 4");
+		this.comparator = keyComparator;
+		this.maxKeys = nodeSize;
+		this.minKeys = nodeSize / 2;
+		pathNodes = new BTreeNode[8];
+		pathIndices = new int[8];
+		clear();
+	}
+
+	public void clear() {
+		root = newLeaf();
+		size = 0;
+	}
+
+	/** Nodes get room for one key more than they can hold, so that they can
+	 *  overflow for a moment before being split.
+	 */
+	private BTreeNode newLeaf() {
+		BTreeNode leaf = new BTreeNode(maxKeys + 1);
+		leaf.values = new Object[maxKeys + 1];
+		return leaf;
+	}
+
+	private BTreeNode newInnerNode() {
+		BTreeNode node = new BTreeNode(maxKeys + 1);
+		node.children = new BTreeNode[maxKeys + 2];
+		return node;
+	}
+
+	/** Looks for key among a node's keys, with a binary search.
+	 *
+	 * @return The key's index, if found. Otherwise, -(i + 1), where i is the
+	 *         index at which the key would be inserted.
+	 */
+	int search(BTreeNode node, Object key) {
+		int low = 0;
+		int high = node.count - 1;
+		while(low <= high) {
+			int middle = (low + high) >>> 1;
+			int compareValue = comparator.compare(key, node.keys[middle]);
+			if(compareValue == 0)
+				return middle;
+			if(compareValue < 0)
+				high = middle - 1;
+			else
+				low = middle + 1;
+		}
+		return -(low + 1);
+	}
+
+	/** Returns the index of the child of an inner node which may hold key.
+	 *  Keys equal to a separator are in the child to its right.
+	 */
+	private int childIndex(BTreeNode node, Object key) {
+		int index = search(node, key);
+		return index >= 0 ? index + 1 : -(index + 1);
+	}
+
+	/** Returns the leaf which holds key, or would hold it if it was in the map. */
+	BTreeNode findLeaf(Object key) {
+		BTreeNode curNode = root;
+		while(curNode.children != null)
+			curNode = curNode.children[childIndex(curNode, key)];
+		return curNode;
+	}
+
+	/** Goes down from the root to the leaf which may hold key, recording the way
+	 *  in pathNodes and pathIndices.
+	 *
+	 * @return The path's length. pathNodes[length - 1] is the leaf.
+	 */
+	private int findPathTo(Object key) {
+		int depth = 0;
+		BTreeNode curNode = root;
+		while(true) {
+			if(depth == pathNodes.length) {
+				BTreeNode[] newNodes = new BTreeNode[depth * 2];
+				System.arraycopy(pathNodes, 0, newNodes, 0, depth);
+				pathNodes = newNodes;
+				int[] newIndices = new int[depth * 2];
+				System.arraycopy(pathIndices, 0, newIndices, 0, depth);
+				pathIndices = newIndices;
+			}
+			pathNodes[depth] = curNode;
+			if(curNode.children == null)
+				return depth + 1;
+			int index = childIndex(curNode, key);
+			pathIndices[depth++] = index;
+			curNode = curNode.children[index];
+		}
+	}
+
+	BTreeNode firstLeaf() {
+		BTreeNode curNode = root;
+		while(curNode.children != null)
+			curNode = curNode.children[0];
+		return curNode;
+	}
+
+	BTreeNode lastLeaf() {
+		BTreeNode curNode = root;
+		while(curNode.children != null)
+			curNode = curNode.children[curNode.count];
+		return curNode;
+	}
+
+	public boolean containsKey(Object key) {
+		return search(findLeaf(key), key) >= 0;
+	}
+
+	public boolean containsValue(Object value, Comparator valueComparator) {
+		for(BTreeNode leaf = firstLeaf(); leaf != null; leaf = leaf.next) {
+			for(int i = 0; i < leaf.count; ++i) {
+				if(valueComparator.compare(value, leaf.values[i]) == 0)
+					return true;
+			}
+		}
+		return false;
+	}
+
+	public Object get(Object key) {
+		BTreeNode leaf = findLeaf(key);
+		int index = search(leaf, key);
+		return index >= 0 ? leaf.values[index] : null;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public Object firstKey() {
+		BTreeNode leaf = firstLeaf();
+		return leaf.count == 0 ? null : leaf.keys[0];
+	}
+
+	public Object lastKey() {
+		BTreeNode leaf = lastLeaf();
+		return leaf.count == 0 ? null : leaf.keys[leaf.count - 1];
+	}
+
+	/** Finds the nearest key to a given one, which is never in a leaf other than
+	 *  the key's own or one of its neighbours, since no leaf but the root is empty.
+	 *
+	 * @param below Whether to look for keys below key, rather than above.
+	 * @param inclusive Whether key itself counts.
+	 */
+	private Object findNearestKey(Object key, boolean below, boolean inclusive) {
+		BTreeNode leaf = findLeaf(key);
+		int index = search(leaf, key);
+		if(index >= 0) {
+			if(inclusive)
+				return leaf.keys[index];
+			index = below ? index - 1 : index + 1;
+		}
+		else
+			index = below ? -(index + 1) - 1 : -(index + 1);
+
+		if(index < 0)
+			return leaf.prev == null ? null : leaf.prev.keys[leaf.prev.count - 1];
+		if(index >= leaf.count)
+			return leaf.next == null ? null : leaf.next.keys[0];
+		return leaf.keys[index];
+	}
+
+	public Object floorKey(Object key) {
+		return findNearestKey(key, true, true);
+	}
+
+	public Object ceilingKey(Object key) {
+		return findNearestKey(key, false, true);
+	}
+
+	public Object lowerKey(Object key) {
+		return findNearestKey(key, true, false);
+	}
+
+	public Object higherKey(Object key) {
+		return findNearestKey(key, false, false);
+	}
+
+	public Object put(Object key, Object value) {
+		if(key == null)
+			throw new InvalidKeyException("Can't insert null keys");
+
+		int depth = findPathTo(key);
+		BTreeNode leaf = pathNodes[depth - 1];
+		int index = search(leaf, key);
+		if(index >= 0) {
+			Object oldValue = leaf.values[index];
+			leaf.values[index] = value;
+			return oldValue;
+		}
+
+		index = -(index + 1);
+		int moved = leaf.count - index;
+		System.arraycopy(leaf.keys, index, leaf.keys, index + 1, moved);
+		System.arraycopy(leaf.values, index, leaf.values, index + 1, moved);
+		leaf.keys[index] = key;
+		leaf.values[index] = value;
+		++leaf.count;
+		++size;
+
+		if(leaf.count > maxKeys)
+			split(depth);
+		return null;
+	}
+
+	/** Splits the overflowing last node in the path in two, going up the path
+	 *  for as long as the parents overflow too.
+	 *
+	 * @param depth The path's length.
+	 */
+	private void split(int depth) {
+		for(int level = depth - 1; level >= 0; --level) {
+			BTreeNode node = pathNodes[level];
+			if(node.count <= maxKeys)
+				break;
+
+			BTreeNode right;
+			Object separator;
+			int leftCount = node.count / 2;
+			if(node.children == null) {
+				right = newLeaf();
+				right.count = node.count - leftCount;
+				System.arraycopy(node.keys, leftCount, right.keys, 0, right.count);
+				System.arraycopy(node.values, leftCount, right.values, 0, right.count);
+				clear(node.keys, leftCount, node.count);
+				clear(node.values, leftCount, node.count);
+				separator = right.keys[0];
+
+				right.next = node.next;
+				right.prev = node;
+				if(node.next != null)
+					node.next.prev = right;
+				node.next = right;
+			}
+			else {
+				// the middle key moves up to the parent, rather than being copied
+				right = newInnerNode();
+				right.count = node.count - leftCount - 1;
+				separator = node.keys[leftCount];
+				System.arraycopy(node.keys, leftCount + 1, right.keys, 0, right.count);
+				System.arraycopy(node.children, leftCount + 1, right.children, 0,
+						right.count + 1);
+				clear(node.keys, leftCount, node.count);
+				clear(node.children, leftCount + 1, node.count + 1);
+			}
+			node.count = leftCount;
+
+			if(level == 0) {
+				root = newInnerNode();
+				root.keys[0] = separator;
+				root.children[0] = node;
+				root.children[1] = right;
+				root.count = 1;
+			}
+			else
+				insertChild(pathNodes[level - 1], pathIndices[level - 1], separator, right);
+		}
+	}
+
+	/** Inserts a key and the child to its right into an inner node, right after
+	 *  the child at index.
+	 */
+	private static void insertChild(BTreeNode node, int index, Object key, BTreeNode child) {
+		int moved = node.count - index;
+		System.arraycopy(node.keys, index, node.keys, index + 1, moved);
+		System.arraycopy(node.children, index + 1, node.children, index + 2, moved);
+		node.keys[index] = key;
+		node.children[index + 1] = child;
+		++node.count;
+	}
+
+	private static void clear(Object[] array, int from, int to) {
+		for(int i = from; i < to; ++i)
+			array[i] = null;
+	}
+
+	public void putAll(Map other) {
+		if(comparator != other.getKeyComparator())
+			throw new InvalidOperationException(
+					"putAll can't work on maps with different comparators");
+		MapIterator it = other.iterator();
+		while(it.hasNext()) {
+			Map.Entry entry = it.next();
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	public boolean equals(Object other) {
+		if(!(other instanceof Map))
+			return false;
+
+		Map otherMap = (Map)other;
+		if(otherMap.size() != size)
+			return false;
+
+		MapIterator it = otherMap.iterator();
+		while(it.hasNext()) {
+			Map.Entry cur = it.next();
+			BTreeNode leaf = findLeaf(cur.getKey());
+			int index = search(leaf, cur.getKey());
+			if(index < 0)
+				return false;
+			Object value = cur.getValue();
+			if(value == null ? leaf.values[index] != null : !value.equals(leaf.values[index]))
+				return false;
+		}
+		return true;
+	}
+
+	public int hashCode() {
+		int result = 0;
+		for(BTreeNode leaf = firstLeaf(); leaf != null; leaf = leaf.next) {
+			for(int i = 0; i < leaf.count; ++i) {
+				Object value = leaf.values[i];
+				result += leaf.keys[i].hashCode() ^ (value == null ? 0 : value.hashCode());
+			}
+		}
+		return result;
+	}
+
+	public Object remove(Object key) {
+		int depth = findPathTo(key);
+		BTreeNode leaf = pathNodes[depth - 1];
+		int index = search(leaf, key);
+		if(index < 0)
+			return null;
+
+		Object result = leaf.values[index];
+		int moved = leaf.count - index - 1;
+		System.arraycopy(leaf.keys, index + 1, leaf.keys, index, moved);
+		System.arraycopy(leaf.values, index + 1, leaf.values, index, moved);
+		--leaf.count;
+		leaf.keys[leaf.count] = null;
+		leaf.values[leaf.count] = null;
+		--size;
+
+		/* The separators above can be left as they are, even if one of them was
+		 * the removed key, since they only have to tell the children apart.
+		 */
+		if(leaf.count < minKeys)
+			fixUnderflow(depth);
+		return result;
+	}
+
+	/** Refills the underflowing last node in the path, by taking a key from one
+	 *  of its siblings or by merging it with one, going up the path for as long
+	 *  as the parents underflow too.
+	 *
+	 * @param depth The path's length.
+	 */
+	private void fixUnderflow(int depth) {
+		for(int level = depth - 1; level > 0; --level) {
+			BTreeNode node = pathNodes[level];
+			if(node.count >= minKeys)
+				return;
+
+			BTreeNode parent = pathNodes[level - 1];
+			int index = pathIndices[level - 1];
+			BTreeNode left = index > 0 ? parent.children[index - 1] : null;
+			BTreeNode right = index < parent.count ? parent.children[index + 1] : null;
+			if(left != null && left.count > minKeys)
+				takeFromLeft(parent, index, left, node);
+			else if(right != null && right.count > minKeys)
+				takeFromRight(parent, index, node, right);
+			else if(left != null)
+				merge(parent, index - 1, left, node);
+			else
+				merge(parent, index, node, right);
+		}
+
+		// the root may be left with a single child
+		if(root.children != null && root.count == 0) {
+			BTreeNode oldRoot = root;
+			root = root.children[0];
+			oldRoot.children[0] = null;
+		}
+	}
+
+	/** Moves the last key in left to the start of node, its right sibling. */
+	private static void takeFromLeft(BTreeNode parent, int index, BTreeNode left,
+			BTreeNode node) {
+		System.arraycopy(node.keys, 0, node.keys, 1, node.count);
+		int last = left.count - 1;
+		if(node.children == null) {
+			System.arraycopy(node.values, 0, node.values, 1, node.count);
+			node.keys[0] = left.keys[last];
+			node.values[0] = left.values[last];
+			left.values[last] = null;
+			parent.keys[index - 1] = node.keys[0];
+		}
+		else {
+			// the key goes through the parent
+			System.arraycopy(node.children, 0, node.children, 1, node.count + 1);
+			node.keys[0] = parent.keys[index - 1];
+			node.children[0] = left.children[last + 1];
+			left.children[last + 1] = null;
+			parent.keys[index - 1] = left.keys[last];
+		}
+		left.keys[last] = null;
+		--left.count;
+		++node.count;
+	}
+
+	/** Moves the first key in right to the end of node, its left sibling. */
+	private static void takeFromRight(BTreeNode parent, int index, BTreeNode node,
+			BTreeNode right) {
+		int moved = right.count - 1;
+		if(node.children == null) {
+			node.keys[node.count] = right.keys[0];
+			node.values[node.count] = right.values[0];
+			System.arraycopy(right.values, 1, right.values, 0, moved);
+			right.values[moved] = null;
+			System.arraycopy(right.keys, 1, right.keys, 0, moved);
+			parent.keys[index] = right.keys[0];
+		}
+		else {
+			// the key goes through the parent
+			node.keys[node.count] = parent.keys[index];
+			node.children[node.count + 1] = right.children[0];
+			parent.keys[index] = right.keys[0];
+			System.arraycopy(right.keys, 1, right.keys, 0, moved);
+			System.arraycopy(right.children, 1, right.children, 0, moved + 1);
+			right.children[moved + 1] = null;
+		}
+		right.keys[moved] = null;
+		--right.count;
+		++node.count;
+	}
+
+	/** Moves all of right's keys into left, its left sibling, and takes right
+	 *  and the key separating them out of their parent.
+	 *
+	 * @param index The index of the key separating left and right in parent.
+	 */
+	private static void merge(BTreeNode parent, int index, BTreeNode left, BTreeNode right) {
+		if(left.children == null) {
+			System.arraycopy(right.keys, 0, left.keys, left.count, right.count);
+			System.arraycopy(right.values, 0, left.values, left.count, right.count);
+			left.count += right.count;
+			left.next = right.next;
+			if(right.next != null)
+				right.next.prev = left;
+		}
+		else {
+			// the separator comes down between the two nodes' keys
+			left.keys[left.count] = parent.keys[index];
+			System.arraycopy(right.keys, 0, left.keys, left.count + 1, right.count);
+			System.arraycopy(right.children, 0, left.children, left.count + 1,
+					right.count + 1);
+			left.count += right.count + 1;
+		}
+
+		int moved = parent.count - index - 1;
+		System.arraycopy(parent.keys, index + 1, parent.keys, index, moved);
+		System.arraycopy(parent.children, index + 2, parent.children, index + 1, moved);
+		--parent.count;
+		parent.keys[parent.count] = null;
+		parent.children[parent.count + 1] = null;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public Comparator getKeyComparator() {
+		return comparator;
+	}
+
+	public MapIterator iterator() {
+		return new BTreeMapIterator(this, null, false);
+	}
+
+	public MapIterator iterator(Object startKey, boolean descending) {
+		return new BTreeMapIterator(this, startKey, descending);
+	}
+
+	public SortedMap subMap(Object fromKey, Object toKey) {
+		return new SortedSubMap(this, fromKey, toKey);
+	}
+}
+
+/** A node of a {@link BTreeMap}. Leaves hold values and are linked to their
+ *  neighbours, while inner nodes hold count + 1 children, the keys in
+ *  children[i] being less than keys[i] and the ones in children[i + 1] greater
+ *  than or equal to it.
+ */
+class BTreeNode {
+	BTreeNode(int capacity) {
+		keys = new Object[capacity];
+	}
+
+	Object[] keys;
+	int count;
+	/** Only set in leaves. */
+	Object[] values;
+	/** Only set in leaves. */
+	BTreeNode next, prev;
+	/** Only set in inner nodes. */
+	BTreeNode[] children;
+}
@@ -0,0 +1,103 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+import java.util.NoSuchElementException;
+
+import net.joaosilva.j2meds.Map.Entry;
+
+/** Goes through a {@link BTreeMap}'s leaves, following their links. */
+class BTreeMapIterator implements MapIterator {
+	private BTreeMap source;
+	private boolean descending;
+	/** The leaf holding the next entry, or null if there are no more. */
+	private BTreeNode leaf;
+	/** The next entry's index in leaf. */
+	private int index;
+	private Object curKey;
+
+	/** Creates a new iterator over a map.
+	 *
+	 * @param startKey The key to start at, as in {@link SortedMap#iterator(Object, boolean)}.
+	 *        If null, starts at the first entry, or the last if descending.
+	 * @param descending Whether to go from the largest keys to the smallest.
+	 */
+	public BTreeMapIterator(BTreeMap source, Object startKey, boolean descending) {
+		this.source = source;
+		this.descending = descending;
+		if(startKey == null) {
+			leaf = descending ? source.lastLeaf() : source.firstLeaf();
+			index = descending ? leaf.count - 1 : 0;
+			leaveFinishedLeaf();
+		}
+		else
+			seek(startKey);
+	}
+
+	/** Moves to the neighbouring leaf if index went past either end of this one. */
+	private void leaveFinishedLeaf() {
+		if(index >= leaf.count) {
+			leaf = leaf.next;
+			index = 0;
+		}
+		else if(index < 0) {
+			leaf = leaf.prev;
+			if(leaf != null)
+				index = leaf.count - 1;
+		}
+	}
+
+	/** Finds the first entry at or after key, in the iteration's direction. */
+	private void seek(Object key) {
+		leaf = source.findLeaf(key);
+		index = source.search(leaf, key);
+		if(index < 0) {
+			index = -(index + 1);
+			if(descending)
+				--index;
+		}
+		leaveFinishedLeaf();
+	}
+
+	public boolean hasNext() {
+		return leaf != null;
+	}
+
+	public Entry next() {
+		if(leaf == null)
+			throw new NoSuchElementException();
+		curKey = leaf.keys[index];
+		Entry result = new Entry(curKey, leaf.values[index]);
+		if(descending)
+			--index;
+		else
+			++index;
+		leaveFinishedLeaf();
+		return result;
+	}
+
+	public void remove() {
+		if(curKey == null)
+			throw new InvalidOperationException(
+					"remove can only be called once after each call to next");
+		Object nextKey = leaf == null ? null : leaf.keys[index];
+		source.remove(curKey);
+		curKey = null;
+
+		// removing may have merged or rearranged leaves, so find the next key again
+		if(nextKey != null)
+			seek(nextKey);
+	}
+}
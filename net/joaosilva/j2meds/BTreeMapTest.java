@@ -0,0 +1,119 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package net.joaosilva.j2meds;
+
+import jmunit.framework.cldc11.TestCase;
+
+public class BTreeMapTest extends TestCase {
+
+	public BTreeMapTest() {
+		super(4, "BTreeMapTest");
+	}
+
+	public void test(int testNumber) {
+		switch(testNumber) {
+		case 0:
+			testPutGetRemove();
+			break;
+		case 1:
+			testManyEntries();
+			break;
+		case 2:
+			testNavigation();
+			break;
+		case 3:
+			testEquals();
+			break;
+
+		default:
+			break;
+		}
+	}
+
+	public void testPutGetRemove() {
+		BTreeMap m = new BTreeMap(Comparators.STRING);
+		assertTrue(m.isEmpty());
+		assertNull(m.put("test", new Integer(0)));
+		assertEquals(0, ((Integer)m.put("test", new Integer(1))).intValue());
+		assertEquals(1, m.size());
+		assertEquals(1, ((Integer)m.get("test")).intValue());
+		assertNull(m.remove("some key that isn't there"));
+		assertEquals(1, ((Integer)m.remove("test")).intValue());
+		assertTrue(m.isEmpty());
+		assertFalse(m.containsKey("test"));
+		assertFalse(m.iterator().hasNext());
+	}
+
+	public void testManyEntries() {
+		// small nodes, so that there are plenty of splits and merges
+		BTreeMap m = new BTreeMap(Comparators.INTEGER, 4);
+		for(int i = 0; i < 1000; ++i)
+			m.put(new Integer((i * 7) % 1000), new Integer(i));
+		for(int i = 0; i < 1000; i += 2)
+			m.remove(new Integer(i));
+		assertEquals(500, m.size());
+		for(int i = 0; i < 1000; ++i)
+			assertEquals(i % 2 != 0, m.containsKey(new Integer(i)));
+
+		int last = -1;
+		MapIterator it = m.iterator();
+		while(it.hasNext()) {
+			int key = ((Integer)it.next().getKey()).intValue();
+			assertTrue(last < key);
+			last = key;
+			it.remove();
+		}
+		assertEquals(999, last);
+		assertTrue(m.isEmpty());
+	}
+
+	public void testNavigation() {
+		BTreeMap m = new BTreeMap(Comparators.INTEGER, 4);
+		for(int i = 0; i < 100; ++i)
+			m.put(new Integer(i * 10), null);
+		assertEquals(0, ((Integer)m.firstKey()).intValue());
+		assertEquals(990, ((Integer)m.lastKey()).intValue());
+		assertEquals(40, ((Integer)m.floorKey(new Integer(45))).intValue());
+		assertEquals(50, ((Integer)m.ceilingKey(new Integer(45))).intValue());
+		assertEquals(40, ((Integer)m.lowerKey(new Integer(50))).intValue());
+		assertEquals(60, ((Integer)m.higherKey(new Integer(50))).intValue());
+		assertNull(m.lowerKey(new Integer(0)));
+		assertNull(m.higherKey(new Integer(990)));
+
+		MapIterator it = m.iterator(new Integer(25), true);
+		assertEquals(20, ((Integer)it.next().getKey()).intValue());
+		assertEquals(10, ((Integer)it.next().getKey()).intValue());
+		assertEquals(0, ((Integer)it.next().getKey()).intValue());
+		assertFalse(it.hasNext());
+		assertEquals(5, m.subMap(new Integer(100), new Integer(150)).size());
+	}
+	
+	public void testEquals() {
+		BTreeMap m = new BTreeMap(Comparators.INTEGER);
+		BinaryTree b = new BinaryTree(Comparators.INTEGER);
+		for(int i = 0; i < 100; ++i) {
+			m.put(new Integer(i), "value");
+			b.put(new Integer(i), "value");
+		}
+		assertTrue(m.equals(b));
+		assertEquals(b.hashCode(), m.hashCode());
+		m.put(new Integer(3), "another value");
+		assertFalse(m.equals(b));
+		assertFalse(b.equals(m));
+		m.put(new Integer(3), null);
+		assertFalse(m.equals(b));
+	}
+}
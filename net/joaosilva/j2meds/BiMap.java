@@ -0,0 +1,155 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+/** A map which also maps its values back to their keys, so that looking up a
+ *  value takes O(log n) instead of a scan through all the entries.
+ *
+ *  It's made of two balanced {@link BinaryTree}s, one from keys to values and
+ *  the other from values to keys, which every change keeps in sync, including
+ *  removing through an iterator. So values must be unique and can't be null,
+ *  just like keys.
+ */
+public class BiMap implements Map {
+	private BinaryTree forward;
+	private BinaryTree backward;
+	private BiMap inverse;
+
+	/** Creates a new, empty BiMap.
+	 * @param keyComparator A Comparator to compare keys. Usually, this will be one
+	 *  of the ones provided in {@link Comparators}.
+	 * @param valueComparator A Comparator to compare values.
+	 */
+	public BiMap(Comparator keyComparator, Comparator valueComparator) {
+		forward = new BinaryTree(keyComparator, BinaryTree.BALANCED);
+		backward = new BinaryTree(valueComparator, BinaryTree.BALANCED);
+		inverse = new BiMap(backward, forward, this);
+	}
+
+	private BiMap(BinaryTree forward, BinaryTree backward, BiMap inverse) {
+		this.forward = forward;
+		this.backward = backward;
+		this.inverse = inverse;
+	}
+
+	/** Returns a view of this map with keys and values swapped. Changes to either
+	 *  map are visible in the other.
+	 */
+	public BiMap inverse() {
+		return inverse;
+	}
+
+	public Comparator getValueComparator() {
+		return backward.getKeyComparator();
+	}
+
+	public void clear() {
+		forward.clear();
+		backward.clear();
+	}
+
+	public boolean containsKey(Object key) {
+		return forward.containsKey(key);
+	}
+
+	/** Tells whether some key is mapped to value, in O(log n). */
+	public boolean containsValue(Object value) {
+		return backward.containsKey(value);
+	}
+
+	public Object get(Object key) {
+		return forward.get(key);
+	}
+
+	/** Returns the key mapped to value, or null if there's none, in O(log n). */
+	public Object getKeyForValue(Object value) {
+		return backward.get(value);
+	}
+
+	public boolean isEmpty() {
+		return forward.isEmpty();
+	}
+
+	/** Maps key to value, replacing key's previous value, if any.
+	 *
+	 * @throws InvalidKeyException If value is null or already mapped to another key.
+	 */
+	public Object put(Object key, Object value) {
+		if(key == null)
+			throw new InvalidKeyException("Can't insert null keys");
+		if(value == null)
+			throw new InvalidKeyException("Can't insert null values in a BiMap");
+		Object oldKey = backward.get(value);
+		if(oldKey != null) {
+			if(forward.getKeyComparator().compare(key, oldKey) != 0)
+				throw new InvalidKeyException("The value is already mapped to another key");
+			return value;
+		}
+
+		Object oldValue = forward.put(key, value);
+		if(oldValue != null)
+			backward.remove(oldValue);
+		backward.put(value, key);
+		return oldValue;
+	}
+
+	public void putAll(Map other) {
+		if(forward.getKeyComparator() != other.getKeyComparator())
+			throw new InvalidOperationException(
+					"putAll can't work on maps with different comparators");
+		MapIterator it = other.iterator();
+		while(it.hasNext()) {
+			Map.Entry entry = it.next();
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	public boolean equals(Object other) {
+		if(other instanceof BiMap)
+			return forward.equals(((BiMap)other).forward);
+		return forward.equals(other);
+	}
+
+	public int hashCode() {
+		return forward.hashCode();
+	}
+
+	public Object remove(Object key) {
+		Object oldValue = forward.remove(key);
+		if(oldValue != null)
+			backward.remove(oldValue);
+		return oldValue;
+	}
+
+	/** Removes the entry whose value is value, if any.
+	 *
+	 * @return The removed entry's key, or null if there was none.
+	 */
+	public Object removeValue(Object value) {
+		return inverse.remove(value);
+	}
+
+	public int size() {
+		return forward.size();
+	}
+
+	public Comparator getKeyComparator() {
+		return forward.getKeyComparator();
+	}
+
+	public MapIterator iterator() {
+		return new BiMapIterator(forward.iterator(), backward);
+	}
+}
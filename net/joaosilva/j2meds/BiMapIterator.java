@@ -0,0 +1,44 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+import net.joaosilva.j2meds.Map.Entry;
+
+/** Goes through a {@link BiMap}'s entries, removing them from both of its trees. */
+class BiMapIterator implements MapIterator {
+	private MapIterator forwardIterator;
+	private BinaryTree backward;
+	private Object curValue;
+
+	public BiMapIterator(MapIterator forwardIterator, BinaryTree backward) {
+		this.forwardIterator = forwardIterator;
+		this.backward = backward;
+	}
+
+	public boolean hasNext() {
+		return forwardIterator.hasNext();
+	}
+
+	public Entry next() {
+		Entry result = forwardIterator.next();
+		curValue = result.getValue();
+		return result;
+	}
+
+	public void remove() {
+		forwardIterator.remove();
+		backward.remove(curValue);
+	}
+}
@@ -0,0 +1,78 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package net.joaosilva.j2meds;
+
+import jmunit.framework.cldc11.TestCase;
+
+public class BiMapTest extends TestCase {
+
+	public BiMapTest() {
+		super(2, "BiMapTest");
+	}
+
+	public void test(int testNumber) {
+		switch(testNumber) {
+		case 0:
+			testPutAndLookUp();
+			break;
+		case 1:
+			testRemove();
+			break;
+
+		default:
+			break;
+		}
+	}
+
+	public void testPutAndLookUp() {
+		BiMap m = new BiMap(Comparators.STRING, Comparators.INTEGER);
+		assertNull(m.put("one", new Integer(1)));
+		assertNull(m.put("two", new Integer(2)));
+		assertEquals(1, ((Integer)m.put("one", new Integer(11))).intValue());
+		assertEquals(2, m.size());
+		assertFalse(m.containsValue(new Integer(1)));
+		assertTrue(m.containsValue(new Integer(11)));
+		assertEquals(0, ((String)m.getKeyForValue(new Integer(11))).compareTo("one"));
+		assertEquals(0, ((String)m.inverse().get(new Integer(2))).compareTo("two"));
+		try {
+			m.put("three", new Integer(2));
+			fail("Values must be unique");
+		} catch(InvalidKeyException e) {
+		}
+		assertEquals(2, m.size());
+		assertFalse(m.containsKey("three"));
+	}
+
+	public void testRemove() {
+		BiMap m = new BiMap(Comparators.INTEGER, Comparators.STRING);
+		for(int i = 0; i < 20; ++i)
+			m.put(new Integer(i), "v" + i);
+		assertEquals(3, ((Integer)m.removeValue("v3")).intValue());
+		assertEquals(0, ((String)m.remove(new Integer(4))).compareTo("v4"));
+		assertFalse(m.containsKey(new Integer(3)));
+		assertFalse(m.containsValue("v4"));
+
+		MapIterator it = m.iterator();
+		while(it.hasNext()) {
+			if(((Integer)it.next().getKey()).intValue() % 2 == 0)
+				it.remove();
+		}
+		assertEquals(9, m.size());
+		assertEquals(9, m.inverse().size());
+		assertFalse(m.containsValue("v6"));
+		assertTrue(m.containsValue("v7"));
+	}
+}
@@ -15,14 +15,31 @@
 
 package net.joaosilva.j2meds;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 /** A bog standard, naive binary storage tree implementation, since it 
  *  doesn't seem to exist in Java ME.
  *  
  *  To make comparing between keys easy and unambiguous, null keys are not allowed. 
  *  
+ *  By default the tree isn't balanced, so inserting keys in sorted order degrades
+ *  it into a linked list. Create it with the {@link #BALANCED} option to have it
+ *  rebalanced (AVL style) on every put and remove, which guarantees O(log n)
+ *  operations whatever the insertion order.
+ *
+ *  With the {@link #ORDER_STATISTICS} option, every node also keeps the size of its
+ *  subtree, so entries can be found by their index in key order.
+ *
  *  @author Joo Silva <joaomiguelsilva@gmail.com>
  */
-public class BinaryTree implements Map {
+public class BinaryTree implements SortedMap {
+	/** Option which keeps the tree height balanced. */
+	public static final int BALANCED = 1;
+	/** Option which keeps track of subtree sizes, for the index based methods. */
+	public static final int ORDER_STATISTICS = 2;
+
 	/** A dummy node, prior to the root. Both its children point to the root.
 	 * It is the only node allowed to have a null key. This way, comparisons with it
 	 * are always false.
@@ -31,77 +48,367 @@ public class BinaryTree implements Map {
 	private BinaryTreeNode root;
 	private int size;
 	private Comparator comparator;
+	private boolean balanced;
+	private boolean orderStatistics;
 	
-	/** Creates a new BinaryTree, using the specified {@link Comparator}.
+	/** The nodes visited by the last call to findPathTo, starting with the dummy node.
+	 *  Kept around between calls so that updates don't allocate.
+	 */
+	private BinaryTreeNode[] path;
+	/** The result of the last comparison made by findPathTo. */
+	private int lastComparison;
+	/** The sum of the entries' hash codes, kept up to date by every change. */
+	private int hash;
+	/** The statistics being collected, or null if they're disabled. */
+	private TreeStats stats;
+	/** The results of the last call to split. */
+	private BinaryTreeNode splitLeft, splitNode, splitRight;
+	/** How many keys the set operation being run found in both trees. */
+	private int setOpMatches;
+	/** Counts the changes to the tree's structure, so that iterators can tell
+	 *  when it was changed other than through them.
+	 */
+	private int modCount;
+	/** True if the last call to rebalanceAfterRemoval rotated any nodes. */
+	private boolean rotatedOnRemoval;
+	/** The most threads a bulk operation uses, counting the calling one. */
+	private int bulkThreads = BulkOperation.DEFAULT_THREADS;
+
+	/** Creates a new, unbalanced, BinaryTree, using the specified {@link Comparator}.
 	 * @param keyComparator A Comparator to compare keys. Usually, this will be one
 	 *  of the ones provided in {@link Comparators}.
 	 */
 	public BinaryTree(Comparator keyComparator) {
+		this(keyComparator, 0);
+	}
+
+	/** Creates a new BinaryTree, using the specified {@link Comparator} and options.
+	 * @param keyComparator A Comparator to compare keys. Usually, this will be one
+	 *  of the ones provided in {@link Comparators}.
+	 * @param options A combination of {@link #BALANCED} and {@link #ORDER_STATISTICS},
+	 *        or 0 for none of them.
+	 */
+	public BinaryTree(Comparator keyComparator, int options) {
 		this.comparator = keyComparator;
+		this.balanced = (options & BALANCED) != 0;
+		this.orderStatistics = (options & ORDER_STATISTICS) != 0;
 		// dummy is the only node whose key can be null
 		dummy = new BinaryTreeNode(null, null);
+		path = new BinaryTreeNode[16];
 		clear();		
 	}
 	
+	/** Creates a tree from keys which are already sorted, in linear time and
+	 *  without calling the comparator. The tree is perfectly balanced.
+	 *
+	 * @param keyComparator The comparator the keys are sorted by.
+	 * @param options The tree's options, as in {@link #BinaryTree(Comparator, int)}.
+	 * @param keys The keys, in strictly ascending order. This isn't checked.
+	 * @param values The keys' values, in the same order, or null if all values are null.
+	 */
+	public static BinaryTree fromSorted(Comparator keyComparator, int options,
+			Object[] keys, Object[] values) {
+		if(values != null && values.length != keys.length)
+			throw new IllegalArgumentException("There must be as many values as keys");
+		BinaryTree result = new BinaryTree(keyComparator, options);
+		result.setRoot(buildFromSorted(keys, values, 0, keys.length), keys.length);
+		return result;
+	}
+
+	/** Creates a tree from entries which are already sorted, in linear time and
+	 *  without calling the comparator. The tree is perfectly balanced.
+	 *
+	 * @param keyComparator The comparator the keys are sorted by.
+	 * @param options The tree's options, as in {@link #BinaryTree(Comparator, int)}.
+	 * @param entries An iterator returning the entries in strictly ascending
+	 *        order of their keys. This isn't checked.
+	 * @param count How many entries to read from the iterator.
+	 */
+	public static BinaryTree fromSorted(Comparator keyComparator, int options,
+			MapIterator entries, int count) {
+		BinaryTree result = new BinaryTree(keyComparator, options);
+		result.setRoot(buildFromSorted(entries, count), count);
+		return result;
+	}
+
+	/** Writes the tree's entries to a stream, in ascending order of their keys,
+	 *  so that {@link #readFrom} can load them back in linear time.
+	 *
+	 *  The format is the number of entries, as an int, followed by each key and,
+	 *  if valueCodec isn't null, a boolean telling whether its value is non-null
+	 *  and then the value itself.
+	 *
+	 * @param out The stream to write to.
+	 * @param keyCodec Writes the keys. Usually, this will be one of the ones
+	 *        provided in {@link Codecs}.
+	 * @param valueCodec Writes the values, or null to leave the values out.
+	 */
+	public void writeTo(DataOutputStream out, Codec keyCodec, Codec valueCodec)
+			throws IOException {
+		out.writeInt(size);
+		MapIterator it = fastIterator();
+		while(it.hasNext()) {
+			Map.Entry entry = it.next();
+			keyCodec.write(out, entry.getKey());
+			if(valueCodec != null) {
+				Object value = entry.getValue();
+				out.writeBoolean(value != null);
+				if(value != null)
+					valueCodec.write(out, value);
+			}
+		}
+	}
+
+	/** Reads a tree written by {@link #writeTo}, in linear time and without calling
+	 *  the comparator. The tree is perfectly balanced.
+	 *
+	 * @param in The stream to read from.
+	 * @param keyComparator The comparator the tree was sorted by when written.
+	 * @param options The tree's options, as in {@link #BinaryTree(Comparator, int)}.
+	 * @param keyCodec Reads the keys.
+	 * @param valueCodec Reads the values. Must be null if and only if it was null
+	 *        when the tree was written, in which case all values are null.
+	 */
+	public static BinaryTree readFrom(DataInputStream in, Comparator keyComparator,
+			int options, Codec keyCodec, Codec valueCodec) throws IOException {
+		int count = in.readInt();
+		if(count < 0)
+			throw new IOException("Invalid entry count: " + count);
+		BinaryTree result = new BinaryTree(keyComparator, options);
+		result.setRoot(buildFromStream(in, keyCodec, valueCodec, count), count);
+		return result;
+	}
+
+	private static BinaryTreeNode newSortedNode(Object key, Object value,
+			BinaryTreeNode left, BinaryTreeNode right) {
+		if(key == null)
+			throw new InvalidKeyException("Can't insert null keys");
+		BinaryTreeNode node = new BinaryTreeNode(key, value);
+		node.left = left;
+		node.right = right;
+		update(node);
+		return node;
+	}
+
+	/** Builds a balanced subtree out of count keys, starting at keys[first]. */
+	private static BinaryTreeNode buildFromSorted(Object[] keys, Object[] values,
+			int first, int count) {
+		if(count == 0)
+			return null;
+		int leftCount = (count - 1) / 2;
+		int middle = first + leftCount;
+		BinaryTreeNode left = buildFromSorted(keys, values, first, leftCount);
+		BinaryTreeNode right = buildFromSorted(keys, values, middle + 1, count - leftCount - 1);
+		return newSortedNode(keys[middle], values == null ? null : values[middle], left, right);
+	}
+
+	/** Builds a balanced subtree out of the next count entries returned by entries. */
+	private static BinaryTreeNode buildFromSorted(MapIterator entries, int count) {
+		if(count == 0)
+			return null;
+		int leftCount = (count - 1) / 2;
+		BinaryTreeNode left = buildFromSorted(entries, leftCount);
+		Map.Entry entry = entries.next();
+		Object key = entry.getKey();
+		Object value = entry.getValue();
+		BinaryTreeNode right = buildFromSorted(entries, count - leftCount - 1);
+		return newSortedNode(key, value, left, right);
+	}
+
+	/** Builds a balanced subtree out of the next count entries in a stream. */
+	private static BinaryTreeNode buildFromStream(DataInputStream in, Codec keyCodec,
+			Codec valueCodec, int count) throws IOException {
+		if(count == 0)
+			return null;
+		int leftCount = (count - 1) / 2;
+		BinaryTreeNode left = buildFromStream(in, keyCodec, valueCodec, leftCount);
+		Object key = keyCodec.read(in);
+		Object value = null;
+		if(valueCodec != null && in.readBoolean())
+			value = valueCodec.read(in);
+		BinaryTreeNode right = buildFromStream(in, keyCodec, valueCodec,
+				count - leftCount - 1);
+		return newSortedNode(key, value, left, right);
+	}
+
+	private void setRoot(BinaryTreeNode newRoot, int newSize) {
+		root = dummy.left = dummy.right = newRoot;
+		size = newSize;
+		hash = hashOf(newRoot);
+		++modCount;
+	}
+
+	/** Adds up the hash codes of the entries in the subtree starting at node. */
+	private static int hashOf(BinaryTreeNode node) {
+		int result = 0;
+		while(node != null) {
+			result += entryHash(node.key, node.value) + hashOf(node.left);
+			node = node.right;
+		}
+		return result;
+	}
+
+	/** Returns the same hash code as {@link Map.Entry#hashCode()}. */
+	private static int entryHash(Object key, Object value) {
+		return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+	}
+
 	public void clear() {
 		root = dummy.left = dummy.right = null;
 		size = 0;
+		hash = 0;
+		++modCount;
 	}
 	
-	/** Returns the node above the one with that key.
-	 *  Because of the dummy node, works even if the key is in the root.
+	/** Returns true if this tree was created with the {@link #BALANCED} option. */
+	public boolean isBalanced() {
+		return balanced;
+	}
+
+	/** Returns true if this tree was created with the {@link #ORDER_STATISTICS} option. */
+	public boolean hasOrderStatistics() {
+		return orderStatistics;
+	}
+
+	BinaryTreeNode getRoot() {
+		return root;
+	}
+
+	int getModCount() {
+		return modCount;
+	}
+
+	private void setPath(int index, BinaryTreeNode node) {
+		if(index == path.length) {
+			BinaryTreeNode[] newPath = new BinaryTreeNode[path.length * 2];
+			System.arraycopy(path, 0, newPath, 0, path.length);
+			path = newPath;
+		}
+		path[index] = node;
+	}
+
+	/** Walks down from the root looking for a key, storing the nodes it goes
+	 *  through in path. path[0] is always the dummy node, so every node in the
+	 *  path has a parent, even the root.
 	 * 
 	 * @param key The key to search for.
-	 * @param nullWhenNotFound If true, returns null when the key isn't found.
-	 *        If false, returns the node prior to where the key would have been.
-	 * @return The node above the one with the provided key. If the key is in the
-	 *         root, returns the root, since there's no node above it. 
-	 * 
+	 * @return If the key is found, the length of the path, whose last node holds
+	 *         the key. Otherwise, minus the length of the path, whose last node is
+	 *         the one below which the key would have to be inserted.
 	 */
-	private BinaryTreeNode findNodePriorTo(Object key, boolean nullWhenNotFound) {
+	private int findPathTo(Object key) {
+		path[0] = dummy;
+		int depth = 1;
 		BinaryTreeNode curNode = root;
-		BinaryTreeNode prevNode = dummy; 
-		/* prevNode is initialized to root, since we want to return root
-		 * in the case where there's only one node.
-		 */
+		while(curNode != null) {
+			setPath(depth++, curNode);
+			lastComparison = comparator.compare(key, curNode.key);
+			if(lastComparison == 0)
+				return depth;
+
+			if(lastComparison < 0)
+				curNode = curNode.left;
+			else
+				curNode = curNode.right;
+		}
+		return -depth;
+	}
+
+	private BinaryTreeNode findNodeWithKey(Object key) {
+		BinaryTreeNode curNode = root;
+		int depth = 0;
 		while(curNode != null) {			
+			++depth;
 			int compareValue = comparator.compare(key, curNode.key);
 			if(compareValue == 0)
-				return prevNode;
+				break;
 			
-			prevNode = curNode;
 			if(compareValue < 0)
 				curNode = curNode.left;
 			else
 				curNode = curNode.right;
 		}
-		
-		if(nullWhenNotFound)
-			return null;
-		else
-			return prevNode; 
-	}
-	
-	private BinaryTreeNode findNodeWithKey(Object key) {
-		BinaryTreeNode prev = findNodePriorTo(key, true);
-		if(prev == null)
-			return null;
-		if(prev == dummy)
-			return root;
-		
-		int compareValue = comparator.compare(key, prev.key);		
-		if(compareValue < 0)
-			return prev.left;
-		else
-			return prev.right;		
+		if(stats != null)
+			stats.recordSearch(depth);
+		return curNode;
 	}
 	
 	public boolean containsKey(Object key) {
+		if(stats != null)
+			++stats.gets;
 		return findNodeWithKey(key) != null;
 	}
+
+	/** Finds the node whose key is nearest to a given key, on one of its sides.
+	 *
+	 * @param key The key to search for.
+	 * @param below If true, looks for keys lower than key, otherwise for higher keys.
+	 * @param inclusive If true, the node holding key itself is returned, if there's one.
+	 * @return The nearest node, or null if there's no node on that side.
+	 */
+	private BinaryTreeNode findNearestNode(Object key, boolean below, boolean inclusive) {
+		if(stats != null)
+			++stats.gets;
+		BinaryTreeNode curNode = root;
+		BinaryTreeNode nearest = null;
+		int depth = 0;
+		while(curNode != null) {
+			++depth;
+			int compareValue = comparator.compare(key, curNode.key);
+			if(compareValue == 0 && inclusive) {
+				nearest = curNode;
+				break;
+			}
+
+			if(below ? compareValue > 0 : compareValue < 0) {
+				// curNode is on the wanted side, but there may be nearer nodes past it
+				nearest = curNode;
+				curNode = below ? curNode.right : curNode.left;
+			}
+			else
+				curNode = below ? curNode.left : curNode.right;
+		}
+		if(stats != null)
+			stats.recordSearch(depth);
+		return nearest;
+	}
+
+	private static Object keyOf(BinaryTreeNode node) {
+		return node == null ? null : node.key;
+	}
+
+	public Object firstKey() {
+		BinaryTreeNode curNode = root;
+		while(curNode != null && curNode.left != null)
+			curNode = curNode.left;
+		return keyOf(curNode);
+	}
+
+	public Object lastKey() {
+		BinaryTreeNode curNode = root;
+		while(curNode != null && curNode.right != null)
+			curNode = curNode.right;
+		return keyOf(curNode);
+	}
+
+	public Object floorKey(Object key) {
+		return keyOf(findNearestNode(key, true, true));
+	}
+
+	public Object ceilingKey(Object key) {
+		return keyOf(findNearestNode(key, false, true));
+	}
+
+	public Object lowerKey(Object key) {
+		return keyOf(findNearestNode(key, true, false));
+	}
+
+	public Object higherKey(Object key) {
+		return keyOf(findNearestNode(key, false, false));
+	}
     
 	public boolean containsValue(Object value, Comparator valueComparator) {
-		MapIterator it = iterator();
+		MapIterator it = fastIterator();
 		while(it.hasNext()) {
 			Entry curEntry = it.next();
 			if(valueComparator.compare(value, curEntry.value) == 0)
@@ -111,6 +418,8 @@ public class BinaryTree implements Map {
 	}
 	
 	public Object get(Object key) {
+		if(stats != null)
+			++stats.gets;
 		BinaryTreeNode node = findNodeWithKey(key);
 		if(node == null)
 			return null;
@@ -130,187 +439,850 @@ public class BinaryTree implements Map {
 	 * @param newValue The value with which to replace the node's old value.
 	 * @return The node's old value.
 	 */
-	private Object replaceValue(BinaryTreeNode node, Object newValue) {
+	Object replaceValue(BinaryTreeNode node, Object newValue) {
 		Assert.assert(node != null, 
 				"BinaryTree.replaceValue must never be called with a null node");
 		
 		Object oldValue = node.value;
 		node.value = newValue;
+		hash += entryHash(node.key, newValue) - entryHash(node.key, oldValue);
 		return oldValue;
 	}
 	
+	/** Makes newChild take oldChild's place below parent. If parent is the dummy
+	 *  node, newChild becomes the root.
+	 */
+	private void replaceChild(BinaryTreeNode parent, BinaryTreeNode oldChild,
+			BinaryTreeNode newChild) {
+		if(parent == dummy)
+			root = dummy.left = dummy.right = newChild;
+		else if(parent.left == oldChild)
+			parent.left = newChild;
+		else {
+			Assert.assert(parent.right == oldChild,
+					"parent isn't really this node's parent node");
+			parent.right = newChild;
+		}
+	}
+
 	public Object put(Object key, Object value) {
 		if(key == null)
 			throw new InvalidKeyException("Can't insert null keys");
-		if(root == null) { // empty tree
-			root = new BinaryTreeNode(key, value);
-			dummy.left = dummy.right = root;
-			++size;
-			return null;
-		}
 		
-		BinaryTreeNode nearest = findNodePriorTo(key, false);
-		BinaryTreeNode nodeToWorkOn = null;
-		if(nearest == dummy) {
-			Assert.assert(comparator.compare(root.key, key) == 0,
-					"There's some bug in the binary tree's logic. Code should " + 
-					"only reach here if the desired key is in the tree's root");
-			nodeToWorkOn = root;
+		int depth = findPathTo(key);
+		if(stats != null) {
+			++stats.puts;
+			stats.recordSearch((depth > 0 ? depth : -depth) - 1);
 		}
-		else {
-			int compareValue = comparator.compare(key, nearest.key);
-			Assert.assert(compareValue != 0, "There's a duplicate key in the tree");
+		if(depth > 0)
+			return replaceValue(path[depth - 1], value);
 			
-			if(compareValue < 0) {
-				if(nearest.left == null)
-					nearest.left = new BinaryTreeNode(key, value);
-				else
-					nodeToWorkOn = nearest.left;
-			}
-			else {
-				if(nearest.right == null)
-					nearest.right = new BinaryTreeNode(key, value);
-				else
-					nodeToWorkOn = nearest.right;
-			}
-		}
+		depth = -depth;
+		BinaryTreeNode parent = path[depth - 1];
+		BinaryTreeNode newNode = new BinaryTreeNode(key, value);
+		hash += entryHash(key, value);
+		if(parent == dummy)
+			root = dummy.left = dummy.right = newNode;
+		else if(lastComparison < 0)
+			parent.left = newNode;
+		else
+			parent.right = newNode;
+		++size;
+		++modCount;
 		
-		if(nodeToWorkOn == null) {
-			++size;
-			return null;
+		if(orderStatistics) {
+			for(int i = 1; i < depth; ++i)
+				++path[i].count;
 		}
-		
-		return replaceValue(nodeToWorkOn, value);
+		if(balanced)
+			rebalanceAfterInsertion(depth);
+		return null;
 	}
 
 	public void putAll(Map other) {
 		if(comparator != other.getKeyComparator())
 			throw new InvalidOperationException(
 					"putAll can't work on maps with different comparators");
-		MapIterator it = other.iterator();
+		MapIterator it = other instanceof BinaryTree ?
+				((BinaryTree)other).fastIterator() : other.iterator();
+		if(root == null && other instanceof SortedMap) {
+			// the entries come in order, so the tree can be built directly, once
+			// they're all read, since other may change while being iterated over
+			Object[] keys = new Object[other.size()];
+			Object[] values = new Object[keys.length];
+			int count = 0;
+			while(it.hasNext()) {
+				Map.Entry entry = it.next();
+				if(count == keys.length) {
+					Object[] newKeys = new Object[count * 2 + 1];
+					Object[] newValues = new Object[newKeys.length];
+					System.arraycopy(keys, 0, newKeys, 0, count);
+					System.arraycopy(values, 0, newValues, 0, count);
+					keys = newKeys;
+					values = newValues;
+				}
+				keys[count] = entry.getKey();
+				values[count++] = entry.getValue();
+			}
+			setRoot(buildFromSorted(keys, values, 0, count), count);
+			return;
+		}
 		while(it.hasNext()) {
 			Map.Entry entry = it.next();
 			put(entry.getKey(), entry.getValue());
 		}
 	}
 	
+	/** Tells whether other is a map with the same entries, comparing keys with the
+	 *  key comparator and values with their equals method.
+	 *
+	 *  If other is a {@link SortedMap} with the same comparator, both maps are
+	 *  walked in order side by side, in linear time. Between two BinaryTrees with
+	 *  the same comparator, maps whose hash codes differ are told apart without
+	 *  walking them at all, so keys the comparator finds equal must have equal
+	 *  hash codes, which a case insensitive comparator of Strings wouldn't ensure.
+	 */
 	public boolean equals(Object other) {
+		if(other == this)
+			return true;
 		if(!(other instanceof Map))
 			return false;
 		
 		Map otherMap = (Map)other;
 		if(otherMap.size() != size)
 			return false;
+		if(other instanceof BinaryTree && otherMap.getKeyComparator() == comparator &&
+				((BinaryTree)other).hash != hash)
+			return false;
+		
+		if(other instanceof SortedMap && otherMap.getKeyComparator() == comparator) {
+			MapIterator it = fastIterator();
+			MapIterator otherIt = other instanceof BinaryTree ?
+					((BinaryTree)other).fastIterator() : otherMap.iterator();
+			while(it.hasNext()) {
+				if(!otherIt.hasNext())
+					return false;
+				Map.Entry cur = it.next();
+				Map.Entry otherCur = otherIt.next();
+				if(comparator.compare(cur.getKey(), otherCur.getKey()) != 0 ||
+						!valuesEqual(cur.getValue(), otherCur.getValue()))
+					return false;
+			}
+			return !otherIt.hasNext();
+		}
 		
-		boolean result = true;
 		MapIterator it = otherMap.iterator();
 		while(it.hasNext()) {
 			Map.Entry cur = it.next();
-			if(!containsKey(cur.getKey())) {
-				result = false;
-				break;
-			}			
+			BinaryTreeNode node = findNodeWithKey(cur.getKey());
+			if(node == null || !valuesEqual(node.value, cur.getValue()))
+				return false;
 		}
-		
-		return result;
+		return true;
+	}
+
+	private static boolean valuesEqual(Object first, Object second) {
+		return first == null ? second == null : first.equals(second);
 	}
 	
+	/** Returns the sum of the entries' hash codes, which is kept up to date as the
+	 *  tree changes, so this takes constant time. Values whose hash codes change
+	 *  while in the tree throw it off, like keys in a hash table.
+	 *
+	 *  Maps that are equal only have the same hash code if keys the comparator
+	 *  finds equal have equal hash codes too.
+	 */
 	public int hashCode() {
-		MapIterator it = iterator();
-		int result = 0;
-		while(it.hasNext()) {
-			Map.Entry cur = it.next();
-			result += cur.hashCode();
+		return hash;
+	}
+	
+	/** Removes the last node in path from the tree.
+	 *
+	 * @param depth The length of the path, as returned by findPathTo.
+	 * @return The removed node's value.
+	 */
+	private Object removeNode(int depth) {
+		BinaryTreeNode nodeToRemove = path[depth - 1];
+		BinaryTreeNode parent = path[depth - 2];
+		Object result = nodeToRemove.value;
+		if(nodeToRemove.left == null || nodeToRemove.right == null) {
+			replaceChild(parent, nodeToRemove,
+					nodeToRemove.left != null ? nodeToRemove.left : nodeToRemove.right);
+			--depth;
 		}
+		else {
+			/* The successor is moved into the removed node's place, rather than
+			 * having its key and value copied over, so that nodes never change keys.
+			 */
+			int removedIndex = depth - 1;
+			BinaryTreeNode successor = nodeToRemove.right;
+			while(successor.left != null) {
+				setPath(depth++, successor);
+				successor = successor.left;
+			}
+			replaceChild(path[depth - 1], successor, successor.right);
+			successor.left = nodeToRemove.left;
+			successor.right = nodeToRemove.right;
+			successor.height = nodeToRemove.height;
+			successor.count = nodeToRemove.count;
+			replaceChild(parent, nodeToRemove, successor);
+			path[removedIndex] = successor;
+		}
+		nodeToRemove.left = nodeToRemove.right = null;
+		--size;
+		++modCount;
+		hash -= entryHash(nodeToRemove.key, result);
+
+		if(orderStatistics) {
+			for(int i = 1; i < depth; ++i)
+				--path[i].count;
+		}
+		if(balanced)
+			rebalanceAfterRemoval(depth);
 		return result;
 	}
-	
-	private BinaryTreeNode findPredecessorParent(BinaryTreeNode node) {
-		BinaryTreeNode curNode = node.left;
-		BinaryTreeNode prevNode = node;
-		while(curNode.right != null) {
-			prevNode = curNode;
-			curNode = curNode.right;
+
+	public Object remove(Object key) {
+		if(stats != null)
+			++stats.removes;
+		if(root == null)
+			return null;
+
+		int depth = findPathTo(key);
+		if(stats != null)
+			stats.recordSearch((depth > 0 ? depth : -depth) - 1);
+		if(depth < 0)
+			return null;
+		return removeNode(depth);
+	}
+
+	/** Removes a node given the path to it, as iterators keep it, without
+	 *  comparing any keys.
+	 *
+	 * @param nodePath The nodes from the root down to the one to remove.
+	 * @param length The number of nodes in nodePath.
+	 * @return True if rebalancing rotated any nodes, which may have moved the
+	 *         ones in nodePath. Otherwise, only the removed node's place changed.
+	 */
+	boolean removeAt(BinaryTreeNode[] nodePath, int length) {
+		if(stats != null)
+			++stats.removes;
+		path[0] = dummy;
+		for(int i = 0; i < length; ++i)
+			setPath(i + 1, nodePath[i]);
+		rotatedOnRemoval = false;
+		removeNode(length + 1);
+		return rotatedOnRemoval;
+	}
+					
+	private static int heightOf(BinaryTreeNode node) {
+		return node == null ? 0 : node.height;
+	}
+
+	private static int countOf(BinaryTreeNode node) {
+		return node == null ? 0 : node.count;
+	}
+
+	/** Recomputes a node's height and subtree size from its children's. */
+	private static void update(BinaryTreeNode node) {
+		int leftHeight = heightOf(node.left);
+		int rightHeight = heightOf(node.right);
+		node.height = (byte)((leftHeight > rightHeight ? leftHeight : rightHeight) + 1);
+		node.count = countOf(node.left) + countOf(node.right) + 1;
+	}
+
+	private static BinaryTreeNode rotateLeft(BinaryTreeNode node) {
+		BinaryTreeNode newTop = node.right;
+		node.right = newTop.left;
+		newTop.left = node;
+		update(node);
+		update(newTop);
+		return newTop;
+	}
+
+	private static BinaryTreeNode rotateRight(BinaryTreeNode node) {
+		BinaryTreeNode newTop = node.left;
+		node.left = newTop.right;
+		newTop.right = node;
+		update(node);
+		update(newTop);
+		return newTop;
+	}
+
+	/** Updates a node's height and, if its subtrees' heights differ by more than one,
+	 *  rotates it.
+	 *
+	 * @return The node which ends up at the top of the subtree.
+	 */
+	private static BinaryTreeNode rebalance(BinaryTreeNode node) {
+		int balance = heightOf(node.left) - heightOf(node.right);
+		if(balance > 1) {
+			if(heightOf(node.left.left) < heightOf(node.left.right))
+				node.left = rotateLeft(node.left);
+			return rotateRight(node);
+		}
+		if(balance < -1) {
+			if(heightOf(node.right.right) < heightOf(node.right.left))
+				node.right = rotateRight(node.right);
+			return rotateLeft(node);
+		}
+		update(node);
+		return node;
+	}
+
+	/** Rebalances the nodes in path, bottom up, after a node was inserted below them.
+	 *
+	 * @param depth The path's length. path[depth - 1] is the new node's parent.
+	 */
+	private void rebalanceAfterInsertion(int depth) {
+		for(int i = depth - 1; i > 0; --i) {
+			BinaryTreeNode node = path[i];
+			int oldHeight = node.height;
+			BinaryTreeNode newTop = rebalance(node);
+			if(newTop != node) {
+				// a rotation after an insertion restores the subtree's previous height
+				replaceChild(path[i - 1], node, newTop);
+				break;
+			}
+			if(node.height == oldHeight)
+				break;
+		}
+	}
+
+	/** Rebalances the nodes in path, bottom up, after a node was removed below them.
+	 *
+	 * @param depth The path's length. path[depth - 1] is the lowest node which
+	 *        lost a descendant.
+	 */
+	private void rebalanceAfterRemoval(int depth) {
+		for(int i = depth - 1; i > 0; --i) {
+			BinaryTreeNode node = path[i];
+			int oldHeight = node.height;
+			BinaryTreeNode newTop = rebalance(node);
+			if(newTop != node) {
+				replaceChild(path[i - 1], node, newTop);
+				rotatedOnRemoval = true;
+			}
+			if(newTop.height == oldHeight)
+				break;
 		}
-		return prevNode;
 	}
 	
-	private Object removeNode(BinaryTreeNode nodeToRemove, BinaryTreeNode parent) {
-		Assert.assert(nodeToRemove == parent.left || nodeToRemove == parent.right,
-				"parent isn't really this node's parent node");
-		if(nodeToRemove == null)
-			return null;
-		Object result = nodeToRemove.value;
-		if(nodeToRemove.left == null) {
-			if(nodeToRemove.right == null) {				
-				if(nodeToRemove == parent.left)
-					parent.left = null;
-				else
-					parent.right = null;
-				if(nodeToRemove == root) {
-					clear();
-					return result;
+	/** Checks that other can be combined with this tree by the set operations,
+	 *  and tells whether they can split and join the trees' nodes, which needs
+	 *  both trees balanced and other keeping any subtree sizes this one does.
+	 */
+	private boolean canJoin(BinaryTree other) {
+		if(comparator != other.comparator)
+			throw new InvalidOperationException(
+					"Set operations can't work on trees with different comparators");
+		return balanced && other.balanced && (other.orderStatistics || !orderStatistics);
+	}
+
+	/** Adds all of other's entries to this tree, leaving other empty.
+	 *
+	 *  Between balanced trees, this splits and joins the two trees' nodes,
+	 *  without allocating any, in O(m log(n/m + 1)) time, m being the smaller
+	 *  tree's size and n the larger's. Otherwise, the entries are put one by one.
+	 *
+	 * @param other A tree with the same comparator as this one.
+	 * @param resolver Decides the values of keys in both trees, or null to have
+	 *        other's values replace this tree's, as putAll does.
+	 */
+	public void union(BinaryTree other, ValueResolver resolver) {
+		boolean join = canJoin(other);
+		if(other == this)
+			return;
+		if(!join) {
+			MapIterator it = other.fastIterator();
+			while(it.hasNext()) {
+				Map.Entry entry = it.next();
+				Object key = entry.getKey();
+				Object value = entry.getValue();
+				if(resolver != null) {
+					BinaryTreeNode node = findNodeWithKey(key);
+					if(node != null)
+						value = resolver.resolve(key, node.value, value);
 				}
-			}
-			else {
-				if(nodeToRemove == parent.left)
-					parent.left = nodeToRemove.right;
-				else
-					parent.right = nodeToRemove.right; 
+				put(key, value);
 			}
 		}
 		else {
-			if(nodeToRemove == parent.left) {
-				if(nodeToRemove == parent.left)
-					parent.left = nodeToRemove.left;
-				else
-					parent.right = nodeToRemove.left;
-			}
-			else {
-				BinaryTreeNode predecessorParent = findPredecessorParent(nodeToRemove);
-				BinaryTreeNode predecessor = predecessorParent.right;
-				nodeToRemove.key = predecessor.key;
-				nodeToRemove.value = predecessor.value;
-				removeNode(predecessor, predecessorParent);
-				++size; // that removeNode operation decreases the size one more time than needed
-				// that needs to be reverted.
+			hash += other.hash;
+			setOpMatches = 0;
+			BinaryTreeNode newRoot = union(root, other.root, resolver);
+			root = dummy.left = dummy.right = newRoot;
+			size += other.size - setOpMatches;
+			++modCount;
+		}
+		other.clear();
+	}
+
+	/** Removes the entries whose keys aren't in other from this tree, leaving
+	 *  other empty. The entries kept keep this tree's values.
+	 *
+	 *  Between balanced trees, this takes O(m log(n/m + 1)) time, as
+	 *  {@link #union} does. Otherwise, the keys are looked up one by one.
+	 *
+	 * @param other A tree with the same comparator as this one.
+	 */
+	public void intersect(BinaryTree other) {
+		boolean join = canJoin(other);
+		if(other == this)
+			return;
+		if(!join) {
+			MapIterator it = iterator();
+			while(it.hasNext()) {
+				if(!other.containsKey(it.next().getKey()))
+					it.remove();
 			}
 		}
-		--size;
-		return result;
+		else {
+			hash = 0;
+			setOpMatches = 0;
+			BinaryTreeNode newRoot = intersect(root, other.root);
+			root = dummy.left = dummy.right = newRoot;
+			size = setOpMatches;
+			++modCount;
+		}
+		other.clear();
 	}
-	
 
-	public Object remove(Object key) {
-		if(root == null)
+	/** Removes the entries whose keys are in other from this tree, leaving
+	 *  other empty.
+	 *
+	 *  Between balanced trees, this takes O(m log(n/m + 1)) time, as
+	 *  {@link #union} does. Otherwise, the keys are removed one by one.
+	 *
+	 * @param other A tree with the same comparator as this one.
+	 */
+	public void difference(BinaryTree other) {
+		boolean join = canJoin(other);
+		if(other == this) {
+			clear();
+			return;
+		}
+		if(!join) {
+			MapIterator it = other.fastIterator();
+			while(it.hasNext())
+				remove(it.next().getKey());
+		}
+		else {
+			setOpMatches = 0;
+			BinaryTreeNode newRoot = difference(root, other.root);
+			root = dummy.left = dummy.right = newRoot;
+			size -= setOpMatches;
+			++modCount;
+		}
+		other.clear();
+	}
+
+	private BinaryTreeNode union(BinaryTreeNode node, BinaryTreeNode otherNode,
+			ValueResolver resolver) {
+		if(node == null)
+			return otherNode;
+		if(otherNode == null)
+			return node;
+
+		BinaryTreeNode left = node.left;
+		BinaryTreeNode right = node.right;
+		split(otherNode, node.key);
+		BinaryTreeNode otherLeft = splitLeft;
+		BinaryTreeNode match = splitNode;
+		BinaryTreeNode otherRight = splitRight;
+		if(match != null) {
+			Object value = resolver == null ? match.value :
+					resolver.resolve(node.key, node.value, match.value);
+			hash += entryHash(node.key, value) - entryHash(node.key, node.value) -
+					entryHash(match.key, match.value);
+			node.value = value;
+			++setOpMatches;
+		}
+		return join(union(left, otherLeft, resolver), node,
+				union(right, otherRight, resolver));
+	}
+
+	private BinaryTreeNode intersect(BinaryTreeNode node, BinaryTreeNode otherNode) {
+		if(node == null || otherNode == null)
 			return null;
 
-		BinaryTreeNode nearest = findNodePriorTo(key, false);
-		BinaryTreeNode nodeToRemove = null;
-		if(nearest == dummy)
-			nodeToRemove = root;
+		BinaryTreeNode left = node.left;
+		BinaryTreeNode right = node.right;
+		split(otherNode, node.key);
+		BinaryTreeNode otherRight = splitRight;
+		boolean matched = splitNode != null;
+		left = intersect(left, splitLeft);
+		right = intersect(right, otherRight);
+		if(!matched)
+			return join(left, right);
+		hash += entryHash(node.key, node.value);
+		++setOpMatches;
+		return join(left, node, right);
+	}
+
+	private BinaryTreeNode difference(BinaryTreeNode node, BinaryTreeNode otherNode) {
+		if(node == null || otherNode == null)
+			return node;
+
+		BinaryTreeNode otherRight = otherNode.right;
+		split(node, otherNode.key);
+		BinaryTreeNode right = splitRight;
+		BinaryTreeNode match = splitNode;
+		BinaryTreeNode left = difference(splitLeft, otherNode.left);
+		right = difference(right, otherRight);
+		if(match != null) {
+			hash -= entryHash(match.key, match.value);
+			++setOpMatches;
+		}
+		return join(left, right);
+	}
+
+	/** Splits the subtree starting at node into the nodes with keys lower than
+	 *  key, which end up in splitLeft, the node holding key, if any, which ends
+	 *  up in splitNode with no children, and those with higher keys, in splitRight.
+	 */
+	private void split(BinaryTreeNode node, Object key) {
+		if(node == null) {
+			splitLeft = splitNode = splitRight = null;
+			return;
+		}
+
+		int compareValue = comparator.compare(key, node.key);
+		if(compareValue == 0) {
+			splitLeft = node.left;
+			splitRight = node.right;
+			node.left = node.right = null;
+			update(node);
+			splitNode = node;
+		}
+		else if(compareValue < 0) {
+			BinaryTreeNode right = node.right;
+			split(node.left, key);
+			splitRight = join(splitRight, node, right);
+		}
 		else {
-			int compareValue = comparator.compare(key, nearest.key);
-			Assert.assert(compareValue != 0, "Duplicate key detected");		
-					
-			if(compareValue < 0)
-				nodeToRemove = nearest.left;
-			else
-				nodeToRemove = nearest.right;
+			BinaryTreeNode left = node.left;
+			split(node.right, key);
+			splitLeft = join(left, node, splitLeft);
+		}
+	}
+
+	/** Joins two balanced subtrees into one, all of whose keys in left are lower
+	 *  than middle's, which are lower than all of those in right.
+	 *
+	 * @return The joined subtree's top node.
+	 */
+	private static BinaryTreeNode join(BinaryTreeNode left, BinaryTreeNode middle,
+			BinaryTreeNode right) {
+		int leftHeight = heightOf(left);
+		int rightHeight = heightOf(right);
+		if(leftHeight > rightHeight + 1) {
+			// middle and right go down left's right side, to where they fit
+			left.right = join(left.right, middle, right);
+			return rebalance(left);
+		}
+		if(rightHeight > leftHeight + 1) {
+			right.left = join(left, middle, right.left);
+			return rebalance(right);
+		}
+		middle.left = left;
+		middle.right = right;
+		update(middle);
+		return middle;
+	}
+
+	/** Joins two balanced subtrees, all of whose keys in left are lower than
+	 *  those in right, taking left's last node out to put between them.
+	 */
+	private BinaryTreeNode join(BinaryTreeNode left, BinaryTreeNode right) {
+		if(left == null)
+			return right;
+		if(right == null)
+			return left;
+		left = removeLast(left);
+		return join(left, splitNode, right);
+	}
+
+	/** Takes the last node out of a balanced subtree, storing it in splitNode.
+	 *
+	 * @return The subtree's new top node.
+	 */
+	private BinaryTreeNode removeLast(BinaryTreeNode node) {
+		if(node.right == null) {
+			splitNode = node;
+			BinaryTreeNode left = node.left;
+			node.left = null;
+			return left;
 		}
-		return removeNode(nodeToRemove, nearest);		
+		node.right = removeLast(node.right);
+		return rebalance(node);
 	}
 	
 	public int size() {
 		return size;
 	}
 
+	private void checkOrderStatistics() {
+		if(!orderStatistics)
+			throw new InvalidOperationException(
+					"Index based methods need the ORDER_STATISTICS option");
+	}
+
+	/** Returns the entry at a given position in key order, in O(height).
+	 *  Needs the {@link #ORDER_STATISTICS} option.
+	 *
+	 * @param index The entry's index, from 0 to size() - 1.
+	 */
+	public Map.Entry getByIndex(int index) {
+		checkOrderStatistics();
+		if(index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		BinaryTreeNode curNode = root;
+		while(true) {
+			int leftCount = countOf(curNode.left);
+			if(index == leftCount)
+				return new Entry(curNode.key, curNode.value);
+
+			if(index < leftCount)
+				curNode = curNode.left;
+			else {
+				index -= leftCount + 1;
+				curNode = curNode.right;
+			}
+		}
+	}
+
+	/** Returns a key's position in key order, in O(height).
+	 *  Needs the {@link #ORDER_STATISTICS} option.
+	 *
+	 * @return The key's index, or -1 if it isn't in the tree.
+	 */
+	public int indexOf(Object key) {
+		checkOrderStatistics();
+		int index = 0;
+		BinaryTreeNode curNode = root;
+		while(curNode != null) {
+			int compareValue = comparator.compare(key, curNode.key);
+			if(compareValue == 0)
+				return index + countOf(curNode.left);
+
+			if(compareValue < 0)
+				curNode = curNode.left;
+			else {
+				index += countOf(curNode.left) + 1;
+				curNode = curNode.right;
+			}
+		}
+		return -1;
+	}
+
+	/** Returns how many keys are less than key. */
+	private int countLessThan(Object key) {
+		int result = 0;
+		BinaryTreeNode curNode = root;
+		while(curNode != null) {
+			if(comparator.compare(key, curNode.key) <= 0)
+				curNode = curNode.left;
+			else {
+				result += countOf(curNode.left) + 1;
+				curNode = curNode.right;
+			}
+		}
+		return result;
+	}
+
+	/** Counts the keys from fromKey, inclusive, to toKey, exclusive, in O(height).
+	 *  Needs the {@link #ORDER_STATISTICS} option.
+	 *
+	 * @param fromKey The lowest key to count, or null for no lower bound.
+	 * @param toKey The key right after the highest one to count, or null for no
+	 *        upper bound.
+	 */
+	public int countInRange(Object fromKey, Object toKey) {
+		checkOrderStatistics();
+		int result = toKey == null ? size : countLessThan(toKey);
+		if(fromKey != null)
+			result -= countLessThan(fromKey);
+		return result < 0 ? 0 : result;
+	}
+
+	/** Returns an iterator which starts at the entry with a given index in key order.
+	 *  Needs the {@link #ORDER_STATISTICS} option.
+	 *
+	 * @param index The first entry's index, from 0 to size(). If it's size(),
+	 *        the iterator is empty.
+	 */
+	public MapIterator iteratorAt(int index) {
+		checkOrderStatistics();
+		if(index < 0 || index > size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		if(stats != null)
+			++stats.iterators;
+		BinaryTreeIterator result = new BinaryTreeIterator(this, null, false, false);
+		result.seekIndex(index);
+		return result;
+	}
+
 	public Comparator getKeyComparator() {
 		return comparator;
 	}
 
 	public MapIterator iterator() {
-		return new BinaryTreeIterator(this, root);
+		if(stats != null)
+			++stats.iterators;
+		return new BinaryTreeIterator(this, null, false, false);
+	}
+
+	public MapIterator iterator(Object startKey, boolean descending) {
+		if(stats != null)
+			++stats.iterators;
+		return new BinaryTreeIterator(this, startKey, descending, false);
+	}
+
+	/** Returns an iterator which doesn't allocate anything after being created.
+	 *  Its next method always returns the same Entry, updated to hold the
+	 *  current key and value, so entries must not be kept across calls to next.
+	 *  Calling setValue on that entry changes the value in the tree.
+	 */
+	public MapIterator fastIterator() {
+		if(stats != null)
+			++stats.iterators;
+		return new BinaryTreeIterator(this, null, false, true);
+	}
+
+	public SortedMap subMap(Object fromKey, Object toKey) {
+		return new SortedSubMap(this, fromKey, toKey);
+	}
+
+	/** Sets how many threads the bulk operations, such as {@link #forEach},
+	 *  may use at once, counting the calling one. The default is 4.
+	 *
+	 * @param threads The number of threads, 1 to do everything in the calling thread.
+	 * @throws IllegalArgumentException If threads is less than 1.
+	 */
+	public void setBulkThreads(int threads) {
+		if(threads < 1)
+			throw new IllegalArgumentException("There must be at least 1 thread");
+		bulkThreads = threads;
+	}
+
+	/** Calls processor on every entry, from several threads, which take turns
+	 *  walking subtrees of at most about threshold entries. No more threads are
+	 *  used than {@link #setBulkThreads} allows. If the tree has no more than
+	 *  threshold entries, it all happens in the calling thread.
+	 *
+	 *  The tree must not change until this returns. The entries aren't
+	 *  processed in order, and the subtrees are only even if the tree is balanced.
+	 *
+	 * @param threshold The most entries a subtree has, as estimated from the
+	 *        tree's size. Around size() divided by a few times the number of
+	 *        threads usually works best, so that they finish together.
+	 * @param processor Called for each entry, possibly from several threads at once.
+	 *        What it returns is ignored.
+	 * @throws RuntimeException Whatever processor threw, once all threads are done.
+	 */
+	public void forEach(int threshold, EntryProcessor processor) {
+		new BulkOperation(BulkOperation.FOR_EACH, processor, null, threshold, bulkThreads)
+				.run(root, size);
+	}
+
+	/** Combines all the values in the tree, splitting the work between threads
+	 *  like {@link #forEach} does.
+	 *
+	 * @param reducer Combines the values, which it's never given if null.
+	 * @return The combined values, or null if there were none.
+	 */
+	public Object reduce(int threshold, Reducer reducer) {
+		return mapReduce(threshold, null, reducer);
+	}
+
+	/** Transforms every entry and combines the results, splitting the work
+	 *  between threads like {@link #forEach} does.
+	 *
+	 * @param mapper Transforms each entry. Null results are left out. If mapper
+	 *        is null, the entries' values are used.
+	 * @param reducer Combines the results.
+	 * @return The combined results, or null if there were none.
+	 */
+	public Object mapReduce(int threshold, EntryProcessor mapper, Reducer reducer) {
+		return new BulkOperation(BulkOperation.MAP_REDUCE, mapper, reducer, threshold, bulkThreads)
+				.run(root, size);
+	}
+
+	/** Looks for the first entry, in key order, for which searcher returns
+	 *  something other than null, splitting the work between threads like
+	 *  {@link #forEach} does. Threads stop once a match is found before their
+	 *  part of the tree.
+	 *
+	 * @return What searcher returned for the first match, or null if nothing matched.
+	 */
+	public Object search(int threshold, EntryProcessor searcher) {
+		return new BulkOperation(BulkOperation.SEARCH, searcher, null, threshold, bulkThreads)
+				.run(root, size);
+	}
+
+	/** Starts or stops collecting statistics about the tree's use. Starting
+	 *  resets all the counts. While stopped, which is the default, the tree
+	 *  only pays for a null check per operation.
+	 *
+	 *  The counts are plain fields, so with several threads reading the tree
+	 *  at once, as {@link ConcurrentMap} allows, some may be lost.
+	 */
+	public void setStatisticsEnabled(boolean enabled) {
+		stats = enabled ? new TreeStats() : null;
+	}
+
+	/** Returns the statistics collected since they were enabled, along with the
+	 *  tree's current height and node depths, which take O(n) to work out.
+	 *
+	 * @return The statistics, or null if they're disabled.
+	 */
+	public TreeStats getStats() {
+		if(stats == null)
+			return null;
+		TreeStats result = stats.copy();
+		int[] histogram = new int[1];
+		// walks the tree without recursion, since an unbalanced one can be very deep
+		BinaryTreeNode[] nodes = new BinaryTreeNode[16];
+		int[] depths = new int[16];
+		int stackSize = 0;
+		if(root != null) {
+			nodes[stackSize] = root;
+			depths[stackSize++] = 1;
+		}
+		while(stackSize > 0) {
+			BinaryTreeNode node = nodes[--stackSize];
+			int depth = depths[stackSize];
+			nodes[stackSize] = null;
+			if(depth >= histogram.length) {
+				int[] newHistogram = new int[depth * 2];
+				System.arraycopy(histogram, 0, newHistogram, 0, histogram.length);
+				histogram = newHistogram;
+			}
+			++histogram[depth];
+			if(depth > result.height)
+				result.height = depth;
+
+			if(stackSize + 2 > nodes.length) {
+				BinaryTreeNode[] newNodes = new BinaryTreeNode[nodes.length * 2];
+				System.arraycopy(nodes, 0, newNodes, 0, stackSize);
+				nodes = newNodes;
+				int[] newDepths = new int[nodes.length];
+				System.arraycopy(depths, 0, newDepths, 0, stackSize);
+				depths = newDepths;
+			}
+			if(node.left != null) {
+				nodes[stackSize] = node.left;
+				depths[stackSize++] = depth + 1;
+			}
+			if(node.right != null) {
+				nodes[stackSize] = node.right;
+				depths[stackSize++] = depth + 1;
+			}
+		}
+		result.depthHistogram = new int[result.height + 1];
+		System.arraycopy(histogram, 0, result.depthHistogram, 0, result.height + 1);
+		return result;
 	}
 }
 
@@ -319,10 +1291,21 @@ class BinaryTreeNode {
 		left = right = null;
 		key = newKey;
 		value = newValue;
+		height = 1;
+		count = 1;
 	}
 	
 	BinaryTreeNode left;
 	BinaryTreeNode right;
 	
 	Object key, value;	
+
+	/** The height of the subtree starting at this node. Only kept up to date
+	 *  in balanced trees.
+	 */
+	byte height;
+	/** The number of nodes in the subtree starting at this node. Only kept up
+	 *  to date in trees with order statistics.
+	 */
+	int count;
 }
@@ -14,46 +14,229 @@
 */
 package net.joaosilva.j2meds;
 
-import java.util.Stack;
+import java.util.NoSuchElementException;
 
 import net.joaosilva.j2meds.Map.Entry;
 
 class BinaryTreeIterator implements MapIterator {
-	private Stack nodesToProcess;
+	/** The path from the root down to the next node to be returned, which is
+	 *  on top of the stack.
+	 */
+	private BinaryTreeNode[] nodesToProcess;
+	private int stackSize;
 	private BinaryTreeNode curNode;
+	/** Where curNode is in nodesToProcess. The nodes below it there are the path
+	 *  to it, even if it was popped, since popping leaves them in place.
+	 */
+	private int curIndex;
 	private BinaryTree source;
+	/** The tree's modification count as of the last change made through this iterator. */
+	private int expectedModCount;
+	private boolean descending;
+	/** The entry returned by every call to next, if the iterator reuses it. */
+	private ReusedEntry reusedEntry;
 	
-	public BinaryTreeIterator(BinaryTree source, BinaryTreeNode root) {
+	/** Creates a new iterator over a tree.
+	 * 
+	 * @param source The tree to iterate over.
+	 * @param startKey The key to start at, as in {@link SortedMap#iterator(Object, boolean)}.
+	 *        If null, starts at the first node, or the last if descending.
+	 * @param descending Whether to go from the largest keys to the smallest.
+	 * @param reuseEntry If true, next always returns the same Entry, updated
+	 *        for the current node, instead of creating a new one.
+	 */
+	public BinaryTreeIterator(BinaryTree source, Object startKey, boolean descending,
+			boolean reuseEntry) {
 		this.source = source;
+		this.descending = descending;
+		expectedModCount = source.getModCount();
 		curNode = null;
-		nodesToProcess = new Stack();
-		pushAllNodesToTheLeftOf(root);
+		BinaryTreeNode root = source.getRoot();
+		// a balanced tree's height is known, so the stack never has to grow
+		int height = source.isBalanced() && root != null ? root.height : 16;
+		nodesToProcess = new BinaryTreeNode[height];
+		if(reuseEntry)
+			reusedEntry = new ReusedEntry();
+		if(startKey == null)
+			pushAllNodesTowardsStart(root);
+		else
+			seek(startKey);
 	}	
 	
-	private void pushAllNodesToTheLeftOf(BinaryTreeNode node) {
+	private void push(BinaryTreeNode node) {
+		if(stackSize == nodesToProcess.length) {
+			BinaryTreeNode[] newStack = new BinaryTreeNode[stackSize * 2];
+			System.arraycopy(nodesToProcess, 0, newStack, 0, stackSize);
+			nodesToProcess = newStack;
+		}
+		nodesToProcess[stackSize++] = node;
+	}
+	
+	private BinaryTreeNode pop() {
+		BinaryTreeNode node = nodesToProcess[--stackSize];
+		nodesToProcess[stackSize] = null;
+		return node;
+	}	
+	
+	/** Pushes node and all nodes to its left, or to its right if descending. */
+	private void pushAllNodesTowardsStart(BinaryTreeNode node) {
 		BinaryTreeNode iterNode = node;
 		while(iterNode != null) {		
-			nodesToProcess.addElement(iterNode);
-			iterNode = iterNode.left;
+			push(iterNode);
+			iterNode = descending ? iterNode.right : iterNode.left;
 		}
 	}
 
 	public boolean hasNext() {
-		return !nodesToProcess.empty();
+		return stackSize > 0;
+	}
+
+	private void checkForModification() {
+		if(source.getModCount() != expectedModCount)
+			throw new ConcurrentModificationException(
+					"The tree was changed other than through this iterator");
 	}
 
 	public Entry next() {
-		curNode = (BinaryTreeNode)nodesToProcess.pop();
-		pushAllNodesToTheLeftOf(curNode.right);
+		checkForModification();
+		if(stackSize == 0)
+			throw new NoSuchElementException();
+		curIndex = stackSize - 1;
+		curNode = nodesToProcess[curIndex];
+		BinaryTreeNode towardsEnd = descending ? curNode.left : curNode.right;
+		if(towardsEnd != null)
+			pushAllNodesTowardsStart(towardsEnd);
+		else {
+			/* go up until coming from the start side of a node, which is next,
+			 * leaving the popped nodes in the stack's array for remove
+			 */
+			BinaryTreeNode child = nodesToProcess[--stackSize];
+			while(stackSize > 0 && child == (descending ? 
+					nodesToProcess[stackSize - 1].left : nodesToProcess[stackSize - 1].right))
+				child = nodesToProcess[--stackSize];
+		}
 		
-		return new Entry(curNode.key, curNode.value);
+		if(reusedEntry == null)
+			return new Entry(curNode.key, curNode.value);
+		reusedEntry.key = curNode.key;
+		reusedEntry.value = curNode.value;
+		return reusedEntry;
 	}
 
+	/** Removes the entry last returned by next, using the path to it kept in
+	 *  the stack rather than looking for it from the root.
+	 */
 	public void remove() {
-		// note: this only works because BinaryTree's remove deletes the predecessor node,
-		// if the node to remove has 2 children. If it deleted the successor node, more
-		// would have to be done.
-		source.remove(curNode.key);
+		if(curNode == null)
+			throw new InvalidOperationException(
+					"remove can only be called once after each call to next");
+		checkForModification();
+		BinaryTreeNode parent = curIndex > 0 ? nodesToProcess[curIndex - 1] : null;
+		boolean wasLeftChild = parent != null && parent.left == curNode;
+		boolean onPath = stackSize > curIndex && nodesToProcess[curIndex] == curNode;
+		boolean hadBothChildren = curNode.left != null && curNode.right != null;
+		BinaryTreeNode nextNode = stackSize > 0 ? nodesToProcess[stackSize - 1] : null;
+		boolean rotated = source.removeAt(nodesToProcess, curIndex + 1);
+		expectedModCount = source.getModCount();
+		curNode = null;
+
+		if(rotated) {
+			// the path to the next node may have been rotated, so find it again
+			while(stackSize > 0)
+				pop();
+			if(nextNode != null)
+				seek(nextNode.key);
+		}
+		else if(onPath) {
+			/* The next node is below the removed one, whose place was taken by
+			 * its only child, which is next on the path, or by its successor.
+			 */
+			BinaryTreeNode replacement = parent == null ? source.getRoot() :
+					wasLeftChild ? parent.left : parent.right;
+			if(hadBothChildren && !descending) {
+				// the successor was the next node, at the end of the path
+				while(stackSize > curIndex + 1)
+					pop();
+			}
+			else if(!hadBothChildren) {
+				System.arraycopy(nodesToProcess, curIndex + 1, nodesToProcess, curIndex,
+						stackSize - curIndex - 1);
+				pop();
+			}
+			nodesToProcess[curIndex] = replacement;
+		}
+		// otherwise, the removed node was below the path, which is still right
+		for(int i = stackSize; i < nodesToProcess.length && nodesToProcess[i] != null; ++i)
+			nodesToProcess[i] = null;
+	}
+
+	/** Rebuilds the stack so that the next node to be returned is the first one
+	 *  at or after key, in the iteration's direction.
+	 */
+	private void seek(Object key) {
+		Comparator comparator = source.getKeyComparator();
+		while(stackSize > 0)
+			pop();
+		int startDepth = 0;
+		BinaryTreeNode iterNode = source.getRoot();
+		while(iterNode != null) {
+			push(iterNode);
+			int compareValue = comparator.compare(key, iterNode.key);
+			if(compareValue == 0) {
+				startDepth = stackSize;
+				break;
+			}
+
+			if(compareValue < 0) {
+				if(!descending)
+					startDepth = stackSize;
+				iterNode = iterNode.left;
+			}
+			else {
+				if(descending)
+					startDepth = stackSize;
+				iterNode = iterNode.right;
+			}
+		}
+		// the path to the starting node is the part of the path to key above it
+		while(stackSize > startDepth)
+			pop();
 	}
 
+	/** Rebuilds the stack so that the next node to be returned is the one with
+	 *  the given index in key order. The tree must keep order statistics.
+	 */
+	void seekIndex(int index) {
+		while(stackSize > 0)
+			pop();
+		int startDepth = 0;
+		BinaryTreeNode iterNode = source.getRoot();
+		while(iterNode != null) {
+			push(iterNode);
+			int leftCount = iterNode.left == null ? 0 : iterNode.left.count;
+			if(index == leftCount) {
+				startDepth = stackSize;
+				break;
+			}
+
+			if(index < leftCount) {
+				startDepth = stackSize;
+				iterNode = iterNode.left;
+			}
+			else {
+				index -= leftCount + 1;
+				iterNode = iterNode.right;
+			}
+		}
+		while(stackSize > startDepth)
+			pop();
+	}
+	
+	/** An entry whose setValue changes the value in the tree too. */
+	private class ReusedEntry extends Entry {
+		public Object setValue(Object newValue) {
+			value = newValue;
+			return source.replaceValue(curNode, newValue);
+		}
+	}
 }
@@ -15,13 +15,20 @@
 
 package net.joaosilva.j2meds;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Hashtable;
+
 import net.joaosilva.j2meds.Map.Entry;
 import jmunit.framework.cldc11.TestCase;
 
 public class BinaryTreeTest extends TestCase {
 	
 	public BinaryTreeTest() {
-		super(5, "BinaryTreeTest");
+		super(19, "BinaryTreeTest");
 	}
 
 	public void test(int testNumber) {
@@ -41,6 +48,48 @@ public class BinaryTreeTest extends TestCase {
 		case 4:
 			testIntegerOrder();
 			break;
+		case 5:
+			testRemoveWithChildren();
+			break;
+		case 6:
+			testBalancedSortedInsertion();
+			break;
+		case 7:
+			testFastIterator();
+			break;
+		case 8:
+			testNavigation();
+			break;
+		case 9:
+			testSubMap();
+			break;
+		case 10:
+			testFromSorted();
+			break;
+		case 11:
+			testOrderStatistics();
+			break;
+		case 12:
+			testWriteAndRead();
+			break;
+		case 13:
+			testEqualsAndHashCode();
+			break;
+		case 14:
+			testStats();
+			break;
+		case 15:
+			testSetOperations();
+			break;
+		case 16:
+			testBulkOperations();
+			break;
+		case 17:
+			testIteratorRemoveAndFailFast();
+			break;
+		case 18:
+			testPutAllSorted();
+			break;
 		
 		default:
 			break;
@@ -180,4 +229,448 @@ public class BinaryTreeTest extends TestCase {
 			}
 		}
 	}
+
+	public void testRemoveWithChildren() {
+		BinaryTree b = new BinaryTree(Comparators.INTEGER);
+		b.put(new Integer(5), "five");
+		b.put(new Integer(3), "three");
+		b.put(new Integer(8), "eight");
+		b.put(new Integer(1), "one");
+		b.put(new Integer(4), "four");
+		b.put(new Integer(9), "nine");
+		assertEquals(0, ((String)b.remove(new Integer(5))).compareTo("five"));
+		assertEquals(0, ((String)b.remove(new Integer(3))).compareTo("three"));
+		assertEquals(4, b.size());
+		assertFalse(b.containsKey(new Integer(5)));
+		assertFalse(b.containsKey(new Integer(3)));
+		assertTrue(b.containsKey(new Integer(1)));
+		assertTrue(b.containsKey(new Integer(4)));
+		assertTrue(b.containsKey(new Integer(8)));
+		assertTrue(b.containsKey(new Integer(9)));
+	}
+	
+	public void testBalancedSortedInsertion() {
+		BinaryTree b = new BinaryTree(Comparators.INTEGER, BinaryTree.BALANCED);
+		for(int i = 0; i < 1000; ++i)
+			b.put(new Integer(i), null);
+		assertEquals(1000, b.size());
+		for(int i = 0; i < 1000; i += 2)
+			b.remove(new Integer(i));
+		assertEquals(500, b.size());
+		MapIterator it = b.iterator();
+		int expected = 1;
+		while(it.hasNext()) {
+			assertEquals(expected, ((Integer)it.next().getKey()).intValue());
+			it.remove();
+			expected += 2;
+		}
+		assertEquals(1001, expected);
+		assertTrue(b.isEmpty());
+	}
+	
+	public void testFastIterator() {
+		BinaryTree b = new BinaryTree(Comparators.INTEGER, BinaryTree.BALANCED);
+		for(int i = 0; i < 10; ++i)
+			b.put(new Integer(i), null);
+		MapIterator it = b.fastIterator();
+		Entry first = it.next();
+		first.setValue("zero");
+		int expected = 1;
+		while(it.hasNext()) {
+			Entry e = it.next();
+			assertTrue(e == first);
+			assertEquals(expected++, ((Integer)e.getKey()).intValue());
+		}
+		assertEquals(10, expected);
+		assertEquals(0, ((String)b.get(new Integer(0))).compareTo("zero"));
+	}
+	
+	public void testNavigation() {
+		BinaryTree b = new BinaryTree(Comparators.INTEGER, BinaryTree.BALANCED);
+		assertNull(b.firstKey());
+		assertNull(b.floorKey(new Integer(3)));
+		for(int i = 0; i < 100; i += 10)
+			b.put(new Integer(i), null);
+		assertEquals(0, ((Integer)b.firstKey()).intValue());
+		assertEquals(90, ((Integer)b.lastKey()).intValue());
+		assertEquals(30, ((Integer)b.floorKey(new Integer(35))).intValue());
+		assertEquals(30, ((Integer)b.floorKey(new Integer(30))).intValue());
+		assertEquals(20, ((Integer)b.lowerKey(new Integer(30))).intValue());
+		assertEquals(40, ((Integer)b.ceilingKey(new Integer(35))).intValue());
+		assertEquals(40, ((Integer)b.higherKey(new Integer(30))).intValue());
+		assertNull(b.lowerKey(new Integer(0)));
+		assertNull(b.higherKey(new Integer(90)));
+		
+		MapIterator it = b.iterator(new Integer(45), false);
+		assertEquals(50, ((Integer)it.next().getKey()).intValue());
+		assertEquals(60, ((Integer)it.next().getKey()).intValue());
+		it = b.iterator(new Integer(45), true);
+		assertEquals(40, ((Integer)it.next().getKey()).intValue());
+		assertEquals(30, ((Integer)it.next().getKey()).intValue());
+	}
+	
+	public void testSubMap() {
+		BinaryTree b = new BinaryTree(Comparators.INTEGER, BinaryTree.BALANCED);
+		for(int i = 0; i < 100; ++i)
+			b.put(new Integer(i), null);
+		SortedMap sub = b.subMap(new Integer(20), new Integer(30));
+		assertEquals(10, sub.size());
+		assertEquals(20, ((Integer)sub.firstKey()).intValue());
+		assertEquals(29, ((Integer)sub.lastKey()).intValue());
+		assertFalse(sub.containsKey(new Integer(30)));
+		assertNull(sub.higherKey(new Integer(29)));
+		
+		MapIterator it = sub.iterator(null, true);
+		int expected = 29;
+		while(it.hasNext()) {
+			assertEquals(expected--, ((Integer)it.next().getKey()).intValue());
+			if(expected % 2 == 0)
+				it.remove();
+		}
+		assertEquals(19, expected);
+		assertEquals(5, sub.size());
+		assertEquals(95, b.size());
+		
+		try {
+			sub.put(new Integer(30), null);
+			assertTrue(false);
+		}
+		catch(InvalidKeyException e) {
+			assertTrue(true);
+		}
+		sub.clear();
+		assertTrue(sub.isEmpty());
+		assertEquals(90, b.size());
+	}
+	
+	public void testFromSorted() {
+		Object[] keys = new Object[1000];
+		Object[] values = new Object[1000];
+		for(int i = 0; i < keys.length; ++i) {
+			keys[i] = new Integer(i);
+			values[i] = new Integer(-i);
+		}
+		BinaryTree b = BinaryTree.fromSorted(Comparators.INTEGER, BinaryTree.BALANCED,
+				keys, values);
+		assertEquals(1000, b.size());
+		for(int i = 0; i < keys.length; ++i)
+			assertEquals(-i, ((Integer)b.get(keys[i])).intValue());
+		b.put(new Integer(1000), null);
+		b.remove(new Integer(500));
+		assertEquals(1000, b.size());
+		
+		BinaryTree copy = new BinaryTree(Comparators.INTEGER, BinaryTree.BALANCED);
+		copy.putAll(b);
+		assertEquals(1000, copy.size());
+		MapIterator it = b.iterator();
+		MapIterator copyIt = copy.iterator();
+		while(it.hasNext())
+			assertTrue(it.next().equals(copyIt.next()));
+		assertFalse(copyIt.hasNext());
+	}
+	
+	public void testOrderStatistics() {
+		BinaryTree b = new BinaryTree(Comparators.INTEGER,
+				BinaryTree.BALANCED | BinaryTree.ORDER_STATISTICS);
+		for(int i = 0; i < 100; ++i)
+			b.put(new Integer(i * 2), null);
+		for(int i = 0; i < 100; i += 4)
+			b.remove(new Integer(i * 2));
+		assertEquals(75, b.size());
+		assertEquals(2, ((Integer)b.getByIndex(0).getKey()).intValue());
+		assertEquals(198, ((Integer)b.getByIndex(74).getKey()).intValue());
+		assertEquals(0, b.indexOf(new Integer(2)));
+		assertEquals(74, b.indexOf(new Integer(198)));
+		assertEquals(-1, b.indexOf(new Integer(8)));
+		assertEquals(-1, b.indexOf(new Integer(3)));
+		// 10, 12, 14, 18
+		assertEquals(4, b.countInRange(new Integer(9), new Integer(20)));
+		assertEquals(4, b.subMap(new Integer(9), new Integer(20)).size());
+		assertEquals(75, b.countInRange(null, null));
+
+		MapIterator it = b.iteratorAt(73);
+		assertEquals(196, ((Integer)it.next().getKey()).intValue());
+		assertEquals(198, ((Integer)it.next().getKey()).intValue());
+		assertFalse(it.hasNext());
+		assertFalse(b.iteratorAt(75).hasNext());
+		try {
+			b.getByIndex(75);
+			fail("getByIndex should have thrown");
+		} catch(IndexOutOfBoundsException e) {
+		}
+		try {
+			new BinaryTree(Comparators.INTEGER).indexOf(new Integer(0));
+			fail("indexOf needs ORDER_STATISTICS");
+		} catch(InvalidOperationException e) {
+		}
+	}
+	
+	public void testWriteAndRead() {
+		BinaryTree b = new BinaryTree(Comparators.STRING);
+		b.put("b", new Long(2));
+		b.put("a", new Long(1));
+		b.put("c", null);
+		b.put("d", new Long(4));
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			b.writeTo(new DataOutputStream(bytes), Codecs.STRING, Codecs.LONG);
+			BinaryTree read = BinaryTree.readFrom(
+					new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())),
+					Comparators.STRING, BinaryTree.BALANCED, Codecs.STRING, Codecs.LONG);
+			assertEquals(4, read.size());
+			assertTrue(read.isBalanced());
+			assertEquals(1, ((Long)read.get("a")).longValue());
+			assertEquals(4, ((Long)read.get("d")).longValue());
+			assertTrue(read.containsKey("c"));
+			assertNull(read.get("c"));
+			assertEquals(b.hashCode(), read.hashCode());
+		} catch(IOException e) {
+			fail(e.getMessage());
+		}
+	}
+	
+	public void testEqualsAndHashCode() {
+		BinaryTree b = new BinaryTree(Comparators.INTEGER);
+		BinaryTree other = new BinaryTree(Comparators.INTEGER, BinaryTree.BALANCED);
+		for(int i = 0; i < 50; ++i) {
+			b.put(new Integer(i), "value");
+			other.put(new Integer(49 - i), "value");
+		}
+		assertTrue(b.equals(other));
+		assertEquals(b.hashCode(), other.hashCode());
+
+		// values count too
+		other.put(new Integer(3), "another value");
+		assertFalse(b.equals(other));
+		assertFalse(other.equals(b));
+		other.put(new Integer(3), "value");
+		assertTrue(other.equals(b));
+
+		OpenHashMap unsorted = new OpenHashMap(Comparators.INTEGER);
+		unsorted.putAll(b);
+		assertTrue(b.equals(unsorted));
+		unsorted.put(new Integer(10), null);
+		assertFalse(b.equals(unsorted));
+
+		b.remove(new Integer(10));
+		b.put(new Integer(10), "value");
+		b.clear();
+		assertEquals(0, b.hashCode());
+
+		// keys equal to the comparator but with different hash codes
+		Comparator ignoreCase = new Comparator() {
+			public int compare(Object first, Object second) {
+				return ((String)first).toLowerCase().compareTo(((String)second).toLowerCase());
+			}
+		};
+		BinaryTree upper = new BinaryTree(ignoreCase);
+		upper.put("KEY", null);
+		BinaryTree lower = new BinaryTree(Comparators.STRING);
+		lower.put("key", null);
+		assertTrue(upper.equals(lower));
+	}
+	
+	public void testStats() {
+		BinaryTree b = new BinaryTree(Comparators.INTEGER);
+		assertNull(b.getStats());
+		b.setStatisticsEnabled(true);
+		// a degenerate tree, 1 to 5 going down to the right
+		for(int i = 1; i <= 5; ++i)
+			b.put(new Integer(i), null);
+		b.get(new Integer(5));
+		b.containsKey(new Integer(6));
+		b.remove(new Integer(1));
+		b.iterator();
+
+		TreeStats stats = b.getStats();
+		assertEquals(5, stats.getPutCount());
+		assertEquals(2, stats.getGetCount());
+		assertEquals(1, stats.getRemoveCount());
+		assertEquals(1, stats.getIteratorCount());
+		// 0 + 1 + 2 + 3 + 4 for the puts, 5 and 5 for the gets, 1 for the remove
+		assertEquals(21, stats.getComparisonCount());
+		assertEquals(5, stats.getMaxSearchDepth());
+		assertEquals(4, stats.getHeight());
+		int[] histogram = stats.getDepthHistogram();
+		assertEquals(5, histogram.length);
+		for(int depth = 1; depth <= 4; ++depth)
+			assertEquals(1, histogram[depth]);
+
+		b.setStatisticsEnabled(false);
+		b.get(new Integer(2));
+		assertNull(b.getStats());
+	}
+	
+	public void testSetOperations() {
+		BinaryTree evens = new BinaryTree(Comparators.INTEGER, BinaryTree.BALANCED);
+		BinaryTree threes = new BinaryTree(Comparators.INTEGER, BinaryTree.BALANCED);
+		for(int i = 0; i < 100; i += 2)
+			evens.put(new Integer(i), "even");
+		for(int i = 0; i < 100; i += 3)
+			threes.put(new Integer(i), "three");
+		evens.union(threes, new ValueResolver() {
+			public Object resolve(Object key, Object value, Object otherValue) {
+				return "both";
+			}
+		});
+		assertTrue(threes.isEmpty());
+		assertEquals(67, evens.size());
+		assertEquals(0, ((String)evens.get(new Integer(6))).compareTo("both"));
+		assertEquals(0, ((String)evens.get(new Integer(9))).compareTo("three"));
+		assertEquals(0, ((String)evens.get(new Integer(8))).compareTo("even"));
+
+		BinaryTree fives = new BinaryTree(Comparators.INTEGER, BinaryTree.BALANCED);
+		for(int i = 0; i < 100; i += 5)
+			fives.put(new Integer(i), null);
+		BinaryTree fivesCopy = new BinaryTree(Comparators.INTEGER);
+		fivesCopy.putAll(fives);
+		evens.intersect(fives);
+		// multiples of 5 which are also multiples of 2 or 3
+		assertEquals(13, evens.size());
+		assertTrue(evens.containsKey(new Integer(15)));
+		assertFalse(evens.containsKey(new Integer(25)));
+
+		// an unbalanced tree gives the same result, one key at a time
+		BinaryTree tens = new BinaryTree(Comparators.INTEGER);
+		for(int i = 0; i < 100; i += 10)
+			tens.put(new Integer(i), null);
+		evens.difference(tens);
+		assertEquals(3, evens.size());
+		assertTrue(evens.containsKey(new Integer(45)));
+		int hash = 0;
+		for(int i = 15; i < 100; i += 30)
+			hash += new Map.Entry(new Integer(i), "three").hashCode();
+		assertEquals(hash, evens.hashCode());
+	}
+	
+	public void testBulkOperations() {
+		BinaryTree b = new BinaryTree(Comparators.INTEGER, BinaryTree.BALANCED);
+		for(int i = 1; i <= 1000; ++i)
+			b.put(new Integer(i), new Integer(i * 2));
+		final int[] visited = new int[1];
+		b.forEach(100, new EntryProcessor() {
+			public Object process(Object key, Object value) {
+				synchronized(visited) {
+					++visited[0];
+				}
+				return null;
+			}
+		});
+		assertEquals(1000, visited[0]);
+
+		Reducer sum = new Reducer() {
+			public Object reduce(Object first, Object second) {
+				return new Integer(((Integer)first).intValue() + ((Integer)second).intValue());
+			}
+		};
+		assertEquals(1001000, ((Integer)b.reduce(100, sum)).intValue());
+		// only the odd keys, in a single thread
+		Object oddSum = b.mapReduce(1000, new EntryProcessor() {
+			public Object process(Object key, Object value) {
+				return ((Integer)key).intValue() % 2 != 0 ? key : null;
+			}
+		}, sum);
+		assertEquals(250000, ((Integer)oddSum).intValue());
+
+		// the first key over 500 which is a multiple of 7, though later ones match too
+		Object found = b.search(10, new EntryProcessor() {
+			public Object process(Object key, Object value) {
+				int k = ((Integer)key).intValue();
+				return k > 500 && k % 7 == 0 ? key : null;
+			}
+		});
+		assertEquals(504, ((Integer)found).intValue());
+		assertNull(new BinaryTree(Comparators.INTEGER).reduce(1, sum));
+
+		// hundreds of subtrees, but never more than two threads
+		final Hashtable threads = new Hashtable();
+		b.setBulkThreads(2);
+		assertEquals(1001000, ((Integer)b.mapReduce(1, new EntryProcessor() {
+			public Object process(Object key, Object value) {
+				threads.put(Thread.currentThread(), value);
+				return value;
+			}
+		}, sum)).intValue());
+		assertTrue(threads.size() <= 2);
+	}
+	
+	public void testIteratorRemoveAndFailFast() {
+		BinaryTree b = new BinaryTree(Comparators.INTEGER,
+				BinaryTree.BALANCED | BinaryTree.ORDER_STATISTICS);
+		for(int i = 0; i < 100; ++i)
+			b.put(new Integer(i), null);
+		MapIterator it = b.iterator(new Integer(80), true);
+		int expected = 80;
+		while(it.hasNext()) {
+			assertEquals(expected, ((Integer)it.next().getKey()).intValue());
+			if(expected-- % 4 != 0)
+				it.remove();
+		}
+		assertEquals(-1, expected);
+		assertEquals(40, b.size());
+		assertEquals(10, b.indexOf(new Integer(40)));
+		assertTrue(b.containsKey(new Integer(99)));
+
+		it = b.iterator();
+		it.next();
+		b.remove(new Integer(99));
+		try {
+			it.next();
+			fail("next should fail after the tree was changed");
+		} catch(ConcurrentModificationException e) {
+		}
+		try {
+			it.remove();
+			fail("remove should fail after the tree was changed");
+		} catch(ConcurrentModificationException e) {
+		}
+	}
+	
+	public void testPutAllSorted() {
+		BinaryTree b = new BinaryTree(Comparators.INTEGER);
+		for(int i = 0; i < 100; ++i)
+			b.put(new Integer(i), new Integer(i * 2));
+		BinaryTree copy = new BinaryTree(Comparators.INTEGER, BinaryTree.BALANCED);
+		copy.putAll(b.subMap(new Integer(20), new Integer(60)));
+		assertEquals(40, copy.size());
+		assertEquals(40, ((Integer)copy.get(new Integer(20))).intValue());
+		assertFalse(copy.containsKey(new Integer(60)));
+
+		// the skip list changes while it's copied, so the copy must agree with itself
+		final ConcurrentSkipListMap skipList = new ConcurrentSkipListMap(Comparators.INTEGER);
+		for(int i = 0; i < 1000; ++i)
+			skipList.put(new Integer(i), null);
+		final boolean[] done = new boolean[1];
+		Thread writer = new Thread() {
+			public void run() {
+				for(int i = 0; i < 1000000 && !done[0]; ++i) {
+					skipList.remove(new Integer(i % 1000));
+					skipList.put(new Integer(1000 + i % 1000), null);
+					skipList.remove(new Integer(1000 + i % 1000));
+					skipList.put(new Integer(i % 1000), null);
+				}
+			}
+		};
+		writer.start();
+		for(int i = 0; i < 50; ++i) {
+			copy = new BinaryTree(Comparators.INTEGER, BinaryTree.BALANCED);
+			copy.putAll(skipList);
+			MapIterator it = copy.iterator();
+			int count = 0;
+			int last = -1;
+			while(it.hasNext()) {
+				int key = ((Integer)it.next().getKey()).intValue();
+				assertTrue(key > last);
+				last = key;
+				++count;
+			}
+			assertEquals(count, copy.size());
+		}
+		done[0] = true;
+		try {
+			writer.join();
+		} catch(InterruptedException e) {
+			fail("Interrupted");
+		}
+	}
 }
@@ -0,0 +1,236 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+import java.util.Vector;
+
+/** Runs one of {@link BinaryTree}'s bulk operations, cutting the tree into
+ *  subtrees which a fixed number of worker threads take in key order, then
+ *  combining their results.
+ *
+ *  CLDC has no thread pools, so the workers are new Threads, started for each
+ *  run; the calling thread is one of them. Subtree sizes are estimated by
+ *  halving the tree's size at every level, as if it were balanced, so
+ *  unbalanced trees may be cut into very uneven parts.
+ */
+class BulkOperation {
+	static final int FOR_EACH = 0;
+	static final int MAP_REDUCE = 1;
+	static final int SEARCH = 2;
+	/** The number of threads used when not told otherwise. */
+	static final int DEFAULT_THREADS = 4;
+
+	private int operation;
+	/** Processes each entry. In MAP_REDUCE, null means using the values themselves. */
+	private EntryProcessor processor;
+	private Reducer reducer;
+	private int threshold;
+	/** The most threads working at once, counting the calling one. */
+	private int threadCount;
+	/** The parts the tree is cut into, in key order. */
+	private Vector parts;
+	/** The index of the next part no worker has taken yet. */
+	private int nextPart;
+	/** The index of the first part known to hold a match, when searching. */
+	private volatile int firstMatch;
+
+	BulkOperation(int operation, EntryProcessor processor, Reducer reducer,
+			int threshold, int threadCount) {
+		if(threshold < 1)
+			throw new IllegalArgumentException("The threshold must be at least 1");
+		if(threadCount < 1)
+			throw new IllegalArgumentException("There must be at least 1 thread");
+		this.operation = operation;
+		this.processor = processor;
+		this.reducer = reducer;
+		this.threshold = threshold;
+		this.threadCount = threadCount;
+	}
+
+	/** Runs the operation on a tree.
+	 *
+	 * @param root The tree's root.
+	 * @param size The number of entries in the tree.
+	 * @return The combined results, or null for FOR_EACH or if there were none.
+	 */
+	Object run(BinaryTreeNode root, int size) {
+		parts = new Vector();
+		nextPart = 0;
+		firstMatch = Integer.MAX_VALUE;
+		cut(root, size);
+
+		int partCount = parts.size();
+		Runnable worker = new Runnable() {
+			public void run() {
+				Part part;
+				while((part = takePart()) != null)
+					part.run();
+			}
+		};
+		Thread[] threads = new Thread[Math.max(Math.min(threadCount, partCount) - 1, 0)];
+		for(int i = 0; i < threads.length; ++i) {
+			threads[i] = new Thread(worker);
+			threads[i].start();
+		}
+		worker.run();
+		for(int i = 0; i < threads.length; ++i)
+			join(threads[i]);
+
+		Object result = null;
+		Throwable error = null;
+		for(int i = 0; i < partCount; ++i) {
+			Part part = (Part)parts.elementAt(i);
+			if(error == null)
+				error = part.error;
+			if(part.result == null)
+				continue;
+			if(result == null)
+				result = part.result;
+			else if(operation == MAP_REDUCE)
+				result = reducer.reduce(result, part.result);
+		}
+		parts = null;
+
+		if(error instanceof RuntimeException)
+			throw (RuntimeException)error;
+		if(error instanceof Error)
+			throw (Error)error;
+		return result;
+	}
+
+	/** Waits for a thread to finish, even if interrupted, keeping the interruption. */
+	private static void join(Thread thread) {
+		boolean interrupted = false;
+		while(true) {
+			try {
+				thread.join();
+				break;
+			} catch(InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if(interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/** Adds the parts making up the subtree starting at node to parts.
+	 *
+	 * @param estimatedSize The subtree's estimated number of entries.
+	 */
+	private void cut(BinaryTreeNode node, int estimatedSize) {
+		if(node == null)
+			return;
+		if(estimatedSize <= threshold || (node.left == null && node.right == null)) {
+			parts.addElement(new Part(node, true, parts.size()));
+			return;
+		}
+
+		int halfSize = (estimatedSize - 1) / 2;
+		cut(node.left, halfSize);
+		parts.addElement(new Part(node, false, parts.size()));
+		cut(node.right, halfSize);
+	}
+
+	/** Gives a worker the next part to process, or null if all were taken. */
+	private synchronized Part takePart() {
+		if(nextPart == parts.size())
+			return null;
+		return (Part)parts.elementAt(nextPart++);
+	}
+
+	private synchronized void matchFound(int index) {
+		if(index < firstMatch)
+			firstMatch = index;
+	}
+
+	/** A subtree, or a single node, whose entries are processed by one worker. */
+	private class Part {
+		BinaryTreeNode node;
+		boolean wholeSubtree;
+		/** The part's position in parts. */
+		int index;
+		Object result;
+		/** What the part's processing threw, if anything. */
+		Throwable error;
+
+		Part(BinaryTreeNode node, boolean wholeSubtree, int index) {
+			this.node = node;
+			this.wholeSubtree = wholeSubtree;
+			this.index = index;
+		}
+
+		void run() {
+			try {
+				if(!wholeSubtree)
+					visit(node);
+				else
+					walk();
+			} catch(Throwable e) {
+				error = e;
+			}
+		}
+
+		/** Visits the nodes in the subtree in order, without recursion, since
+		 *  an unbalanced one can be very deep.
+		 */
+		private void walk() {
+			BinaryTreeNode[] stack = new BinaryTreeNode[16];
+			int stackSize = 0;
+			BinaryTreeNode curNode = node;
+			while(curNode != null || stackSize > 0) {
+				while(curNode != null) {
+					if(stackSize == stack.length) {
+						BinaryTreeNode[] newStack = new BinaryTreeNode[stackSize * 2];
+						System.arraycopy(stack, 0, newStack, 0, stackSize);
+						stack = newStack;
+					}
+					stack[stackSize++] = curNode;
+					curNode = curNode.left;
+				}
+				curNode = stack[--stackSize];
+				if(!visit(curNode))
+					return;
+				curNode = curNode.right;
+			}
+		}
+
+		/** Processes a node's entry.
+		 *
+		 * @return False if the part needs no more processing.
+		 */
+		private boolean visit(BinaryTreeNode visited) {
+			switch(operation) {
+			case FOR_EACH:
+				processor.process(visited.key, visited.value);
+				return true;
+			case MAP_REDUCE:
+				Object mapped = processor == null ? visited.value :
+						processor.process(visited.key, visited.value);
+				if(mapped != null)
+					result = result == null ? mapped : reducer.reduce(result, mapped);
+				return true;
+			default:
+				// an earlier part already has a match, which beats any here
+				if(firstMatch < index)
+					return false;
+				result = processor.process(visited.key, visited.value);
+				if(result == null)
+					return true;
+				matchFound(index);
+				return false;
+			}
+		}
+	}
+}
@@ -0,0 +1,400 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+/** A map which holds up to a maximum weight of entries, evicting the ones least
+ *  likely to be needed again when it's full.
+ *
+ *  By default, each entry weighs 1, so the maximum weight is a maximum number
+ *  of entries. Which entries are evicted depends on the policy:
+ *  <ul>
+ *  <li>{@link #LRU} evicts the least recently used entry;</li>
+ *  <li>{@link #LFU} evicts the least frequently used one, or the least recently
+ *  used among those used as often;</li>
+ *  <li>{@link #SEGMENTED_LRU} keeps entries used more than once in a protected
+ *  segment, taking up to 80% of the capacity, and evicts the least recently used
+ *  entry among the others first, so that a scan through many entries used once
+ *  doesn't flush the ones used often.</li>
+ *  </ul>
+ *  Entries are found through an {@link OpenHashMap} and kept in linked lists
+ *  in the order they'd be evicted, so every operation takes O(1). Both get and
+ *  put count as uses of an entry, while containsKey doesn't.
+ *
+ *  Since get moves entries between lists and counts hits and misses, a
+ *  CacheMap isn't thread safe even for reading. Wrapping it in a
+ *  {@link ConcurrentMap} makes every access take the lock alone.
+ */
+public class CacheMap implements Map {
+	/** Evicts the least recently used entry first. */
+	public static final int LRU = 0;
+	/** Evicts the least frequently used entry first. */
+	public static final int LFU = 1;
+	/** Evicts the least recently used entry first, among those used only once. */
+	public static final int SEGMENTED_LRU = 2;
+
+	/** Maps keys to their CacheEntry. */
+	private OpenHashMap entries;
+	private int policy;
+	private long maxWeight;
+	private long weight;
+	private Weigher weigher;
+	private EvictionListener evictionListener;
+	/** The list holding the next entry to be evicted. With LFU, it's the bucket
+	 *  of the entries used least often, linked to the buckets of entries used
+	 *  more often. With SEGMENTED_LRU, it's the probation segment, linked to the
+	 *  protected one.
+	 */
+	private CacheList firstList;
+	/** The segment of entries used more than once, with SEGMENTED_LRU. */
+	private CacheList protectedList;
+	private long protectedMaxWeight;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/** Creates a new CacheMap whose entries all weigh 1.
+	 * @param keyComparator A Comparator to tell whether keys are equal. Usually,
+	 *  this will be one of the ones provided in {@link Comparators}.
+	 * @param policy {@link #LRU}, {@link #LFU} or {@link #SEGMENTED_LRU}.
+	 * @param maxSize The most entries the cache can hold.
+	 */
+	public CacheMap(Comparator keyComparator, int policy, int maxSize) {
+		this(keyComparator, null, policy, maxSize, null);
+	}
+
+	/** Creates a new CacheMap.
+	 * @param keyComparator A Comparator to tell whether keys are equal.
+	 * @param keyHasher Computes the keys' hash codes, as in {@link OpenHashMap}.
+	 *  If null, the keys' own hashCode method is used.
+	 * @param policy {@link #LRU}, {@link #LFU} or {@link #SEGMENTED_LRU}.
+	 * @param maxWeight The most the entries can weigh altogether.
+	 * @param weigher Tells how much each entry weighs. If null, they all weigh 1.
+	 */
+	public CacheMap(Comparator keyComparator, Hasher keyHasher, int policy,
+			long maxWeight, Weigher weigher) {
+		if(policy < LRU || policy > SEGMENTED_LRU)
+			throw new IllegalArgumentException("Unknown policy: " + policy);
+		if(maxWeight < 0)
+			throw new IllegalArgumentException("maxWeight can't be negative");
+		this.entries = new OpenHashMap(keyComparator, keyHasher, 16, 0.5f);
+		this.policy = policy;
+		this.maxWeight = maxWeight;
+		this.weigher = weigher;
+		this.protectedMaxWeight = maxWeight * 4 / 5;
+		clear();
+	}
+
+	/** Sets the listener told about evicted entries, or null for none. */
+	public void setEvictionListener(EvictionListener listener) {
+		evictionListener = listener;
+	}
+
+	/** Returns how many calls to get found their key. */
+	public long getHitCount() {
+		return hits;
+	}
+
+	/** Returns how many calls to get didn't find their key. */
+	public long getMissCount() {
+		return misses;
+	}
+
+	/** Returns how many entries were evicted. */
+	public long getEvictionCount() {
+		return evictions;
+	}
+
+	/** Returns how much the entries weigh altogether. */
+	public long getWeight() {
+		return weight;
+	}
+
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	CacheList getFirstList() {
+		return firstList;
+	}
+
+	public void clear() {
+		entries.clear();
+		weight = 0;
+		firstList = policy == LFU ? null : new CacheList();
+		protectedList = null;
+		if(policy == SEGMENTED_LRU) {
+			protectedList = new CacheList();
+			firstList.next = protectedList;
+			protectedList.prev = firstList;
+		}
+	}
+
+	public boolean containsKey(Object key) {
+		return entries.containsKey(key);
+	}
+
+	public Object get(Object key) {
+		CacheEntry entry = (CacheEntry)entries.get(key);
+		if(entry == null) {
+			++misses;
+			return null;
+		}
+		++hits;
+		recordUse(entry);
+		return entry.value;
+	}
+
+	public boolean isEmpty() {
+		return entries.isEmpty();
+	}
+
+	/** Moves an entry which was just used to where the policy wants it. */
+	private void recordUse(CacheEntry entry) {
+		CacheList list = entry.list;
+		if(policy == LRU) {
+			list.unlink(entry);
+			list.append(entry);
+		}
+		else if(policy == LFU) {
+			// the bucket for the next frequency is either right after this one or missing
+			CacheList next = list.next;
+			if(next == null || next.frequency != list.frequency + 1) {
+				next = new CacheList();
+				next.frequency = list.frequency + 1;
+				insertListAfter(next, list);
+			}
+			list.unlink(entry);
+			next.append(entry);
+			if(list.head == null)
+				removeList(list);
+		}
+		else {
+			list.unlink(entry);
+			protectedList.append(entry);
+			// demotes the protected entries used least recently, if there are too many
+			while(protectedList.weight > protectedMaxWeight && protectedList.head != null) {
+				CacheEntry demoted = protectedList.head;
+				protectedList.unlink(demoted);
+				firstList.append(demoted);
+			}
+		}
+	}
+
+	private void insertListAfter(CacheList list, CacheList previous) {
+		list.prev = previous;
+		if(previous == null) {
+			list.next = firstList;
+			firstList = list;
+		}
+		else {
+			list.next = previous.next;
+			previous.next = list;
+		}
+		if(list.next != null)
+			list.next.prev = list;
+	}
+
+	/** Takes an empty LFU bucket out of the chain. */
+	private void removeList(CacheList list) {
+		if(list.prev == null)
+			firstList = list.next;
+		else
+			list.prev.next = list.next;
+		if(list.next != null)
+			list.next.prev = list.prev;
+	}
+
+	private void unlink(CacheEntry entry) {
+		CacheList list = entry.list;
+		list.unlink(entry);
+		if(policy == LFU && list.head == null)
+			removeList(list);
+	}
+
+	public Object put(Object key, Object value) {
+		if(key == null)
+			throw new InvalidKeyException("Can't insert null keys");
+
+		int entryWeight = weigher == null ? 1 : weigher.weigh(key, value);
+		if(entryWeight < 0)
+			throw new IllegalArgumentException("Weights can't be negative");
+		CacheEntry entry = (CacheEntry)entries.get(key);
+		Object oldValue = null;
+		if(entry != null) {
+			oldValue = entry.value;
+			entry.value = value;
+			weight += entryWeight - entry.weight;
+			entry.list.weight += entryWeight - entry.weight;
+			entry.weight = entryWeight;
+			recordUse(entry);
+		}
+		else {
+			entry = new CacheEntry(key, value, entryWeight);
+			entries.put(key, entry);
+			weight += entryWeight;
+			if(policy == LFU) {
+				if(firstList == null || firstList.frequency != 1) {
+					CacheList list = new CacheList();
+					list.frequency = 1;
+					insertListAfter(list, null);
+				}
+			}
+			firstList.append(entry);
+		}
+
+		// an entry heavier than the whole cache is evicted right away
+		if(entryWeight > maxWeight)
+			evict(entry);
+		while(weight > maxWeight)
+			evict(nextToEvict());
+		return oldValue;
+	}
+
+	private CacheEntry nextToEvict() {
+		if(firstList.head != null)
+			return firstList.head;
+		// only the probation segment of SEGMENTED_LRU can be empty
+		return protectedList.head;
+	}
+
+	private void evict(CacheEntry entry) {
+		removeEntry(entry);
+		++evictions;
+		if(evictionListener != null)
+			evictionListener.evicted(entry.key, entry.value);
+	}
+
+	void removeEntry(CacheEntry entry) {
+		entries.remove(entry.key);
+		unlink(entry);
+		weight -= entry.weight;
+	}
+
+	public void putAll(Map other) {
+		if(entries.getKeyComparator() != other.getKeyComparator())
+			throw new InvalidOperationException(
+					"putAll can't work on maps with different comparators");
+		MapIterator it = other.iterator();
+		while(it.hasNext()) {
+			Map.Entry entry = it.next();
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	public boolean equals(Object other) {
+		if(!(other instanceof Map))
+			return false;
+
+		Map otherMap = (Map)other;
+		if(otherMap.size() != size())
+			return false;
+
+		MapIterator it = otherMap.iterator();
+		while(it.hasNext()) {
+			Map.Entry cur = it.next();
+			CacheEntry entry = (CacheEntry)entries.get(cur.getKey());
+			if(entry == null)
+				return false;
+			Object value = cur.getValue();
+			if(value == null ? entry.value != null : !value.equals(entry.value))
+				return false;
+		}
+		return true;
+	}
+
+	public int hashCode() {
+		MapIterator it = iterator();
+		int result = 0;
+		while(it.hasNext())
+			result += it.next().hashCode();
+		return result;
+	}
+
+	public Object remove(Object key) {
+		CacheEntry entry = (CacheEntry)entries.get(key);
+		if(entry == null)
+			return null;
+		removeEntry(entry);
+		return entry.value;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public Comparator getKeyComparator() {
+		return entries.getKeyComparator();
+	}
+
+	/** Returns an iterator over the entries in the order they'd be evicted in.
+	 *  Calling get or put while iterating changes that order, so it mustn't be
+	 *  done, other than through the iterator's remove method.
+	 */
+	public MapIterator iterator() {
+		return new CacheMapIterator(this);
+	}
+}
+
+/** An entry of a {@link CacheMap}, in one of its lists. */
+class CacheEntry {
+	CacheEntry(Object key, Object value, int weight) {
+		this.key = key;
+		this.value = value;
+		this.weight = weight;
+	}
+
+	Object key;
+	Object value;
+	int weight;
+	CacheEntry prev, next;
+	CacheList list;
+}
+
+/** A doubly linked list of {@link CacheEntry}s, from the least recently used
+ *  to the most recently used. Lists are themselves linked together, in the
+ *  order their entries would be evicted in.
+ */
+class CacheList {
+	CacheEntry head, tail;
+	long weight;
+	/** How many times the entries were used, in an LFU bucket. */
+	int frequency;
+	CacheList prev, next;
+
+	void append(CacheEntry entry) {
+		entry.list = this;
+		entry.prev = tail;
+		entry.next = null;
+		if(tail == null)
+			head = entry;
+		else
+			tail.next = entry;
+		tail = entry;
+		weight += entry.weight;
+	}
+
+	void unlink(CacheEntry entry) {
+		if(entry.prev == null)
+			head = entry.next;
+		else
+			entry.prev.next = entry.next;
+		if(entry.next == null)
+			tail = entry.prev;
+		else
+			entry.next.prev = entry.prev;
+		entry.prev = entry.next = null;
+		weight -= entry.weight;
+	}
+}
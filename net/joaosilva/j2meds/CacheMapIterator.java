@@ -0,0 +1,60 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+import java.util.NoSuchElementException;
+
+import net.joaosilva.j2meds.Map.Entry;
+
+/** Goes through a {@link CacheMap}'s lists, in the order their entries would
+ *  be evicted in.
+ */
+class CacheMapIterator implements MapIterator {
+	private CacheMap source;
+	private CacheEntry nextEntry;
+	private CacheEntry curEntry;
+
+	public CacheMapIterator(CacheMap source) {
+		this.source = source;
+		nextEntry = firstEntryFrom(source.getFirstList());
+	}
+
+	private static CacheEntry firstEntryFrom(CacheList list) {
+		while(list != null && list.head == null)
+			list = list.next;
+		return list == null ? null : list.head;
+	}
+
+	public boolean hasNext() {
+		return nextEntry != null;
+	}
+
+	public Entry next() {
+		if(nextEntry == null)
+			throw new NoSuchElementException();
+		curEntry = nextEntry;
+		// found before curEntry can be removed, which may unlink its list
+		nextEntry = curEntry.next != null ? curEntry.next : firstEntryFrom(curEntry.list.next);
+		return new Entry(curEntry.key, curEntry.value);
+	}
+
+	public void remove() {
+		if(curEntry == null)
+			throw new InvalidOperationException(
+					"remove can only be called once after each call to next");
+		source.removeEntry(curEntry);
+		curEntry = null;
+	}
+}
@@ -0,0 +1,108 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package net.joaosilva.j2meds;
+
+import jmunit.framework.cldc11.TestCase;
+
+public class CacheMapTest extends TestCase {
+
+	public CacheMapTest() {
+		super(3, "CacheMapTest");
+	}
+
+	public void test(int testNumber) {
+		switch(testNumber) {
+		case 0:
+			testLru();
+			break;
+		case 1:
+			testLfu();
+			break;
+		case 2:
+			testEvictionListener();
+			break;
+
+		default:
+			break;
+		}
+	}
+
+	public void testLru() {
+		CacheMap c = new CacheMap(Comparators.INTEGER, CacheMap.LRU, 3);
+		for(int i = 0; i < 3; ++i)
+			c.put(new Integer(i), null);
+		c.get(new Integer(0));
+		c.put(new Integer(3), null);
+		assertEquals(3, c.size());
+		assertFalse(c.containsKey(new Integer(1)));
+		assertTrue(c.containsKey(new Integer(0)));
+		assertNull(c.get(new Integer(1)));
+		assertEquals(1, c.getHitCount());
+		assertEquals(1, c.getMissCount());
+		assertEquals(1, c.getEvictionCount());
+	}
+
+	public void testLfu() {
+		CacheMap c = new CacheMap(Comparators.INTEGER, CacheMap.LFU, 3);
+		for(int i = 0; i < 3; ++i)
+			c.put(new Integer(i), null);
+		c.get(new Integer(0));
+		c.get(new Integer(0));
+		c.get(new Integer(1));
+		// 2 was used least often
+		c.put(new Integer(3), null);
+		assertFalse(c.containsKey(new Integer(2)));
+		// 3 is now used least often
+		c.put(new Integer(4), null);
+		assertFalse(c.containsKey(new Integer(3)));
+
+		MapIterator it = c.iterator();
+		assertEquals(4, ((Integer)it.next().getKey()).intValue());
+		assertEquals(1, ((Integer)it.next().getKey()).intValue());
+		assertEquals(0, ((Integer)it.next().getKey()).intValue());
+		assertFalse(it.hasNext());
+	}
+
+	public void testEvictionListener() {
+		final int[] evictedWeight = new int[1];
+		CacheMap c = new CacheMap(Comparators.STRING, null, CacheMap.SEGMENTED_LRU, 10,
+				new Weigher() {
+					public int weigh(Object key, Object value) {
+						return ((String)value).length();
+					}
+				});
+		c.setEvictionListener(new EvictionListener() {
+			public void evicted(Object key, Object value) {
+				evictedWeight[0] += ((String)value).length();
+			}
+		});
+		c.put("a", "12345");
+		c.get("a");
+		c.put("b", "1234");
+		c.put("c", "123");
+		// b was used only once, so it goes before a
+		assertFalse(c.containsKey("b"));
+		assertTrue(c.containsKey("a"));
+		assertEquals(4, evictedWeight[0]);
+		assertEquals(8, c.getWeight());
+		c.put("d", "12345678901");
+		assertFalse(c.containsKey("d"));
+		assertEquals(15, evictedWeight[0]);
+		c.remove("a");
+		assertEquals(3, c.getWeight());
+		assertEquals(15, evictedWeight[0]);
+	}
+}
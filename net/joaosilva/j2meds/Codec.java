@@ -0,0 +1,38 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/** Interface for classes meaning to write keys or values to a stream and
+ *  read them back, such as the ones in {@link Codecs}.
+ */
+public interface Codec {
+	/** Writes an object to a stream.
+	 *
+	 * @param out The stream to write to.
+	 * @param object A non-null object of the type this codec handles.
+	 */
+	public void write(DataOutputStream out, Object object) throws IOException;
+
+	/** Reads an object written by {@link #write(DataOutputStream, Object)}.
+	 *
+	 * @param in The stream to read from.
+	 * @return The object read.
+	 */
+	public Object read(DataInputStream in) throws IOException;
+}
@@ -0,0 +1,24 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+public class Codecs {
+	public static final StringCodec STRING = new StringCodec();
+	public static final IntegerCodec INTEGER = new IntegerCodec();
+	public static final ShortCodec SHORT = new ShortCodec();
+	public static final LongCodec LONG = new LongCodec();
+	public static final DoubleCodec DOUBLE = new DoubleCodec();
+	public static final FloatCodec FLOAT = new FloatCodec();
+}
@@ -0,0 +1,404 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package net.joaosilva.j2meds;
+
+/** A binary tree which, instead of having an object per node, keeps its nodes in
+ *  parallel arrays and links them by index. This saves an object header and
+ *  a few references per entry compared to {@link BinaryTree}, and keeps nodes
+ *  close together in memory.
+ *
+ *  Slots freed by remove are kept in a free list and reused by later puts. When
+ *  all slots are used, the arrays double in size.
+ *
+ *  Like BinaryTree, null keys are not allowed, and the tree is only kept balanced
+ *  if it's created with the {@link BinaryTree#BALANCED} option.
+ */
+public class CompactBinaryTree implements Map {
+	/** Index used in place of a null child. */
+	static final int NIL = -1;
+	/** Index of the dummy node, prior to the root. Both its children point to the root. */
+	static final int DUMMY = 0;
+	private static final int DEFAULT_CAPACITY = 16;
+
+	int[] left;
+	int[] right;
+	Object[] keys;
+	private Object[] values;
+	private byte[] heights;
+
+	private int root;
+	private int size;
+	/** Index of the first slot in the free list, which is chained through left. */
+	private int freeList;
+	/** Index of the first slot which was never used. */
+	private int firstUnused;
+	private int initialCapacity;
+	private Comparator comparator;
+	private boolean balanced;
+
+	/** The slots visited by the last call to findPathTo, starting with DUMMY. */
+	private int[] path;
+	private int lastComparison;
+
+	/** Creates a new, unbalanced, CompactBinaryTree, using the specified {@link Comparator}.
+	 * @param keyComparator A Comparator to compare keys. Usually, this will be one
+	 *  of the ones provided in {@link Comparators}.
+	 */
+	public CompactBinaryTree(Comparator keyComparator) {
+		this(keyComparator, 0, DEFAULT_CAPACITY);
+	}
+
+	/** Creates a new CompactBinaryTree.
+	 * @param keyComparator A Comparator to compare keys. Usually, this will be one
+	 *  of the ones provided in {@link Comparators}.
+	 * @param options Either 0 or {@link BinaryTree#BALANCED}.
+	 * @param initialCapacity The number of entries the tree can hold before
+	 *  having to grow.
+	 */
+	public CompactBinaryTree(Comparator keyComparator, int options, int initialCapacity) {
+		if(initialCapacity < 1)
+			throw new IllegalArgumentException("initialCapacity must be positive");
+		this.comparator = keyComparator;
+		this.balanced = (options & BinaryTree.BALANCED) != 0;
+		this.initialCapacity = initialCapacity;
+		path = new int[16];
+		clear();
+	}
+
+	/** Empties the tree in constant time, by replacing its arrays with new ones
+	 *  of the initial capacity.
+	 */
+	public void clear() {
+		// one extra slot for the dummy node
+		allocate(initialCapacity + 1);
+		left[DUMMY] = right[DUMMY] = root = NIL;
+		freeList = NIL;
+		firstUnused = DUMMY + 1;
+		size = 0;
+	}
+
+	private void allocate(int capacity) {
+		left = new int[capacity];
+		right = new int[capacity];
+		keys = new Object[capacity];
+		values = new Object[capacity];
+		heights = new byte[capacity];
+	}
+
+	private void grow() {
+		int[] oldLeft = left, oldRight = right;
+		Object[] oldKeys = keys, oldValues = values;
+		byte[] oldHeights = heights;
+		int count = firstUnused;
+		allocate(left.length * 2);
+		System.arraycopy(oldLeft, 0, left, 0, count);
+		System.arraycopy(oldRight, 0, right, 0, count);
+		System.arraycopy(oldKeys, 0, keys, 0, count);
+		System.arraycopy(oldValues, 0, values, 0, count);
+		System.arraycopy(oldHeights, 0, heights, 0, count);
+	}
+
+	private int newNode(Object key, Object value) {
+		int node;
+		if(freeList != NIL) {
+			node = freeList;
+			freeList = left[node];
+		}
+		else {
+			if(firstUnused == left.length)
+				grow();
+			node = firstUnused++;
+		}
+		left[node] = right[node] = NIL;
+		keys[node] = key;
+		values[node] = value;
+		heights[node] = 1;
+		return node;
+	}
+
+	private void freeNode(int node) {
+		keys[node] = values[node] = null;
+		right[node] = NIL;
+		left[node] = freeList;
+		freeList = node;
+	}
+
+	int getRoot() {
+		return root;
+	}
+
+	private void setPath(int index, int node) {
+		if(index == path.length) {
+			int[] newPath = new int[path.length * 2];
+			System.arraycopy(path, 0, newPath, 0, path.length);
+			path = newPath;
+		}
+		path[index] = node;
+	}
+
+	/** Walks down from the root looking for a key, storing the slots it goes
+	 *  through in path, which always starts with DUMMY.
+	 *
+	 * @return If the key is found, the length of the path, whose last slot holds
+	 *         the key. Otherwise, minus the length of the path, whose last slot is
+	 *         the one below which the key would have to be inserted.
+	 */
+	private int findPathTo(Object key) {
+		path[0] = DUMMY;
+		int depth = 1;
+		int curNode = root;
+		while(curNode != NIL) {
+			setPath(depth++, curNode);
+			lastComparison = comparator.compare(key, keys[curNode]);
+			if(lastComparison == 0)
+				return depth;
+
+			if(lastComparison < 0)
+				curNode = left[curNode];
+			else
+				curNode = right[curNode];
+		}
+		return -depth;
+	}
+
+	private int findNodeWithKey(Object key) {
+		int curNode = root;
+		while(curNode != NIL) {
+			int compareValue = comparator.compare(key, keys[curNode]);
+			if(compareValue == 0)
+				return curNode;
+
+			if(compareValue < 0)
+				curNode = left[curNode];
+			else
+				curNode = right[curNode];
+		}
+		return NIL;
+	}
+
+	public boolean containsKey(Object key) {
+		return findNodeWithKey(key) != NIL;
+	}
+
+	public Object get(Object key) {
+		int node = findNodeWithKey(key);
+		if(node == NIL)
+			return null;
+
+		return values[node];
+	}
+
+	Object getValueAt(int node) {
+		return values[node];
+	}
+
+	public boolean isEmpty() {
+		return root == NIL;
+	}
+
+	private void replaceChild(int parent, int oldChild, int newChild) {
+		if(parent == DUMMY)
+			root = left[DUMMY] = right[DUMMY] = newChild;
+		else if(left[parent] == oldChild)
+			left[parent] = newChild;
+		else
+			right[parent] = newChild;
+	}
+
+	public Object put(Object key, Object value) {
+		if(key == null)
+			throw new InvalidKeyException("Can't insert null keys");
+
+		int depth = findPathTo(key);
+		if(depth > 0) {
+			int node = path[depth - 1];
+			Object oldValue = values[node];
+			values[node] = value;
+			return oldValue;
+		}
+
+		depth = -depth;
+		int parent = path[depth - 1];
+		int newNode = newNode(key, value);
+		if(parent == DUMMY)
+			root = left[DUMMY] = right[DUMMY] = newNode;
+		else if(lastComparison < 0)
+			left[parent] = newNode;
+		else
+			right[parent] = newNode;
+		++size;
+
+		if(balanced) {
+			for(int i = depth - 1; i > 0; --i) {
+				int node = path[i];
+				int oldHeight = heights[node];
+				int newTop = rebalance(node);
+				if(newTop != node) {
+					replaceChild(path[i - 1], node, newTop);
+					break;
+				}
+				if(heights[node] == oldHeight)
+					break;
+			}
+		}
+		return null;
+	}
+
+	public void putAll(Map other) {
+		if(comparator != other.getKeyComparator())
+			throw new InvalidOperationException(
+					"putAll can't work on maps with different comparators");
+		MapIterator it = other.iterator();
+		while(it.hasNext()) {
+			Map.Entry entry = it.next();
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	public Object remove(Object key) {
+		if(root == NIL)
+			return null;
+
+		int depth = findPathTo(key);
+		if(depth < 0)
+			return null;
+
+		int nodeToRemove = path[depth - 1];
+		int parent = path[depth - 2];
+		Object result = values[nodeToRemove];
+		if(left[nodeToRemove] == NIL || right[nodeToRemove] == NIL) {
+			replaceChild(parent, nodeToRemove,
+					left[nodeToRemove] != NIL ? left[nodeToRemove] : right[nodeToRemove]);
+			--depth;
+		}
+		else {
+			int removedIndex = depth - 1;
+			int successor = right[nodeToRemove];
+			while(left[successor] != NIL) {
+				setPath(depth++, successor);
+				successor = left[successor];
+			}
+			replaceChild(path[depth - 1], successor, right[successor]);
+			left[successor] = left[nodeToRemove];
+			right[successor] = right[nodeToRemove];
+			heights[successor] = heights[nodeToRemove];
+			replaceChild(parent, nodeToRemove, successor);
+			path[removedIndex] = successor;
+		}
+		freeNode(nodeToRemove);
+		--size;
+
+		if(balanced) {
+			for(int i = depth - 1; i > 0; --i) {
+				int node = path[i];
+				int oldHeight = heights[node];
+				int newTop = rebalance(node);
+				if(newTop != node)
+					replaceChild(path[i - 1], node, newTop);
+				if(heights[newTop] == oldHeight)
+					break;
+			}
+		}
+		return result;
+	}
+
+	private int heightOf(int node) {
+		return node == NIL ? 0 : heights[node];
+	}
+
+	private void updateHeight(int node) {
+		int leftHeight = heightOf(left[node]);
+		int rightHeight = heightOf(right[node]);
+		heights[node] = (byte)((leftHeight > rightHeight ? leftHeight : rightHeight) + 1);
+	}
+
+	private int rotateLeft(int node) {
+		int newTop = right[node];
+		right[node] = left[newTop];
+		left[newTop] = node;
+		updateHeight(node);
+		updateHeight(newTop);
+		return newTop;
+	}
+
+	private int rotateRight(int node) {
+		int newTop = left[node];
+		left[node] = right[newTop];
+		right[newTop] = node;
+		updateHeight(node);
+		updateHeight(newTop);
+		return newTop;
+	}
+
+	private int rebalance(int node) {
+		int balance = heightOf(left[node]) - heightOf(right[node]);
+		if(balance > 1) {
+			if(heightOf(left[left[node]]) < heightOf(right[left[node]]))
+				left[node] = rotateLeft(left[node]);
+			return rotateRight(node);
+		}
+		if(balance < -1) {
+			if(heightOf(right[right[node]]) < heightOf(left[right[node]]))
+				right[node] = rotateRight(right[node]);
+			return rotateLeft(node);
+		}
+		updateHeight(node);
+		return node;
+	}
+
+	public boolean equals(Object other) {
+		if(!(other instanceof Map))
+			return false;
+
+		Map otherMap = (Map)other;
+		if(otherMap.size() != size)
+			return false;
+
+		MapIterator it = otherMap.iterator();
+		while(it.hasNext()) {
+			Map.Entry cur = it.next();
+			int node = findNodeWithKey(cur.getKey());
+			if(node == NIL)
+				return false;
+			Object value = cur.getValue();
+			if(value == null ? values[node] != null : !value.equals(values[node]))
+				return false;
+		}
+		return true;
+	}
+
+	public int hashCode() {
+		MapIterator it = iterator();
+		int result = 0;
+		while(it.hasNext()) {
+			Map.Entry cur = it.next();
+			result += cur.hashCode();
+		}
+		return result;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public Comparator getKeyComparator() {
+		return comparator;
+	}
+
+	public MapIterator iterator() {
+		return new CompactBinaryTreeIterator(this);
+	}
+}
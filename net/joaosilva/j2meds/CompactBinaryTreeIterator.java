@@ -0,0 +1,89 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+import net.joaosilva.j2meds.Map.Entry;
+
+class CompactBinaryTreeIterator implements MapIterator {
+	private int[] nodesToProcess;
+	private int stackSize;
+	private int curNode;
+	private CompactBinaryTree source;
+
+	public CompactBinaryTreeIterator(CompactBinaryTree source) {
+		this.source = source;
+		curNode = CompactBinaryTree.NIL;
+		nodesToProcess = new int[16];
+		pushAllNodesToTheLeftOf(source.getRoot());
+	}
+
+	private void push(int node) {
+		if(stackSize == nodesToProcess.length) {
+			int[] newStack = new int[stackSize * 2];
+			System.arraycopy(nodesToProcess, 0, newStack, 0, stackSize);
+			nodesToProcess = newStack;
+		}
+		nodesToProcess[stackSize++] = node;
+	}
+
+	private void pushAllNodesToTheLeftOf(int node) {
+		int iterNode = node;
+		while(iterNode != CompactBinaryTree.NIL) {
+			push(iterNode);
+			iterNode = source.left[iterNode];
+		}
+	}
+
+	public boolean hasNext() {
+		return stackSize > 0;
+	}
+
+	public Entry next() {
+		if(stackSize == 0)
+			throw new java.util.NoSuchElementException();
+		curNode = nodesToProcess[--stackSize];
+		pushAllNodesToTheLeftOf(source.right[curNode]);
+
+		return new Entry(source.keys[curNode], source.getValueAt(curNode));
+	}
+
+	public void remove() {
+		if(curNode == CompactBinaryTree.NIL)
+			throw new InvalidOperationException(
+					"remove can only be called once after each call to next");
+		source.remove(source.keys[curNode]);
+		curNode = CompactBinaryTree.NIL;
+
+		// removing may have moved nodes around, so find the next node again
+		if(stackSize > 0) {
+			Object key = source.keys[nodesToProcess[stackSize - 1]];
+			Comparator comparator = source.getKeyComparator();
+			stackSize = 0;
+			int iterNode = source.getRoot();
+			while(iterNode != CompactBinaryTree.NIL) {
+				int compareValue = comparator.compare(key, source.keys[iterNode]);
+				if(compareValue <= 0)
+					push(iterNode);
+				if(compareValue == 0)
+					break;
+
+				if(compareValue < 0)
+					iterNode = source.left[iterNode];
+				else
+					iterNode = source.right[iterNode];
+			}
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package net.joaosilva.j2meds;
+
+import jmunit.framework.cldc11.TestCase;
+
+public class CompactBinaryTreeTest extends TestCase {
+
+	public CompactBinaryTreeTest() {
+		super(3, "CompactBinaryTreeTest");
+	}
+
+	public void test(int testNumber) {
+		switch(testNumber) {
+		case 0:
+			testPutGetRemove();
+			break;
+		case 1:
+			testGrowthAndOrder();
+			break;
+		case 2:
+			testClear();
+			break;
+
+		default:
+			break;
+		}
+	}
+
+	public void testPutGetRemove() {
+		CompactBinaryTree b = new CompactBinaryTree(Comparators.STRING);
+		assertTrue(b.isEmpty());
+		assertNull(b.put("bb", new Integer(2)));
+		assertNull(b.put("ab", new Integer(1)));
+		assertNull(b.put("cd", new Integer(3)));
+		assertEquals(2, ((Integer)b.put("bb", new Integer(22))).intValue());
+		assertEquals(3, b.size());
+		assertEquals(22, ((Integer)b.get("bb")).intValue());
+		assertEquals(22, ((Integer)b.remove("bb")).intValue());
+		assertNull(b.remove("bb"));
+		assertFalse(b.containsKey("bb"));
+		assertTrue(b.containsKey("ab"));
+		assertTrue(b.containsKey("cd"));
+		assertEquals(2, b.size());
+	}
+
+	public void testGrowthAndOrder() {
+		CompactBinaryTree b = new CompactBinaryTree(Comparators.INTEGER,
+				BinaryTree.BALANCED, 1);
+		for(int i = 0; i < 500; ++i)
+			b.put(new Integer(i), null);
+		for(int i = 0; i < 500; i += 2)
+			b.remove(new Integer(i));
+		// reuses the freed slots
+		for(int i = 1000; i < 1250; ++i)
+			b.put(new Integer(i), null);
+		assertEquals(500, b.size());
+		MapIterator it = b.iterator();
+		int last = -1;
+		while(it.hasNext()) {
+			int key = ((Integer)it.next().getKey()).intValue();
+			assertTrue(last < key);
+			last = key;
+		}
+		assertEquals(1249, last);
+	}
+
+	public void testClear() {
+		CompactBinaryTree b = new CompactBinaryTree(Comparators.INTEGER);
+		for(int i = 0; i < 100; ++i)
+			b.put(new Integer(i), null);
+		b.clear();
+		assertTrue(b.isEmpty());
+		assertEquals(0, b.size());
+		assertFalse(b.iterator().hasNext());
+		b.put(new Integer(7), "seven");
+		assertEquals(1, b.size());
+		assertEquals(0, ((String)b.get(new Integer(7))).compareTo("seven"));
+	}
+}
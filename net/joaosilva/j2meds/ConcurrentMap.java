@@ -0,0 +1,215 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+/** A thread safe view of a {@link Map}, which lets any number of threads read
+ *  it at once, while writes are done one at a time, with a {@link ReadWriteLock}.
+ *
+ *  The wrapped map must not be used directly once wrapped. A {@link CacheMap}
+ *  or a {@link SplayTree} changes when read, so reading one is done one thread
+ *  at a time too, like a write. Other maps must not change when read.
+ *
+ *  Iterators work on a copy of the entries taken when they're created, so they
+ *  don't keep the map locked. Removing through them removes the entry from the map.
+ */
+public class ConcurrentMap implements Map {
+	private Map map;
+	private ReadWriteLock lock;
+	/** True if reading the map changes it, so it can only be read by one thread at a time. */
+	private boolean readsChangeMap;
+
+	/** Creates a new ConcurrentMap.
+	 * @param map The map to wrap, such as a balanced {@link BinaryTree}.
+	 */
+	public ConcurrentMap(Map map) {
+		this.map = map;
+		this.lock = new ReadWriteLock();
+		this.readsChangeMap = map instanceof CacheMap || map instanceof SplayTree;
+	}
+
+	/** Locks the map for reading, which is only shared if reading doesn't change it. */
+	private void lockForReading() {
+		if(readsChangeMap)
+			lock.lockWrite();
+		else
+			lock.lockRead();
+	}
+
+	private void unlockForReading() {
+		if(readsChangeMap)
+			lock.unlockWrite();
+		else
+			lock.unlockRead();
+	}
+
+	public void clear() {
+		lock.lockWrite();
+		try {
+			map.clear();
+		} finally {
+			lock.unlockWrite();
+		}
+	}
+
+	public boolean containsKey(Object key) {
+		lockForReading();
+		try {
+			return map.containsKey(key);
+		} finally {
+			unlockForReading();
+		}
+	}
+
+	public Object get(Object key) {
+		lockForReading();
+		try {
+			return map.get(key);
+		} finally {
+			unlockForReading();
+		}
+	}
+
+	public boolean isEmpty() {
+		lockForReading();
+		try {
+			return map.isEmpty();
+		} finally {
+			unlockForReading();
+		}
+	}
+
+	public Object put(Object key, Object value) {
+		lock.lockWrite();
+		try {
+			return map.put(key, value);
+		} finally {
+			lock.unlockWrite();
+		}
+	}
+
+	public void putAll(Map other) {
+		if(map.getKeyComparator() != other.getKeyComparator())
+			throw new InvalidOperationException(
+					"putAll can't work on maps with different comparators");
+		// the other map is read before locking this one, so that two maps never wait on each other
+		Object[][] entries = copyEntries(other);
+		lock.lockWrite();
+		try {
+			for(int i = 0; i < entries[0].length; ++i)
+				map.put(entries[0][i], entries[1][i]);
+		} finally {
+			lock.unlockWrite();
+		}
+	}
+
+	public boolean equals(Object other) {
+		if(other == this)
+			return true;
+		if(!(other instanceof Map))
+			return false;
+
+		Object[][] entries = copyEntries((Map)other);
+		lockForReading();
+		try {
+			if(entries[0].length != map.size())
+				return false;
+			for(int i = 0; i < entries[0].length; ++i) {
+				Object value = entries[1][i];
+				if(value == null) {
+					if(map.get(entries[0][i]) != null || !map.containsKey(entries[0][i]))
+						return false;
+				} else if(!value.equals(map.get(entries[0][i])))
+					return false;
+			}
+			return true;
+		} finally {
+			unlockForReading();
+		}
+	}
+
+	public int hashCode() {
+		lockForReading();
+		try {
+			return map.hashCode();
+		} finally {
+			unlockForReading();
+		}
+	}
+
+	public Object remove(Object key) {
+		lock.lockWrite();
+		try {
+			return map.remove(key);
+		} finally {
+			lock.unlockWrite();
+		}
+	}
+
+	public int size() {
+		lockForReading();
+		try {
+			return map.size();
+		} finally {
+			unlockForReading();
+		}
+	}
+
+	public Comparator getKeyComparator() {
+		return map.getKeyComparator();
+	}
+
+	/** Copies a map's keys and values into two arrays, in iteration order. */
+	private static Object[][] copyEntries(Map source) {
+		// iterating over a ConcurrentMap copies it already
+		MapIterator it = source.iterator();
+		Object[] keys = new Object[source.size()];
+		Object[] values = new Object[keys.length];
+		int count = 0;
+		while(it.hasNext()) {
+			Map.Entry entry = it.next();
+			if(count == keys.length) {
+				// the map grew since its size was read
+				Object[] newKeys = new Object[count * 2 + 1];
+				Object[] newValues = new Object[newKeys.length];
+				System.arraycopy(keys, 0, newKeys, 0, count);
+				System.arraycopy(values, 0, newValues, 0, count);
+				keys = newKeys;
+				values = newValues;
+			}
+			keys[count] = entry.getKey();
+			values[count++] = entry.getValue();
+		}
+		if(count < keys.length) {
+			Object[] newKeys = new Object[count];
+			Object[] newValues = new Object[count];
+			System.arraycopy(keys, 0, newKeys, 0, count);
+			System.arraycopy(values, 0, newValues, 0, count);
+			keys = newKeys;
+			values = newValues;
+		}
+		return new Object[][] {keys, values};
+	}
+
+	public MapIterator iterator() {
+		Object[][] entries;
+		lockForReading();
+		try {
+			entries = copyEntries(map);
+		} finally {
+			unlockForReading();
+		}
+		return new ConcurrentMapIterator(this, entries[0], entries[1]);
+	}
+}
@@ -0,0 +1,55 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+import java.util.NoSuchElementException;
+
+import net.joaosilva.j2meds.Map.Entry;
+
+/** Goes through a copy of a {@link ConcurrentMap}'s entries. */
+class ConcurrentMapIterator implements MapIterator {
+	private ConcurrentMap source;
+	private Object[] keys;
+	private Object[] values;
+	private int nextIndex;
+	private boolean canRemove;
+
+	public ConcurrentMapIterator(ConcurrentMap source, Object[] keys, Object[] values) {
+		this.source = source;
+		this.keys = keys;
+		this.values = values;
+	}
+
+	public boolean hasNext() {
+		return nextIndex < keys.length;
+	}
+
+	public Entry next() {
+		if(nextIndex >= keys.length)
+			throw new NoSuchElementException();
+		canRemove = true;
+		Entry result = new Entry(keys[nextIndex], values[nextIndex]);
+		++nextIndex;
+		return result;
+	}
+
+	public void remove() {
+		if(!canRemove)
+			throw new InvalidOperationException(
+					"remove can only be called once after each call to next");
+		source.remove(keys[nextIndex - 1]);
+		canRemove = false;
+	}
+}
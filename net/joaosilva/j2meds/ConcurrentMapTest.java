@@ -0,0 +1,131 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package net.joaosilva.j2meds;
+
+import jmunit.framework.cldc11.TestCase;
+
+public class ConcurrentMapTest extends TestCase {
+
+	public ConcurrentMapTest() {
+		super(3, "ConcurrentMapTest");
+	}
+
+	public void test(int testNumber) {
+		switch(testNumber) {
+		case 0:
+			testMapMethods();
+			break;
+		case 1:
+			testConcurrentWriters();
+			break;
+		case 2:
+			testMapsChangedByReads();
+			break;
+
+		default:
+			break;
+		}
+	}
+
+	public void testMapMethods() {
+		ConcurrentMap m = new ConcurrentMap(new BinaryTree(Comparators.INTEGER));
+		assertTrue(m.isEmpty());
+		for(int i = 0; i < 10; ++i)
+			assertNull(m.put(new Integer(i), new Integer(i)));
+		assertEquals(10, m.size());
+		assertEquals(3, ((Integer)m.get(new Integer(3))).intValue());
+
+		MapIterator it = m.iterator();
+		while(it.hasNext()) {
+			if(((Integer)it.next().getKey()).intValue() % 2 == 0)
+				it.remove();
+		}
+		assertEquals(5, m.size());
+		assertFalse(m.containsKey(new Integer(4)));
+
+		ConcurrentMap copy = new ConcurrentMap(new BinaryTree(Comparators.INTEGER));
+		copy.putAll(m);
+		assertTrue(copy.equals(m));
+		assertEquals(m.hashCode(), copy.hashCode());
+		copy.put(new Integer(3), new Integer(4));
+		assertFalse(copy.equals(m));
+		copy.put(new Integer(3), null);
+		assertFalse(copy.equals(m));
+		assertFalse(m.equals(copy));
+	}
+
+	public void testConcurrentWriters() {
+		final ConcurrentMap m = new ConcurrentMap(
+				new BinaryTree(Comparators.INTEGER, BinaryTree.BALANCED));
+		Thread[] threads = new Thread[4];
+		for(int i = 0; i < threads.length; ++i) {
+			final int first = i * 1000;
+			threads[i] = new Thread() {
+				public void run() {
+					for(int j = first; j < first + 1000; ++j) {
+						m.put(new Integer(j), null);
+						m.get(new Integer(j - 500));
+					}
+				}
+			};
+			threads[i].start();
+		}
+		try {
+			for(int i = 0; i < threads.length; ++i)
+				threads[i].join();
+		} catch(InterruptedException e) {
+			fail("Interrupted");
+		}
+		assertEquals(4000, m.size());
+	}
+	
+	public void testMapsChangedByReads() {
+		final CacheMap cache = new CacheMap(Comparators.INTEGER, CacheMap.LRU, 100);
+		final ConcurrentMap cached = new ConcurrentMap(cache);
+		final ConcurrentMap splayed = new ConcurrentMap(new SplayTree(Comparators.INTEGER));
+		for(int i = 0; i < 100; ++i) {
+			cached.put(new Integer(i), new Integer(i));
+			splayed.put(new Integer(i), new Integer(i));
+		}
+		Thread[] threads = new Thread[4];
+		for(int i = 0; i < threads.length; ++i) {
+			final int step = i * 2 + 1;
+			threads[i] = new Thread() {
+				public void run() {
+					for(int j = 0; j < 1000; ++j) {
+						Integer key = new Integer(j * step % 100);
+						cached.get(key);
+						splayed.get(key);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		try {
+			for(int i = 0; i < threads.length; ++i)
+				threads[i].join();
+		} catch(InterruptedException e) {
+			fail("Interrupted");
+		}
+		// no use or hit was lost, and the tree kept all its nodes
+		assertEquals(4000, cache.getHitCount());
+		assertEquals(100, cached.size());
+		MapIterator it = splayed.iterator();
+		for(int i = 0; i < 100; ++i)
+			assertEquals(i, ((Integer)it.next().getKey()).intValue());
+		assertFalse(it.hasNext());
+	}
+}
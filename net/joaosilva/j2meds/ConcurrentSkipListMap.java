@@ -0,0 +1,471 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+/** A sorted map which many threads can use at once, kept in a skip list.
+ *
+ *  Unlike a {@link ConcurrentMap}, which lets a single writer in at a time,
+ *  this lets writers working on different parts of the map run in parallel:
+ *  put and remove only lock the few nodes next to the key they change, and
+ *  get, the navigation methods and iterators take no locks at all.
+ *
+ *  It's a lazy skip list: removed nodes are first marked, which is when they
+ *  stop being in the map, and then unlinked, and new nodes are only in the map
+ *  once linked at every level. Skip lists are usually made lock free with
+ *  compare-and-set instructions, which CLDC doesn't provide, so the nodes are
+ *  locked with synchronized instead.
+ *
+ *  Iterators are weakly consistent: they never fail, and return every entry
+ *  which was in the map throughout the iteration, but may or may not see the
+ *  changes made while iterating. Likewise, size() adds up counts kept apart
+ *  so that writers don't all lock the same one, and is exact only while no
+ *  other thread is changing the map. As in {@link BinaryTree}, null keys are not allowed.
+ */
+public class ConcurrentSkipListMap implements SortedMap {
+	/** The most levels a node can be in, enough for a few billion entries. */
+	static final int MAX_LEVEL = 32;
+	/** How many counts the size is split into. A power of two. */
+	private static final int SIZE_STRIPES = 16;
+
+	/** A node before the first one, in every level. Its key is null. */
+	private SkipListNode head;
+	private Comparator comparator;
+	/** The size, split into counts which each thread updates one of, picked by
+	 *  the thread's hash code, so that writers seldom wait on each other. Each
+	 *  count is locked on its own array.
+	 */
+	private int[][] sizes;
+	/** The state of the generator used to pick new nodes' levels. Updates from
+	 *  different threads may be lost, which only makes some levels repeat.
+	 */
+	private int seed;
+	/** How many levels have nodes, and where searches start. It only grows,
+	 *  and does so before nodes are linked in the new levels.
+	 */
+	private volatile int levelCount = 1;
+
+	/** Creates a new, empty, ConcurrentSkipListMap, using the specified {@link Comparator}.
+	 * @param keyComparator A Comparator to compare keys. Usually, this will be one
+	 *  of the ones provided in {@link Comparators}.
+	 */
+	public ConcurrentSkipListMap(Comparator keyComparator) {
+		this.comparator = keyComparator;
+		head = new SkipListNode(null, null, MAX_LEVEL - 1, new SkipListNode[MAX_LEVEL]);
+		head.fullyLinked = true;
+		seed = (int)System.currentTimeMillis() | 1;
+		sizes = new int[SIZE_STRIPES][1];
+	}
+
+	/** Picks a level for a new node, each level being half as likely as the one below. */
+	private int randomLevel() {
+		// xorshift, since java.util.Random's state isn't safe to share
+		int x = seed;
+		x ^= x << 13;
+		x ^= x >>> 17;
+		x ^= x << 5;
+		seed = x;
+		int level = 0;
+		while((x & 1) != 0 && level < MAX_LEVEL - 1) {
+			++level;
+			x >>>= 1;
+		}
+		return level;
+	}
+
+	private void raiseLevelCount(int newLevelCount) {
+		// levels are rarely added, so most calls don't need the lock
+		if(newLevelCount <= levelCount)
+			return;
+		synchronized(this) {
+			if(newLevelCount > levelCount)
+				levelCount = newLevelCount;
+		}
+	}
+
+	private void addToSize(int delta) {
+		int hash = Thread.currentThread().hashCode();
+		// identity hash codes may be addresses, whose low bits hardly vary
+		hash ^= (hash >>> 16) ^ (hash >>> 8);
+		int[] count = sizes[hash & (SIZE_STRIPES - 1)];
+		synchronized(count) {
+			count[0] += delta;
+		}
+	}
+
+	/** Tells whether a node is in the map, that is, neither being inserted nor removed. */
+	private static boolean isLive(SkipListNode node) {
+		return node.fullyLinked && !node.marked;
+	}
+
+	/** Looks for a key, filling preds and succs with the nodes found on every
+	 *  level right before and after it.
+	 *
+	 * @return The highest level where the key was found, or -1 if it wasn't.
+	 */
+	private int find(Object key, SkipListNode[] preds, SkipListNode[] succs) {
+		int foundLevel = -1;
+		SkipListNode pred = head;
+		for(int level = levelCount - 1; level >= 0; --level) {
+			SkipListNode cur = pred.next[level];
+			int compareValue = 1;
+			while(cur != null && (compareValue = comparator.compare(key, cur.key)) > 0) {
+				pred = cur;
+				cur = pred.next[level];
+			}
+			if(foundLevel == -1 && cur != null && compareValue == 0)
+				foundLevel = level;
+			preds[level] = pred;
+			succs[level] = cur;
+		}
+		return foundLevel;
+	}
+
+	/** Finds the first node at or after key, or strictly after it, looking only
+	 *  at nodes in the map. A null key stands for a key before all others.
+	 */
+	private SkipListNode findAbove(Object key, boolean inclusive) {
+		SkipListNode pred = head;
+		SkipListNode cur = null;
+		for(int level = levelCount - 1; level >= 0; --level) {
+			cur = pred.next[level];
+			while(cur != null && key != null) {
+				int compareValue = comparator.compare(key, cur.key);
+				if(inclusive ? compareValue <= 0 : compareValue < 0)
+					break;
+				pred = cur;
+				cur = pred.next[level];
+			}
+		}
+		// nodes being inserted aren't there yet, and those being removed are gone already
+		while(cur != null && !isLive(cur))
+			cur = cur.next[0];
+		return cur;
+	}
+
+	/** Finds the last node at or before key, or strictly before it, looking only
+	 *  at nodes in the map. A null key stands for a key after all others.
+	 *
+	 *  There are no links going back, so if the node found is being inserted or
+	 *  removed, this waits for that to finish and looks again.
+	 */
+	private SkipListNode findBelow(Object key, boolean inclusive) {
+		while(true) {
+			SkipListNode pred = head;
+			for(int level = levelCount - 1; level >= 0; --level) {
+				SkipListNode cur = pred.next[level];
+				while(cur != null) {
+					if(key != null) {
+						int compareValue = comparator.compare(key, cur.key);
+						if(inclusive ? compareValue < 0 : compareValue <= 0)
+							break;
+					}
+					pred = cur;
+					cur = pred.next[level];
+				}
+			}
+			if(pred == head)
+				return null;
+			if(isLive(pred))
+				return pred;
+			Thread.yield();
+		}
+	}
+
+	private SkipListNode findNode(Object key) {
+		SkipListNode pred = head;
+		for(int level = levelCount - 1; level >= 0; --level) {
+			SkipListNode cur = pred.next[level];
+			while(cur != null) {
+				int compareValue = comparator.compare(key, cur.key);
+				if(compareValue == 0)
+					return isLive(cur) ? cur : null;
+				if(compareValue < 0)
+					break;
+				pred = cur;
+				cur = pred.next[level];
+			}
+		}
+		return null;
+	}
+
+	public boolean containsKey(Object key) {
+		return findNode(key) != null;
+	}
+
+	public Object get(Object key) {
+		SkipListNode node = findNode(key);
+		return node == null ? null : node.value;
+	}
+
+	public Object put(Object key, Object value) {
+		if(key == null)
+			throw new InvalidKeyException("Can't insert null keys");
+
+		int topLevel = randomLevel();
+		raiseLevelCount(topLevel + 1);
+		SkipListNode[] preds = new SkipListNode[MAX_LEVEL];
+		SkipListNode[] succs = new SkipListNode[MAX_LEVEL];
+		while(true) {
+			int foundLevel = find(key, preds, succs);
+			if(foundLevel != -1) {
+				SkipListNode node = succs[foundLevel];
+				if(!node.marked) {
+					// it's about to be in the map, so wait for it and replace its value
+					while(!node.fullyLinked)
+						Thread.yield();
+					synchronized(node) {
+						if(!node.marked) {
+							Object oldValue = node.value;
+							node.value = value;
+							return oldValue;
+						}
+					}
+				}
+				// it's being removed, so look again once it's gone
+				continue;
+			}
+
+			if(link(new SkipListNode(key, value, topLevel, succs), preds, succs, 0)) {
+				addToSize(1);
+				return null;
+			}
+		}
+	}
+
+	/** Locks preds from level up to the new node's top level, and then, if the
+	 *  nodes around the new node's place haven't changed since they were found,
+	 *  links it in. Synchronized blocks can't be held in a loop, hence the recursion.
+	 *
+	 * @return True if the node was linked in, false if the search must be redone.
+	 */
+	private boolean link(SkipListNode newNode, SkipListNode[] preds, SkipListNode[] succs,
+			int level) {
+		if(level <= newNode.topLevel) {
+			synchronized(preds[level]) {
+				return link(newNode, preds, succs, level + 1);
+			}
+		}
+
+		for(int i = 0; i <= newNode.topLevel; ++i) {
+			SkipListNode succ = succs[i];
+			if(preds[i].marked || (succ != null && succ.marked) || preds[i].next[i] != succ)
+				return false;
+		}
+		for(int i = 0; i <= newNode.topLevel; ++i)
+			preds[i].next[i] = newNode;
+		newNode.fullyLinked = true;
+		return true;
+	}
+
+	public Object remove(Object key) {
+		SkipListNode[] preds = new SkipListNode[MAX_LEVEL];
+		SkipListNode[] succs = new SkipListNode[MAX_LEVEL];
+		SkipListNode victim = null;
+		Object oldValue = null;
+		while(true) {
+			int foundLevel = find(key, preds, succs);
+			if(victim == null) {
+				if(foundLevel == -1)
+					return null;
+				SkipListNode node = succs[foundLevel];
+				// only a fully linked node found at its top level has all its preds known
+				if(!node.fullyLinked || node.topLevel != foundLevel || node.marked)
+					return null;
+				synchronized(node) {
+					if(node.marked)
+						return null;
+					node.marked = true;
+					oldValue = node.value;
+				}
+				victim = node;
+			}
+
+			// once marked, nothing can be linked after the victim, so its links stay put
+			if(unlink(victim, preds, 0)) {
+				addToSize(-1);
+				return oldValue;
+			}
+		}
+	}
+
+	/** Locks preds from level up to the victim's top level, and then, if they
+	 *  still come right before it, unlinks it.
+	 *
+	 * @return True if the victim was unlinked, false if the search must be redone.
+	 */
+	private boolean unlink(SkipListNode victim, SkipListNode[] preds, int level) {
+		if(level <= victim.topLevel) {
+			synchronized(preds[level]) {
+				return unlink(victim, preds, level + 1);
+			}
+		}
+
+		for(int i = 0; i <= victim.topLevel; ++i) {
+			if(preds[i].marked || preds[i].next[i] != victim)
+				return false;
+		}
+		for(int i = victim.topLevel; i >= 0; --i)
+			preds[i].next[i] = victim.next[i];
+		return true;
+	}
+
+	/** Removes every entry, one by one, so that it's safe while other threads
+	 *  use the map. Entries they add meanwhile may or may not be removed.
+	 */
+	public void clear() {
+		MapIterator it = iterator();
+		while(it.hasNext()) {
+			it.next();
+			it.remove();
+		}
+	}
+
+	public boolean isEmpty() {
+		return findAbove(null, true) == null;
+	}
+
+	public int size() {
+		int result = 0;
+		for(int i = 0; i < SIZE_STRIPES; ++i) {
+			synchronized(sizes[i]) {
+				result += sizes[i][0];
+			}
+		}
+		// a removal may be counted before the insertion it follows, in another count
+		return result < 0 ? 0 : result;
+	}
+
+	public void putAll(Map other) {
+		if(comparator != other.getKeyComparator())
+			throw new InvalidOperationException(
+					"putAll can't work on maps with different comparators");
+		MapIterator it = other.iterator();
+		while(it.hasNext()) {
+			Map.Entry entry = it.next();
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	public boolean equals(Object other) {
+		if(other == this)
+			return true;
+		if(!(other instanceof Map))
+			return false;
+
+		Map otherMap = (Map)other;
+		if(otherMap.size() != size())
+			return false;
+
+		MapIterator it = otherMap.iterator();
+		while(it.hasNext()) {
+			Map.Entry cur = it.next();
+			SkipListNode node = findNode(cur.getKey());
+			if(node == null)
+				return false;
+			Object value = cur.getValue();
+			if(value == null ? node.value != null : !value.equals(node.value))
+				return false;
+		}
+		return true;
+	}
+
+	public int hashCode() {
+		MapIterator it = iterator();
+		int result = 0;
+		while(it.hasNext())
+			result += it.next().hashCode();
+		return result;
+	}
+
+	public Comparator getKeyComparator() {
+		return comparator;
+	}
+
+	private static Object keyOf(SkipListNode node) {
+		return node == null ? null : node.key;
+	}
+
+	public Object firstKey() {
+		return keyOf(findAbove(null, true));
+	}
+
+	public Object lastKey() {
+		return keyOf(findBelow(null, true));
+	}
+
+	public Object floorKey(Object key) {
+		return keyOf(findBelow(key, true));
+	}
+
+	public Object ceilingKey(Object key) {
+		return keyOf(findAbove(key, true));
+	}
+
+	public Object lowerKey(Object key) {
+		return keyOf(findBelow(key, false));
+	}
+
+	public Object higherKey(Object key) {
+		return keyOf(findAbove(key, false));
+	}
+
+	public MapIterator iterator() {
+		return iterator(null, false);
+	}
+
+	public MapIterator iterator(Object startKey, boolean descending) {
+		SkipListNode first = descending ? findBelow(startKey, true) : findAbove(startKey, true);
+		return new ConcurrentSkipListMapIterator(this, first, descending);
+	}
+
+	public SortedMap subMap(Object fromKey, Object toKey) {
+		return new SortedSubMap(this, fromKey, toKey);
+	}
+
+	/** Returns the node after a given one which is in the map, or null if there's none. */
+	SkipListNode nextNode(SkipListNode node) {
+		SkipListNode result = node.next[0];
+		while(result != null && !isLive(result))
+			result = result.next[0];
+		return result;
+	}
+
+	/** Returns the last node in the map before key, or null if there's none. */
+	SkipListNode previousNode(Object key) {
+		return findBelow(key, false);
+	}
+}
+
+class SkipListNode {
+	/** Creates a node, which links to succs[0] to succs[topLevel]. */
+	SkipListNode(Object key, Object value, int topLevel, SkipListNode[] succs) {
+		this.key = key;
+		this.value = value;
+		this.topLevel = topLevel;
+		next = new SkipListNode[topLevel + 1];
+		System.arraycopy(succs, 0, next, 0, topLevel + 1);
+	}
+
+	/** Final, so that threads finding the node through a link see them set. */
+	final Object key;
+	final SkipListNode[] next;
+	final int topLevel;
+
+	volatile Object value;
+	/** Set once the node is being removed, which is when it leaves the map. */
+	volatile boolean marked;
+	/** Set once the node is linked in every level, which is when it enters the map. */
+	volatile boolean fullyLinked;
+}
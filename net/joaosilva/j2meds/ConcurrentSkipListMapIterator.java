@@ -0,0 +1,58 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+import java.util.NoSuchElementException;
+
+import net.joaosilva.j2meds.Map.Entry;
+
+/** Goes through a {@link ConcurrentSkipListMap}, following the bottom level's
+ *  links when ascending, or looking up the previous key at every step when
+ *  descending, since there are no links going back.
+ */
+class ConcurrentSkipListMapIterator implements MapIterator {
+	private ConcurrentSkipListMap source;
+	private SkipListNode nextNode;
+	private boolean descending;
+	private Object curKey;
+
+	public ConcurrentSkipListMapIterator(ConcurrentSkipListMap source,
+			SkipListNode first, boolean descending) {
+		this.source = source;
+		this.nextNode = first;
+		this.descending = descending;
+	}
+
+	public boolean hasNext() {
+		return nextNode != null;
+	}
+
+	public Entry next() {
+		if(nextNode == null)
+			throw new NoSuchElementException();
+		SkipListNode node = nextNode;
+		nextNode = descending ? source.previousNode(node.key) : source.nextNode(node);
+		curKey = node.key;
+		return new Entry(node.key, node.value);
+	}
+
+	public void remove() {
+		if(curKey == null)
+			throw new InvalidOperationException(
+					"remove can only be called once after each call to next");
+		source.remove(curKey);
+		curKey = null;
+	}
+}
@@ -0,0 +1,123 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package net.joaosilva.j2meds;
+
+import jmunit.framework.cldc11.TestCase;
+
+public class ConcurrentSkipListMapTest extends TestCase {
+
+	public ConcurrentSkipListMapTest() {
+		super(3, "ConcurrentSkipListMapTest");
+	}
+
+	public void test(int testNumber) {
+		switch(testNumber) {
+		case 0:
+			testPutGetRemove();
+			break;
+		case 1:
+			testNavigation();
+			break;
+		case 2:
+			testConcurrentWriters();
+			break;
+
+		default:
+			break;
+		}
+	}
+
+	public void testPutGetRemove() {
+		ConcurrentSkipListMap m = new ConcurrentSkipListMap(Comparators.STRING);
+		assertTrue(m.isEmpty());
+		assertNull(m.put("test", new Integer(0)));
+		assertEquals(0, ((Integer)m.put("test", new Integer(1))).intValue());
+		assertEquals(1, m.size());
+		assertEquals(1, ((Integer)m.get("test")).intValue());
+		assertNull(m.remove("some key that isn't there"));
+		assertEquals(1, ((Integer)m.remove("test")).intValue());
+		assertTrue(m.isEmpty());
+		assertFalse(m.containsKey("test"));
+	}
+
+	public void testNavigation() {
+		ConcurrentSkipListMap m = new ConcurrentSkipListMap(Comparators.INTEGER);
+		for(int i = 0; i < 100; i += 10)
+			m.put(new Integer(i), null);
+		assertEquals(0, ((Integer)m.firstKey()).intValue());
+		assertEquals(90, ((Integer)m.lastKey()).intValue());
+		assertEquals(40, ((Integer)m.floorKey(new Integer(45))).intValue());
+		assertEquals(50, ((Integer)m.ceilingKey(new Integer(45))).intValue());
+		assertEquals(30, ((Integer)m.lowerKey(new Integer(40))).intValue());
+		assertEquals(50, ((Integer)m.higherKey(new Integer(40))).intValue());
+		assertNull(m.lowerKey(new Integer(0)));
+		assertNull(m.higherKey(new Integer(90)));
+
+		MapIterator it = m.iterator(new Integer(55), true);
+		int expected = 50;
+		while(it.hasNext()) {
+			assertEquals(expected, ((Integer)it.next().getKey()).intValue());
+			it.remove();
+			expected -= 10;
+		}
+		assertEquals(-10, expected);
+		assertEquals(4, m.size());
+
+		SortedMap sub = m.subMap(new Integer(60), new Integer(90));
+		assertEquals(3, sub.size());
+		assertFalse(sub.containsKey(new Integer(90)));
+	}
+
+	public void testConcurrentWriters() {
+		final ConcurrentSkipListMap m = new ConcurrentSkipListMap(Comparators.INTEGER);
+		Thread[] threads = new Thread[4];
+		for(int i = 0; i < threads.length; ++i) {
+			final int offset = i;
+			threads[i] = new Thread() {
+				public void run() {
+					// the threads' keys are interleaved, so they change neighbouring nodes
+					for(int j = 0; j < 1000; ++j) {
+						m.put(new Integer(j * 4 + offset), null);
+						if(j % 2 != 0)
+							m.remove(new Integer((j - 1) * 4 + offset));
+					}
+				}
+			};
+			threads[i].start();
+		}
+		try {
+			for(int i = 0; i < threads.length; ++i)
+				threads[i].join();
+		} catch(InterruptedException e) {
+			fail("Interrupted");
+		}
+		assertEquals(2000, m.size());
+		int expected = 4;
+		MapIterator it = m.iterator();
+		while(it.hasNext()) {
+			int key = ((Integer)it.next().getKey()).intValue();
+			assertEquals(expected, key);
+			// keys 4 to 7 are kept, then 12 to 15, and so on
+			expected += expected % 4 == 3 ? 5 : 1;
+		}
+		assertEquals(4004, expected);
+
+		// entries counted by the other threads, removed by this one
+		m.clear();
+		assertEquals(0, m.size());
+		assertTrue(m.isEmpty());
+	}
+}
@@ -0,0 +1,30 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+/** Interface for classes meaning to work on a {@link BinaryTree}'s entries
+ *  through its bulk operations, such as {@link BinaryTree#forEach}.
+ *
+ *  The bulk operations may call it from several threads at once, so it must
+ *  be thread safe, and it must not change the tree.
+ */
+public interface EntryProcessor {
+	/** Processes an entry.
+	 *
+	 * @return The entry's result. What it means depends on the operation, and
+	 *         {@link BinaryTree#forEach} ignores it.
+	 */
+	public Object process(Object key, Object value);
+}
@@ -0,0 +1,25 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+/** Interface for classes meaning to be told when a {@link CacheMap} evicts an
+ *  entry to make room for others.
+ */
+public interface EvictionListener {
+	/** Called after an entry was evicted. Entries removed with remove or clear
+	 *  aren't reported. The listener must not change the cache.
+	 */
+	public void evicted(Object key, Object value);
+}
@@ -0,0 +1,29 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+/** Interface for classes meaning to compute hash codes for keys.
+ *
+ *  It must be consistent with the {@link Comparator} it's used with: keys which
+ *  the comparator considers equal must have the same hash code.
+ */
+public interface Hasher {
+	/** Computes a key's hash code.
+	 *
+	 * @param key A non-null key.
+	 * @return The key's hash code.
+	 */
+	public int hash(Object key);
+}
@@ -0,0 +1,28 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+/** Iterates over the entries of an {@link IntTreeMap} without boxing its keys. */
+public interface IntMapIterator {
+	boolean hasNext();
+	/** Advances to the next entry.
+	 *
+	 * @return The entry's key.
+	 */
+	int next();
+	/** Returns the value of the entry last returned by {@link #next()}. */
+	Object getValue();
+	void remove();
+}
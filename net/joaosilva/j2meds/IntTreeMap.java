@@ -0,0 +1,303 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package net.joaosilva.j2meds;
+
+/** A balanced binary tree mapping int keys to objects. It works like a
+ *  {@link BinaryTree} created with the {@link BinaryTree#BALANCED} option and
+ *  {@link Comparators#INTEGER}, but keys are compared inline and are never boxed
+ *  into Integers, which saves an object per entry.
+ */
+public class IntTreeMap {
+	/** A dummy node, prior to the root. Both its children point to the root. */
+	private IntTreeNode dummy;
+	private IntTreeNode root;
+	private int size;
+
+	/** The nodes visited by the last call to findPathTo, starting with the dummy node. */
+	private IntTreeNode[] path;
+	/** True if the last node visited by findPathTo comes after the key it looked for. */
+	private boolean lastWentLeft;
+
+	public IntTreeMap() {
+		dummy = new IntTreeNode(0, null);
+		path = new IntTreeNode[16];
+		clear();
+	}
+
+	public void clear() {
+		root = dummy.left = dummy.right = null;
+		size = 0;
+	}
+
+	IntTreeNode getRoot() {
+		return root;
+	}
+
+	private void setPath(int index, IntTreeNode node) {
+		if(index == path.length) {
+			IntTreeNode[] newPath = new IntTreeNode[path.length * 2];
+			System.arraycopy(path, 0, newPath, 0, path.length);
+			path = newPath;
+		}
+		path[index] = node;
+	}
+
+	/** Walks down from the root looking for a key, storing the nodes it goes
+	 *  through in path, which always starts with the dummy node.
+	 *
+	 * @return If the key is found, the length of the path, whose last node holds
+	 *         the key. Otherwise, minus the length of the path, whose last node is
+	 *         the one below which the key would have to be inserted.
+	 */
+	private int findPathTo(int key) {
+		path[0] = dummy;
+		int depth = 1;
+		IntTreeNode curNode = root;
+		while(curNode != null) {
+			setPath(depth++, curNode);
+			if(key == curNode.key)
+				return depth;
+
+			lastWentLeft = key < curNode.key;
+			if(lastWentLeft)
+				curNode = curNode.left;
+			else
+				curNode = curNode.right;
+		}
+		return -depth;
+	}
+
+	IntTreeNode findNodeWithKey(int key) {
+		IntTreeNode curNode = root;
+		while(curNode != null) {
+			if(key == curNode.key)
+				return curNode;
+
+			if(key < curNode.key)
+				curNode = curNode.left;
+			else
+				curNode = curNode.right;
+		}
+		return null;
+	}
+
+	public boolean containsKey(int key) {
+		return findNodeWithKey(key) != null;
+	}
+
+	public Object get(int key) {
+		IntTreeNode node = findNodeWithKey(key);
+		if(node == null)
+			return null;
+
+		return node.value;
+	}
+
+	public boolean isEmpty() {
+		return root == null;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private void replaceChild(IntTreeNode parent, IntTreeNode oldChild,
+			IntTreeNode newChild) {
+		if(parent == dummy)
+			root = dummy.left = dummy.right = newChild;
+		else if(parent.left == oldChild)
+			parent.left = newChild;
+		else
+			parent.right = newChild;
+	}
+
+	/** Associates value with key.
+	 *
+	 * @return The value previously associated with key, or null if there was none.
+	 */
+	public Object put(int key, Object value) {
+		int depth = findPathTo(key);
+		if(depth > 0) {
+			IntTreeNode node = path[depth - 1];
+			Object oldValue = node.value;
+			node.value = value;
+			return oldValue;
+		}
+
+		depth = -depth;
+		IntTreeNode parent = path[depth - 1];
+		IntTreeNode newNode = new IntTreeNode(key, value);
+		if(parent == dummy)
+			root = dummy.left = dummy.right = newNode;
+		else if(lastWentLeft)
+			parent.left = newNode;
+		else
+			parent.right = newNode;
+		++size;
+
+		for(int i = depth - 1; i > 0; --i) {
+			IntTreeNode node = path[i];
+			int oldHeight = node.height;
+			IntTreeNode newTop = rebalance(node);
+			if(newTop != node) {
+				replaceChild(path[i - 1], node, newTop);
+				break;
+			}
+			if(node.height == oldHeight)
+				break;
+		}
+		return null;
+	}
+
+	/** Removes key from the map.
+	 *
+	 * @return The value which was associated with key, or null if there was none.
+	 */
+	public Object remove(int key) {
+		int depth = findPathTo(key);
+		if(depth < 0)
+			return null;
+
+		IntTreeNode nodeToRemove = path[depth - 1];
+		IntTreeNode parent = path[depth - 2];
+		if(nodeToRemove.left == null || nodeToRemove.right == null) {
+			replaceChild(parent, nodeToRemove,
+					nodeToRemove.left != null ? nodeToRemove.left : nodeToRemove.right);
+			--depth;
+		}
+		else {
+			int removedIndex = depth - 1;
+			IntTreeNode successor = nodeToRemove.right;
+			while(successor.left != null) {
+				setPath(depth++, successor);
+				successor = successor.left;
+			}
+			replaceChild(path[depth - 1], successor, successor.right);
+			successor.left = nodeToRemove.left;
+			successor.right = nodeToRemove.right;
+			successor.height = nodeToRemove.height;
+			replaceChild(parent, nodeToRemove, successor);
+			path[removedIndex] = successor;
+		}
+		--size;
+
+		for(int i = depth - 1; i > 0; --i) {
+			IntTreeNode node = path[i];
+			int oldHeight = node.height;
+			IntTreeNode newTop = rebalance(node);
+			if(newTop != node)
+				replaceChild(path[i - 1], node, newTop);
+			if(newTop.height == oldHeight)
+				break;
+		}
+		return nodeToRemove.value;
+	}
+
+	private static int heightOf(IntTreeNode node) {
+		return node == null ? 0 : node.height;
+	}
+
+	private static void updateHeight(IntTreeNode node) {
+		int leftHeight = heightOf(node.left);
+		int rightHeight = heightOf(node.right);
+		node.height = (byte)((leftHeight > rightHeight ? leftHeight : rightHeight) + 1);
+	}
+
+	private static IntTreeNode rotateLeft(IntTreeNode node) {
+		IntTreeNode newTop = node.right;
+		node.right = newTop.left;
+		newTop.left = node;
+		updateHeight(node);
+		updateHeight(newTop);
+		return newTop;
+	}
+
+	private static IntTreeNode rotateRight(IntTreeNode node) {
+		IntTreeNode newTop = node.left;
+		node.left = newTop.right;
+		newTop.right = node;
+		updateHeight(node);
+		updateHeight(newTop);
+		return newTop;
+	}
+
+	private static IntTreeNode rebalance(IntTreeNode node) {
+		int balance = heightOf(node.left) - heightOf(node.right);
+		if(balance > 1) {
+			if(heightOf(node.left.left) < heightOf(node.left.right))
+				node.left = rotateLeft(node.left);
+			return rotateRight(node);
+		}
+		if(balance < -1) {
+			if(heightOf(node.right.right) < heightOf(node.right.left))
+				node.right = rotateRight(node.right);
+			return rotateLeft(node);
+		}
+		updateHeight(node);
+		return node;
+	}
+
+	public boolean equals(Object other) {
+		if(!(other instanceof IntTreeMap))
+			return false;
+
+		IntTreeMap otherMap = (IntTreeMap)other;
+		if(otherMap.size() != size)
+			return false;
+
+		IntMapIterator it = otherMap.iterator();
+		while(it.hasNext()) {
+			IntTreeNode node = findNodeWithKey(it.next());
+			if(node == null)
+				return false;
+			Object value = it.getValue();
+			if(value == null ? node.value != null : !value.equals(node.value))
+				return false;
+		}
+		return true;
+	}
+
+	public int hashCode() {
+		IntMapIterator it = iterator();
+		int result = 0;
+		while(it.hasNext()) {
+			int key = it.next();
+			Object value = it.getValue();
+			result += key ^ (value == null ? 0 : value.hashCode());
+		}
+		return result;
+	}
+
+	/** Returns an iterator over the map's keys, in ascending order. */
+	public IntMapIterator iterator() {
+		return new IntTreeMapIterator(this);
+	}
+}
+
+class IntTreeNode {
+	public IntTreeNode(int newKey, Object newValue) {
+		key = newKey;
+		value = newValue;
+		height = 1;
+	}
+
+	IntTreeNode left;
+	IntTreeNode right;
+
+	int key;
+	Object value;
+	byte height;
+}
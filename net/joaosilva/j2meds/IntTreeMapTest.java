@@ -0,0 +1,91 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package net.joaosilva.j2meds;
+
+import jmunit.framework.cldc11.TestCase;
+
+public class IntTreeMapTest extends TestCase {
+
+	public IntTreeMapTest() {
+		super(3, "IntTreeMapTest");
+	}
+
+	public void test(int testNumber) {
+		switch(testNumber) {
+		case 0:
+			testPutGetRemove();
+			break;
+		case 1:
+			testOrder();
+			break;
+		case 2:
+			testIteratorRemove();
+			break;
+
+		default:
+			break;
+		}
+	}
+
+	public void testPutGetRemove() {
+		IntTreeMap m = new IntTreeMap();
+		assertTrue(m.isEmpty());
+		assertNull(m.put(5, "five"));
+		assertNull(m.put(-3, "minus three"));
+		assertEquals(0, ((String)m.put(5, "five, eh")).compareTo("five"));
+		assertEquals(2, m.size());
+		assertEquals(0, ((String)m.get(5)).compareTo("five, eh"));
+		assertTrue(m.containsKey(-3));
+		assertFalse(m.containsKey(3));
+		assertNull(m.remove(3));
+		assertEquals(0, ((String)m.remove(-3)).compareTo("minus three"));
+		assertEquals(1, m.size());
+		m.clear();
+		assertTrue(m.isEmpty());
+	}
+
+	public void testOrder() {
+		IntTreeMap m = new IntTreeMap();
+		m.put(Integer.MAX_VALUE, null);
+		m.put(Integer.MIN_VALUE, null);
+		for(int i = 0; i < 1000; ++i)
+			m.put(i * 7919 % 1000, null);
+		IntMapIterator it = m.iterator();
+		assertEquals(Integer.MIN_VALUE, it.next());
+		for(int i = 0; i < 1000; ++i)
+			assertEquals(i, it.next());
+		assertEquals(Integer.MAX_VALUE, it.next());
+		assertFalse(it.hasNext());
+	}
+
+	public void testIteratorRemove() {
+		IntTreeMap m = new IntTreeMap();
+		for(int i = 0; i < 100; ++i)
+			m.put(i, new Integer(i));
+		IntMapIterator it = m.iterator();
+		while(it.hasNext()) {
+			int key = it.next();
+			assertEquals(key, ((Integer)it.getValue()).intValue());
+			if(key % 3 != 0)
+				it.remove();
+		}
+		assertEquals(34, m.size());
+		it = m.iterator();
+		for(int i = 0; i < 100; i += 3)
+			assertEquals(i, it.next());
+		assertFalse(it.hasNext());
+	}
+}
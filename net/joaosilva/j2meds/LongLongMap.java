@@ -0,0 +1,369 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/** A sorted map from long keys to long values, for large indexes such as IDs
+ *  to file offsets, which takes no objects per entry.
+ *
+ *  The entries are kept in key order, as by {@link Comparators#LONG}, in pages:
+ *  pairs of arrays holding up to pageSize keys and values. Finding a key takes
+ *  a binary search over the pages and another within one, and putting or
+ *  removing one shifts the rest of its page. The garbage collector only sees
+ *  a few arrays per page, however many entries there are.
+ *
+ *  {@link #writeTo} saves the map in key order, and {@link #readFrom} loads it
+ *  back by filling the pages straight from the stream, without comparing or
+ *  inserting anything, so reopening a saved index takes a single pass.
+ */
+public class LongLongMap {
+	/** The number of entries in a page unless specified otherwise. */
+	public static final int DEFAULT_PAGE_SIZE = 256;
+
+	private int pageSize;
+	/** The pages' keys and values, in key order. Only the first pageCount are used. */
+	private long[][] pageKeys;
+	private long[][] pageValues;
+	/** The number of entries in each page, which is never 0. */
+	private int[] pageSizes;
+	private int pageCount;
+	private int size;
+
+	public LongLongMap() {
+		this(DEFAULT_PAGE_SIZE);
+	}
+
+	/** Creates a new, empty, LongLongMap.
+	 *
+	 * @param pageSize How many entries a page holds. Larger pages take fewer
+	 *        arrays, but puts and removes shift more entries.
+	 */
+	public LongLongMap(int pageSize) {
+		if(pageSize < 4)
+			throw new IllegalArgumentException("Pages must hold at least 4 entries");
+		this.pageSize = pageSize;
+		clear();
+	}
+
+	public void clear() {
+		pageKeys = new long[4][];
+		pageValues = new long[4][];
+		pageSizes = new int[4];
+		pageCount = 0;
+		size = 0;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/** Returns the index of the page which holds key, or where it would go:
+	 *  the last one whose first key is less than or equal to key, or the first
+	 *  page if there's none. The map must not be empty.
+	 */
+	private int findPage(long key) {
+		int low = 0;
+		int high = pageCount - 1;
+		while(low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if(pageKeys[middle][0] <= key)
+				low = middle;
+			else
+				high = middle - 1;
+		}
+		return low;
+	}
+
+	/** Looks for a key in a page.
+	 *
+	 * @return The key's index, if it's there. Otherwise, minus one minus the
+	 *         index where it would have to be inserted.
+	 */
+	private int findInPage(int page, long key) {
+		long[] keys = pageKeys[page];
+		int low = 0;
+		int high = pageSizes[page] - 1;
+		while(low <= high) {
+			int middle = (low + high) >>> 1;
+			if(keys[middle] < key)
+				low = middle + 1;
+			else if(keys[middle] > key)
+				high = middle - 1;
+			else
+				return middle;
+		}
+		return -low - 1;
+	}
+
+	public boolean containsKey(long key) {
+		return size > 0 && findInPage(findPage(key), key) >= 0;
+	}
+
+	/** Returns the value associated with key, or defaultValue if there's none. */
+	public long get(long key, long defaultValue) {
+		if(size == 0)
+			return defaultValue;
+		int page = findPage(key);
+		int index = findInPage(page, key);
+		return index < 0 ? defaultValue : pageValues[page][index];
+	}
+
+	/** Makes room for a page at a given index, and creates it. */
+	private void insertPage(int page) {
+		if(pageCount == pageKeys.length) {
+			long[][] newKeys = new long[pageCount * 2][];
+			long[][] newValues = new long[pageCount * 2][];
+			int[] newSizes = new int[pageCount * 2];
+			System.arraycopy(pageKeys, 0, newKeys, 0, pageCount);
+			System.arraycopy(pageValues, 0, newValues, 0, pageCount);
+			System.arraycopy(pageSizes, 0, newSizes, 0, pageCount);
+			pageKeys = newKeys;
+			pageValues = newValues;
+			pageSizes = newSizes;
+		}
+		System.arraycopy(pageKeys, page, pageKeys, page + 1, pageCount - page);
+		System.arraycopy(pageValues, page, pageValues, page + 1, pageCount - page);
+		System.arraycopy(pageSizes, page, pageSizes, page + 1, pageCount - page);
+		pageKeys[page] = new long[pageSize];
+		pageValues[page] = new long[pageSize];
+		pageSizes[page] = 0;
+		++pageCount;
+	}
+
+	private void removePage(int page) {
+		--pageCount;
+		System.arraycopy(pageKeys, page + 1, pageKeys, page, pageCount - page);
+		System.arraycopy(pageValues, page + 1, pageValues, page, pageCount - page);
+		System.arraycopy(pageSizes, page + 1, pageSizes, page, pageCount - page);
+		pageKeys[pageCount] = null;
+		pageValues[pageCount] = null;
+	}
+
+	/** Associates value with key.
+	 *
+	 * @return True if key wasn't in the map before.
+	 */
+	public boolean put(long key, long value) {
+		if(size == 0) {
+			insertPage(0);
+			pageKeys[0][0] = key;
+			pageValues[0][0] = value;
+			pageSizes[0] = 1;
+			size = 1;
+			return true;
+		}
+
+		int page = findPage(key);
+		int index = findInPage(page, key);
+		if(index >= 0) {
+			pageValues[page][index] = value;
+			return false;
+		}
+
+		index = -index - 1;
+		if(pageSizes[page] == pageSize) {
+			// moves the upper half to a new page after this one
+			int half = pageSize / 2;
+			insertPage(page + 1);
+			System.arraycopy(pageKeys[page], half, pageKeys[page + 1], 0, pageSize - half);
+			System.arraycopy(pageValues[page], half, pageValues[page + 1], 0, pageSize - half);
+			pageSizes[page] = half;
+			pageSizes[page + 1] = pageSize - half;
+			if(index > half) {
+				++page;
+				index -= half;
+			}
+		}
+
+		long[] keys = pageKeys[page];
+		long[] values = pageValues[page];
+		int count = pageSizes[page];
+		System.arraycopy(keys, index, keys, index + 1, count - index);
+		System.arraycopy(values, index, values, index + 1, count - index);
+		keys[index] = key;
+		values[index] = value;
+		++pageSizes[page];
+		++size;
+		return true;
+	}
+
+	/** Removes key from the map.
+	 *
+	 * @return True if key was in the map.
+	 */
+	public boolean remove(long key) {
+		if(size == 0)
+			return false;
+		int page = findPage(key);
+		int index = findInPage(page, key);
+		if(index < 0)
+			return false;
+
+		long[] keys = pageKeys[page];
+		long[] values = pageValues[page];
+		int count = --pageSizes[page];
+		System.arraycopy(keys, index + 1, keys, index, count - index);
+		System.arraycopy(values, index + 1, values, index, count - index);
+		--size;
+
+		if(count == 0)
+			removePage(page);
+		else {
+			// merges sparse neighbours, so that removals don't leave pages mostly empty
+			if(page + 1 < pageCount && count + pageSizes[page + 1] <= pageSize / 2)
+				mergeWithNext(page);
+			else if(page > 0 && count + pageSizes[page - 1] <= pageSize / 2)
+				mergeWithNext(page - 1);
+		}
+		return true;
+	}
+
+	/** Moves the entries of the page after a given one to the end of it. */
+	private void mergeWithNext(int page) {
+		int count = pageSizes[page];
+		int nextCount = pageSizes[page + 1];
+		System.arraycopy(pageKeys[page + 1], 0, pageKeys[page], count, nextCount);
+		System.arraycopy(pageValues[page + 1], 0, pageValues[page], count, nextCount);
+		pageSizes[page] = count + nextCount;
+		removePage(page + 1);
+	}
+
+	/** Returns the position of the first entry whose key is greater than or
+	 *  equal to key, as a page index in the upper 32 bits and an index in that
+	 *  page in the lower ones, or pageCount in the upper bits if there's none.
+	 */
+	long findCeiling(long key) {
+		if(size == 0)
+			return 0;
+		int page = findPage(key);
+		int index = findInPage(page, key);
+		if(index < 0)
+			index = -index - 1;
+		if(index == pageSizes[page]) {
+			++page;
+			index = 0;
+		}
+		return ((long)page << 32) | index;
+	}
+
+	int getPageCount() {
+		return pageCount;
+	}
+
+	int getPageSize(int page) {
+		return pageSizes[page];
+	}
+
+	long getKey(int page, int index) {
+		return pageKeys[page][index];
+	}
+
+	long getValue(int page, int index) {
+		return pageValues[page][index];
+	}
+
+	/** Writes the map to a stream: the number of entries, as an int, followed by
+	 *  each key and its value, in ascending order of the keys.
+	 */
+	public void writeTo(DataOutputStream out) throws IOException {
+		out.writeInt(size);
+		for(int page = 0; page < pageCount; ++page) {
+			long[] keys = pageKeys[page];
+			long[] values = pageValues[page];
+			for(int i = 0; i < pageSizes[page]; ++i) {
+				out.writeLong(keys[i]);
+				out.writeLong(values[i]);
+			}
+		}
+	}
+
+	/** Reads a map written by {@link #writeTo}, in a single pass which fills
+	 *  every page but the last.
+	 *
+	 * @param pageSize The new map's page size, as in {@link #LongLongMap(int)}.
+	 *        It needn't be the same as the saved map's.
+	 * @throws IOException If the stream can't be read, or the keys in it aren't
+	 *         in strictly ascending order.
+	 */
+	public static LongLongMap readFrom(DataInputStream in, int pageSize) throws IOException {
+		LongLongMap result = new LongLongMap(pageSize);
+		int count = in.readInt();
+		if(count < 0)
+			throw new IOException("Invalid entry count: " + count);
+		long lastKey = 0;
+		for(int i = 0; i < count; ++i) {
+			long key = in.readLong();
+			if(i > 0 && key <= lastKey)
+				throw new IOException("Keys out of order at entry " + i);
+			lastKey = key;
+			if(i % pageSize == 0)
+				result.insertPage(result.pageCount);
+			int page = result.pageCount - 1;
+			int index = result.pageSizes[page]++;
+			result.pageKeys[page][index] = key;
+			result.pageValues[page][index] = in.readLong();
+		}
+		result.size = count;
+		return result;
+	}
+
+	public boolean equals(Object other) {
+		if(!(other instanceof LongLongMap))
+			return false;
+
+		LongLongMap otherMap = (LongLongMap)other;
+		if(otherMap.size() != size)
+			return false;
+
+		LongLongIterator it = otherMap.iterator();
+		while(it.hasNext()) {
+			long key = it.next();
+			if(!containsKey(key) || get(key, 0) != it.getValue())
+				return false;
+		}
+		return true;
+	}
+
+	/** Returns the same hash code as a {@link Map} of the same keys and values as Longs. */
+	public int hashCode() {
+		int result = 0;
+		for(int page = 0; page < pageCount; ++page) {
+			long[] keys = pageKeys[page];
+			long[] values = pageValues[page];
+			for(int i = 0; i < pageSizes[page]; ++i)
+				result += (int)(keys[i] ^ (keys[i] >>> 32)) ^ (int)(values[i] ^ (values[i] >>> 32));
+		}
+		return result;
+	}
+
+	/** Returns an iterator over the map's entries, in ascending order of their keys. */
+	public LongLongIterator iterator() {
+		return new LongLongMapIterator(this, Long.MIN_VALUE, Long.MAX_VALUE, true);
+	}
+
+	/** Returns an iterator over the entries whose keys go from fromKey, inclusive,
+	 *  to toKey, exclusive, in ascending order of their keys.
+	 */
+	public LongLongIterator iterator(long fromKey, long toKey) {
+		return new LongLongMapIterator(this, fromKey, toKey, false);
+	}
+}
@@ -0,0 +1,84 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+class LongLongMapIterator implements LongLongIterator {
+	private LongLongMap source;
+	/** The position of the next entry to return. */
+	private int page;
+	private int index;
+	/** The key at which to stop, unless unbounded. */
+	private long toKey;
+	private boolean unbounded;
+	private long curKey;
+	private long curValue;
+	private boolean hasCurrent;
+
+	/** Creates an iterator over the entries from fromKey, inclusive, to toKey,
+	 *  exclusive, or to the end of the map if unbounded.
+	 */
+	public LongLongMapIterator(LongLongMap source, long fromKey, long toKey,
+			boolean unbounded) {
+		this.source = source;
+		this.toKey = toKey;
+		this.unbounded = unbounded;
+		seek(fromKey);
+	}
+
+	/** Moves to the first entry whose key is greater than or equal to key. */
+	private void seek(long key) {
+		long position = source.findCeiling(key);
+		page = (int)(position >>> 32);
+		index = (int)position;
+	}
+
+	public boolean hasNext() {
+		return page < source.getPageCount() &&
+				(unbounded || source.getKey(page, index) < toKey);
+	}
+
+	public long next() {
+		if(!hasNext())
+			throw new java.util.NoSuchElementException();
+		curKey = source.getKey(page, index);
+		curValue = source.getValue(page, index);
+		hasCurrent = true;
+		if(++index == source.getPageSize(page)) {
+			++page;
+			index = 0;
+		}
+		return curKey;
+	}
+
+	public long getValue() {
+		if(!hasCurrent)
+			throw new InvalidOperationException("next must be called before getValue");
+		return curValue;
+	}
+
+	public void remove() {
+		if(!hasCurrent)
+			throw new InvalidOperationException(
+					"remove can only be called once after each call to next");
+		source.remove(curKey);
+		hasCurrent = false;
+
+		// removing shifts entries and may merge pages, so find the next one again
+		if(curKey != Long.MAX_VALUE)
+			seek(curKey + 1);
+		else
+			page = source.getPageCount();
+	}
+}
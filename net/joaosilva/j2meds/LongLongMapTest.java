@@ -0,0 +1,118 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package net.joaosilva.j2meds;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import jmunit.framework.cldc11.TestCase;
+
+public class LongLongMapTest extends TestCase {
+
+	public LongLongMapTest() {
+		super(3, "LongLongMapTest");
+	}
+
+	public void test(int testNumber) {
+		switch(testNumber) {
+		case 0:
+			testPutGetRemove();
+			break;
+		case 1:
+			testRangeIterator();
+			break;
+		case 2:
+			testWriteAndRead();
+			break;
+
+		default:
+			break;
+		}
+	}
+
+	public void testPutGetRemove() {
+		LongLongMap m = new LongLongMap(8);
+		assertTrue(m.isEmpty());
+		assertTrue(m.put(Long.MAX_VALUE, 1));
+		assertFalse(m.put(Long.MAX_VALUE, 2));
+		assertEquals(2, m.get(Long.MAX_VALUE, -1));
+		assertEquals(-1, m.get(0, -1));
+		for(long i = 0; i < 1000; ++i)
+			m.put(i * 3, -i);
+		assertEquals(1001, m.size());
+		for(long i = 0; i < 1000; i += 2)
+			assertTrue(m.remove(i * 3));
+		assertFalse(m.remove(3000));
+		assertEquals(501, m.size());
+		for(long i = 0; i < 1000; ++i)
+			assertEquals(i % 2 != 0, m.containsKey(i * 3));
+		assertEquals(-999, m.get(2997, 0));
+	}
+
+	public void testRangeIterator() {
+		LongLongMap m = new LongLongMap(4);
+		for(long i = 99; i >= 0; --i)
+			m.put(i * 10, i);
+		LongLongIterator it = m.iterator(95, 500);
+		long expected = 100;
+		while(it.hasNext()) {
+			assertEquals(expected, it.next());
+			assertEquals(expected / 10, it.getValue());
+			if(expected % 20 == 0)
+				it.remove();
+			expected += 10;
+		}
+		assertEquals(500, expected);
+		assertEquals(80, m.size());
+		assertFalse(m.containsKey(200));
+		assertTrue(m.containsKey(210));
+
+		it = m.iterator();
+		int count = 0;
+		while(it.hasNext()) {
+			it.next();
+			it.remove();
+			++count;
+		}
+		assertEquals(80, count);
+		assertTrue(m.isEmpty());
+	}
+
+	public void testWriteAndRead() {
+		LongLongMap m = new LongLongMap();
+		for(long i = 0; i < 1000; ++i)
+			m.put(i * 1000003L, i << 33);
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			m.writeTo(new DataOutputStream(bytes));
+			LongLongMap read = LongLongMap.readFrom(new DataInputStream(
+					new ByteArrayInputStream(bytes.toByteArray())), 16);
+			assertEquals(1000, read.size());
+			assertTrue(read.equals(m));
+			assertEquals(m.hashCode(), read.hashCode());
+			assertEquals(5L << 33, read.get(5 * 1000003L, 0));
+			// the loaded pages are full, so putting splits them
+			read.put(1, 1);
+			assertTrue(read.containsKey(1));
+			assertEquals(1001, read.size());
+		} catch(IOException e) {
+			fail(e.toString());
+		}
+	}
+}
@@ -0,0 +1,303 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package net.joaosilva.j2meds;
+
+/** A balanced binary tree mapping long keys to objects. It works like a
+ *  {@link BinaryTree} created with the {@link BinaryTree#BALANCED} option and
+ *  {@link Comparators#LONG}, but keys are compared inline and are never boxed
+ *  into Longs, which saves an object per entry.
+ */
+public class LongTreeMap {
+	/** A dummy node, prior to the root. Both its children point to the root. */
+	private LongTreeNode dummy;
+	private LongTreeNode root;
+	private int size;
+
+	/** The nodes visited by the last call to findPathTo, starting with the dummy node. */
+	private LongTreeNode[] path;
+	/** True if the last node visited by findPathTo comes after the key it looked for. */
+	private boolean lastWentLeft;
+
+	public LongTreeMap() {
+		dummy = new LongTreeNode(0, null);
+		path = new LongTreeNode[16];
+		clear();
+	}
+
+	public void clear() {
+		root = dummy.left = dummy.right = null;
+		size = 0;
+	}
+
+	LongTreeNode getRoot() {
+		return root;
+	}
+
+	private void setPath(int index, LongTreeNode node) {
+		if(index == path.length) {
+			LongTreeNode[] newPath = new LongTreeNode[path.length * 2];
+			System.arraycopy(path, 0, newPath, 0, path.length);
+			path = newPath;
+		}
+		path[index] = node;
+	}
+
+	/** Walks down from the root looking for a key, storing the nodes it goes
+	 *  through in path, which always starts with the dummy node.
+	 *
+	 * @return If the key is found, the length of the path, whose last node holds
+	 *         the key. Otherwise, minus the length of the path, whose last node is
+	 *         the one below which the key would have to be inserted.
+	 */
+	private int findPathTo(long key) {
+		path[0] = dummy;
+		int depth = 1;
+		LongTreeNode curNode = root;
+		while(curNode != null) {
+			setPath(depth++, curNode);
+			if(key == curNode.key)
+				return depth;
+
+			lastWentLeft = key < curNode.key;
+			if(lastWentLeft)
+				curNode = curNode.left;
+			else
+				curNode = curNode.right;
+		}
+		return -depth;
+	}
+
+	LongTreeNode findNodeWithKey(long key) {
+		LongTreeNode curNode = root;
+		while(curNode != null) {
+			if(key == curNode.key)
+				return curNode;
+
+			if(key < curNode.key)
+				curNode = curNode.left;
+			else
+				curNode = curNode.right;
+		}
+		return null;
+	}
+
+	public boolean containsKey(long key) {
+		return findNodeWithKey(key) != null;
+	}
+
+	public Object get(long key) {
+		LongTreeNode node = findNodeWithKey(key);
+		if(node == null)
+			return null;
+
+		return node.value;
+	}
+
+	public boolean isEmpty() {
+		return root == null;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private void replaceChild(LongTreeNode parent, LongTreeNode oldChild,
+			LongTreeNode newChild) {
+		if(parent == dummy)
+			root = dummy.left = dummy.right = newChild;
+		else if(parent.left == oldChild)
+			parent.left = newChild;
+		else
+			parent.right = newChild;
+	}
+
+	/** Associates value with key.
+	 *
+	 * @return The value previously associated with key, or null if there was none.
+	 */
+	public Object put(long key, Object value) {
+		int depth = findPathTo(key);
+		if(depth > 0) {
+			LongTreeNode node = path[depth - 1];
+			Object oldValue = node.value;
+			node.value = value;
+			return oldValue;
+		}
+
+		depth = -depth;
+		LongTreeNode parent = path[depth - 1];
+		LongTreeNode newNode = new LongTreeNode(key, value);
+		if(parent == dummy)
+			root = dummy.left = dummy.right = newNode;
+		else if(lastWentLeft)
+			parent.left = newNode;
+		else
+			parent.right = newNode;
+		++size;
+
+		for(int i = depth - 1; i > 0; --i) {
+			LongTreeNode node = path[i];
+			int oldHeight = node.height;
+			LongTreeNode newTop = rebalance(node);
+			if(newTop != node) {
+				replaceChild(path[i - 1], node, newTop);
+				break;
+			}
+			if(node.height == oldHeight)
+				break;
+		}
+		return null;
+	}
+
+	/** Removes key from the map.
+	 *
+	 * @return The value which was associated with key, or null if there was none.
+	 */
+	public Object remove(long key) {
+		int depth = findPathTo(key);
+		if(depth < 0)
+			return null;
+
+		LongTreeNode nodeToRemove = path[depth - 1];
+		LongTreeNode parent = path[depth - 2];
+		if(nodeToRemove.left == null || nodeToRemove.right == null) {
+			replaceChild(parent, nodeToRemove,
+					nodeToRemove.left != null ? nodeToRemove.left : nodeToRemove.right);
+			--depth;
+		}
+		else {
+			int removedIndex = depth - 1;
+			LongTreeNode successor = nodeToRemove.right;
+			while(successor.left != null) {
+				setPath(depth++, successor);
+				successor = successor.left;
+			}
+			replaceChild(path[depth - 1], successor, successor.right);
+			successor.left = nodeToRemove.left;
+			successor.right = nodeToRemove.right;
+			successor.height = nodeToRemove.height;
+			replaceChild(parent, nodeToRemove, successor);
+			path[removedIndex] = successor;
+		}
+		--size;
+
+		for(int i = depth - 1; i > 0; --i) {
+			LongTreeNode node = path[i];
+			int oldHeight = node.height;
+			LongTreeNode newTop = rebalance(node);
+			if(newTop != node)
+				replaceChild(path[i - 1], node, newTop);
+			if(newTop.height == oldHeight)
+				break;
+		}
+		return nodeToRemove.value;
+	}
+
+	private static int heightOf(LongTreeNode node) {
+		return node == null ? 0 : node.height;
+	}
+
+	private static void updateHeight(LongTreeNode node) {
+		int leftHeight = heightOf(node.left);
+		int rightHeight = heightOf(node.right);
+		node.height = (byte)((leftHeight > rightHeight ? leftHeight : rightHeight) + 1);
+	}
+
+	private static LongTreeNode rotateLeft(LongTreeNode node) {
+		LongTreeNode newTop = node.right;
+		node.right = newTop.left;
+		newTop.left = node;
+		updateHeight(node);
+		updateHeight(newTop);
+		return newTop;
+	}
+
+	private static LongTreeNode rotateRight(LongTreeNode node) {
+		LongTreeNode newTop = node.left;
+		node.left = newTop.right;
+		newTop.right = node;
+		updateHeight(node);
+		updateHeight(newTop);
+		return newTop;
+	}
+
+	private static LongTreeNode rebalance(LongTreeNode node) {
+		int balance = heightOf(node.left) - heightOf(node.right);
+		if(balance > 1) {
+			if(heightOf(node.left.left) < heightOf(node.left.right))
+				node.left = rotateLeft(node.left);
+			return rotateRight(node);
+		}
+		if(balance < -1) {
+			if(heightOf(node.right.right) < heightOf(node.right.left))
+				node.right = rotateRight(node.right);
+			return rotateLeft(node);
+		}
+		updateHeight(node);
+		return node;
+	}
+
+	public boolean equals(Object other) {
+		if(!(other instanceof LongTreeMap))
+			return false;
+
+		LongTreeMap otherMap = (LongTreeMap)other;
+		if(otherMap.size() != size)
+			return false;
+
+		LongMapIterator it = otherMap.iterator();
+		while(it.hasNext()) {
+			LongTreeNode node = findNodeWithKey(it.next());
+			if(node == null)
+				return false;
+			Object value = it.getValue();
+			if(value == null ? node.value != null : !value.equals(node.value))
+				return false;
+		}
+		return true;
+	}
+
+	public int hashCode() {
+		LongMapIterator it = iterator();
+		int result = 0;
+		while(it.hasNext()) {
+			long key = it.next();
+			Object value = it.getValue();
+			result += (int)(key ^ (key >>> 32)) ^ (value == null ? 0 : value.hashCode());
+		}
+		return result;
+	}
+
+	/** Returns an iterator over the map's keys, in ascending order. */
+	public LongMapIterator iterator() {
+		return new LongTreeMapIterator(this);
+	}
+}
+
+class LongTreeNode {
+	public LongTreeNode(long newKey, Object newValue) {
+		key = newKey;
+		value = newValue;
+		height = 1;
+	}
+
+	LongTreeNode left;
+	LongTreeNode right;
+
+	long key;
+	Object value;
+	byte height;
+}
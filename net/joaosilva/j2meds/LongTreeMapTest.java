@@ -0,0 +1,99 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package net.joaosilva.j2meds;
+
+import jmunit.framework.cldc11.TestCase;
+
+public class LongTreeMapTest extends TestCase {
+
+	public LongTreeMapTest() {
+		super(3, "LongTreeMapTest");
+	}
+
+	public void test(int testNumber) {
+		switch(testNumber) {
+		case 0:
+			testPutGetRemove();
+			break;
+		case 1:
+			testOrder();
+			break;
+		case 2:
+			testIteratorRemove();
+			break;
+
+		default:
+			break;
+		}
+	}
+
+	public void testPutGetRemove() {
+		LongTreeMap m = new LongTreeMap();
+		assertTrue(m.isEmpty());
+		assertNull(m.put(5L, "five"));
+		assertNull(m.put(-3L, "minus three"));
+		// differs from 5 only above the low 32 bits
+		assertNull(m.put(5L + (1L << 32), "five and then some"));
+		assertEquals(0, ((String)m.put(5L, "five, eh")).compareTo("five"));
+		assertEquals(3, m.size());
+		assertEquals(0, ((String)m.get(5L)).compareTo("five, eh"));
+		assertEquals(0, ((String)m.get(5L + (1L << 32))).compareTo("five and then some"));
+		assertTrue(m.containsKey(-3L));
+		assertFalse(m.containsKey(3L));
+		assertFalse(m.containsKey(-3L - (1L << 32)));
+		assertNull(m.remove(3L));
+		assertEquals(0, ((String)m.remove(-3L)).compareTo("minus three"));
+		assertEquals(2, m.size());
+		m.clear();
+		assertTrue(m.isEmpty());
+	}
+
+	public void testOrder() {
+		LongTreeMap m = new LongTreeMap();
+		m.put(Long.MAX_VALUE, null);
+		m.put(Long.MIN_VALUE, null);
+		m.put((long)Integer.MAX_VALUE + 1, null);
+		m.put((long)Integer.MIN_VALUE - 1, null);
+		for(int i = 0; i < 1000; ++i)
+			m.put(i * 7919 % 1000, null);
+		LongMapIterator it = m.iterator();
+		assertEquals(Long.MIN_VALUE, it.next());
+		assertEquals((long)Integer.MIN_VALUE - 1, it.next());
+		for(int i = 0; i < 1000; ++i)
+			assertEquals(i, it.next());
+		assertEquals((long)Integer.MAX_VALUE + 1, it.next());
+		assertEquals(Long.MAX_VALUE, it.next());
+		assertFalse(it.hasNext());
+	}
+
+	public void testIteratorRemove() {
+		LongTreeMap m = new LongTreeMap();
+		for(int i = 0; i < 100; ++i)
+			m.put(i * 10000000000L, new Integer(i));
+		LongMapIterator it = m.iterator();
+		while(it.hasNext()) {
+			long key = it.next();
+			assertEquals(key, ((Integer)it.getValue()).intValue() * 10000000000L);
+			if(key % 3 != 0)
+				it.remove();
+		}
+		assertEquals(34, m.size());
+		it = m.iterator();
+		for(int i = 0; i < 100; i += 3)
+			assertEquals(i * 10000000000L, it.next());
+		assertFalse(it.hasNext());
+	}
+}
@@ -29,6 +29,10 @@ public interface Map {
 	MapIterator iterator();
 	
 	class Entry {
+		/** Only for subclasses which fill in the key themselves. */
+		Entry() {
+		}
+
 		public Entry(Object key, Object value) {
 			super();
 			if(key == null)
@@ -0,0 +1,271 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package net.joaosilva.j2meds;
+
+/** A hash table using open addressing with linear probing. Keys and values are
+ *  kept in two parallel arrays, so there are no objects per entry.
+ *
+ *  Keys are considered equal when the map's {@link Comparator} says so. Their hash
+ *  codes come from a {@link Hasher}, or from Object.hashCode if none is given,
+ *  which is consistent with all the comparators in {@link Comparators}, except
+ *  that {@link Comparators#DOUBLE} and {@link Comparators#FLOAT} consider 0.0 and
+ *  -0.0 equal while their hash codes differ.
+ *
+ *  Iteration order is unspecified. Null keys are not allowed.
+ */
+public class OpenHashMap implements Map {
+	/** Marks slots whose entry was removed, so that probing goes past them. */
+	private static final Object DELETED = new Object();
+	private static final int DEFAULT_CAPACITY = 16;
+	private static final float DEFAULT_LOAD_FACTOR = 0.5f;
+
+	Object[] keys;
+	Object[] values;
+	private int size;
+	/** The number of slots which aren't null, including the DELETED ones. */
+	private int usedSlots;
+	private int threshold;
+	private float loadFactor;
+	private Comparator comparator;
+	private Hasher hasher;
+
+	/** Creates a new OpenHashMap using the keys' own hash codes.
+	 * @param keyComparator A Comparator to tell whether keys are equal. Usually,
+	 *  this will be one of the ones provided in {@link Comparators}.
+	 */
+	public OpenHashMap(Comparator keyComparator) {
+		this(keyComparator, null, DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR);
+	}
+
+	/** Creates a new OpenHashMap.
+	 * @param keyComparator A Comparator to tell whether keys are equal.
+	 * @param keyHasher Computes the keys' hash codes. If null, the keys' own
+	 *  hashCode method is used.
+	 * @param initialCapacity The number of entries the map can hold before growing.
+	 * @param loadFactor The fraction of the table which can be used before it grows.
+	 *  Must be greater than 0 and less than 1.
+	 */
+	public OpenHashMap(Comparator keyComparator, Hasher keyHasher,
+			int initialCapacity, float loadFactor) {
+		if(initialCapacity < 0)
+			throw new IllegalArgumentException("initialCapacity can't be negative");
+		if(!(loadFactor > 0 && loadFactor < 1))
+			throw new IllegalArgumentException("loadFactor must be between 0 and 1");
+		this.comparator = keyComparator;
+		this.hasher = keyHasher;
+		this.loadFactor = loadFactor;
+
+		int capacity = 2;
+		while((int)(capacity * loadFactor) < initialCapacity || (int)(capacity * loadFactor) < 1)
+			capacity *= 2;
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		keys = new Object[capacity];
+		values = new Object[capacity];
+		threshold = (int)(capacity * loadFactor);
+		usedSlots = 0;
+	}
+
+	private int hash(Object key) {
+		int h = hasher == null ? key.hashCode() : hasher.hash(key);
+		// spreads the high bits, since only the low ones select a slot
+		return h ^ (h >>> 16);
+	}
+
+	/** Returns the slot holding key, or -1 if the key isn't in the map. */
+	private int findSlot(Object key) {
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		Object curKey;
+		while((curKey = keys[slot]) != null) {
+			if(curKey != DELETED && comparator.compare(key, curKey) == 0)
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	public void clear() {
+		for(int i = 0; i < keys.length; ++i)
+			keys[i] = values[i] = null;
+		size = usedSlots = 0;
+	}
+
+	public boolean containsKey(Object key) {
+		return findSlot(key) >= 0;
+	}
+
+	public boolean containsValue(Object value, Comparator valueComparator) {
+		for(int i = 0; i < keys.length; ++i) {
+			if(keys[i] != null && keys[i] != DELETED &&
+					valueComparator.compare(value, values[i]) == 0)
+				return true;
+		}
+		return false;
+	}
+
+	public Object get(Object key) {
+		int slot = findSlot(key);
+		if(slot < 0)
+			return null;
+		return values[slot];
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public Object put(Object key, Object value) {
+		if(key == null)
+			throw new InvalidKeyException("Can't insert null keys");
+
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		int firstDeleted = -1;
+		Object curKey;
+		while((curKey = keys[slot]) != null) {
+			if(curKey == DELETED) {
+				if(firstDeleted < 0)
+					firstDeleted = slot;
+			}
+			else if(comparator.compare(key, curKey) == 0) {
+				Object oldValue = values[slot];
+				values[slot] = value;
+				return oldValue;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		if(firstDeleted >= 0)
+			slot = firstDeleted;
+		else
+			++usedSlots;
+		keys[slot] = key;
+		values[slot] = value;
+		++size;
+
+		if(usedSlots > threshold)
+			rehash();
+		return null;
+	}
+
+	/** Moves every entry to a new table, dropping the DELETED markers. The table
+	 *  only doubles if the entries alone would be over the threshold.
+	 */
+	private void rehash() {
+		Object[] oldKeys = keys;
+		Object[] oldValues = values;
+		int capacity = oldKeys.length;
+		if(size >= threshold / 2)
+			capacity *= 2;
+		allocate(capacity);
+
+		int mask = capacity - 1;
+		for(int i = 0; i < oldKeys.length; ++i) {
+			Object key = oldKeys[i];
+			if(key == null || key == DELETED)
+				continue;
+			int slot = hash(key) & mask;
+			while(keys[slot] != null)
+				slot = (slot + 1) & mask;
+			keys[slot] = key;
+			values[slot] = oldValues[i];
+		}
+		usedSlots = size;
+	}
+
+	public void putAll(Map other) {
+		if(comparator != other.getKeyComparator())
+			throw new InvalidOperationException(
+					"putAll can't work on maps with different comparators");
+		MapIterator it = other.iterator();
+		while(it.hasNext()) {
+			Map.Entry entry = it.next();
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	public boolean equals(Object other) {
+		if(!(other instanceof Map))
+			return false;
+
+		Map otherMap = (Map)other;
+		if(otherMap.size() != size)
+			return false;
+
+		MapIterator it = otherMap.iterator();
+		while(it.hasNext()) {
+			Map.Entry cur = it.next();
+			int slot = findSlot(cur.getKey());
+			if(slot < 0)
+				return false;
+			Object value = cur.getValue();
+			if(value == null ? values[slot] != null : !value.equals(values[slot]))
+				return false;
+		}
+		return true;
+	}
+
+	public int hashCode() {
+		int result = 0;
+		for(int i = 0; i < keys.length; ++i) {
+			Object key = keys[i];
+			if(key != null && key != DELETED)
+				result += key.hashCode() ^ (values[i] == null ? 0 : values[i].hashCode());
+		}
+		return result;
+	}
+
+	/** Removes the entry in a slot, leaving a DELETED marker in its place. */
+	Object removeSlot(int slot) {
+		Object oldValue = values[slot];
+		keys[slot] = DELETED;
+		values[slot] = null;
+		--size;
+		return oldValue;
+	}
+
+	public Object remove(Object key) {
+		int slot = findSlot(key);
+		if(slot < 0)
+			return null;
+		return removeSlot(slot);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public Comparator getKeyComparator() {
+		return comparator;
+	}
+
+	/** Returns the index of the first slot at or after start which holds an entry,
+	 *  or the table's length if there are none.
+	 */
+	int nextUsedSlot(int start) {
+		int slot = start;
+		while(slot < keys.length && (keys[slot] == null || keys[slot] == DELETED))
+			++slot;
+		return slot;
+	}
+
+	public MapIterator iterator() {
+		return new OpenHashMapIterator(this);
+	}
+}
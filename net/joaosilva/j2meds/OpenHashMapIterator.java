@@ -0,0 +1,56 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+import net.joaosilva.j2meds.Map.Entry;
+
+class OpenHashMapIterator implements MapIterator {
+	private OpenHashMap source;
+	/** The table the iterator was created on. If the map rehashes, its table changes. */
+	private Object[] keys;
+	private int nextSlot;
+	private int curSlot;
+
+	public OpenHashMapIterator(OpenHashMap source) {
+		this.source = source;
+		keys = source.keys;
+		nextSlot = source.nextUsedSlot(0);
+		curSlot = -1;
+	}
+
+	public boolean hasNext() {
+		return nextSlot < keys.length;
+	}
+
+	public Entry next() {
+		if(keys != source.keys)
+			throw new InvalidOperationException("The map was rehashed during iteration");
+		if(nextSlot >= keys.length)
+			throw new java.util.NoSuchElementException();
+		curSlot = nextSlot;
+		nextSlot = source.nextUsedSlot(curSlot + 1);
+		return new Entry(keys[curSlot], source.values[curSlot]);
+	}
+
+	public void remove() {
+		if(curSlot < 0)
+			throw new InvalidOperationException(
+					"remove can only be called once after each call to next");
+		if(keys != source.keys)
+			throw new InvalidOperationException("The map was rehashed during iteration");
+		source.removeSlot(curSlot);
+		curSlot = -1;
+	}
+}
@@ -0,0 +1,90 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package net.joaosilva.j2meds;
+
+import jmunit.framework.cldc11.TestCase;
+
+public class OpenHashMapTest extends TestCase {
+
+	public OpenHashMapTest() {
+		super(3, "OpenHashMapTest");
+	}
+
+	public void test(int testNumber) {
+		switch(testNumber) {
+		case 0:
+			testPutGetRemove();
+			break;
+		case 1:
+			testManyEntries();
+			break;
+		case 2:
+			testEqualsTree();
+			break;
+
+		default:
+			break;
+		}
+	}
+
+	public void testPutGetRemove() {
+		OpenHashMap m = new OpenHashMap(Comparators.STRING);
+		assertTrue(m.isEmpty());
+		assertNull(m.put("test", new Integer(0)));
+		assertEquals(0, ((Integer)m.put("test", new Integer(1))).intValue());
+		assertEquals(1, m.size());
+		assertEquals(1, ((Integer)m.get("test")).intValue());
+		assertNull(m.remove("some key that isn't there"));
+		assertEquals(1, ((Integer)m.remove("test")).intValue());
+		assertTrue(m.isEmpty());
+		assertFalse(m.containsKey("test"));
+	}
+
+	public void testManyEntries() {
+		OpenHashMap m = new OpenHashMap(Comparators.INTEGER, null, 4, 0.75f);
+		for(int i = 0; i < 1000; ++i)
+			m.put(new Integer(i), new Integer(-i));
+		for(int i = 0; i < 1000; i += 2)
+			m.remove(new Integer(i));
+		assertEquals(500, m.size());
+		for(int i = 0; i < 1000; ++i)
+			assertEquals(i % 2 != 0, m.containsKey(new Integer(i)));
+
+		int count = 0;
+		MapIterator it = m.iterator();
+		while(it.hasNext()) {
+			Map.Entry e = it.next();
+			assertEquals(-((Integer)e.getKey()).intValue(), ((Integer)e.getValue()).intValue());
+			it.remove();
+			++count;
+		}
+		assertEquals(500, count);
+		assertTrue(m.isEmpty());
+	}
+
+	public void testEqualsTree() {
+		OpenHashMap m = new OpenHashMap(Comparators.INTEGER);
+		BinaryTree b = new BinaryTree(Comparators.INTEGER);
+		for(int i = 0; i < 50; ++i) {
+			m.put(new Integer(i), "value");
+			b.put(new Integer(i), "value");
+		}
+		assertTrue(m.equals(b));
+		assertEquals(b.hashCode(), m.hashCode());
+		m.put(new Integer(3), "another value");
+		assertFalse(m.equals(b));
+	}
+}
@@ -0,0 +1,319 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+/** A balanced (AVL) binary tree whose nodes never change once created.
+ *
+ *  Changing the tree copies the nodes on the path from the root to the changed
+ *  one, O(log n) of them, and shares all the other nodes with the previous
+ *  version. So every version of the tree stays valid, and {@link #snapshot()}
+ *  can take one in O(1), without copying anything.
+ *
+ *  A PersistentTree object points at the current version of the tree: put and
+ *  remove move it to a new version, while {@link #with} and {@link #without}
+ *  return the new version as a separate PersistentTree, leaving this one as it
+ *  is. Like any other map, one PersistentTree can't be changed from several
+ *  threads at once, but its snapshots can be read from any number of threads
+ *  without locking, while it keeps being changed.
+ *
+ *  Like {@link BinaryTree}, null keys are not allowed.
+ */
+public class PersistentTree implements Map {
+	/** Stored as the old value when a key isn't found, since null is a valid value. */
+	private static final Object NOT_FOUND = new Object();
+	private PersistentTreeNode root;
+	private int size;
+	private Comparator comparator;
+
+	/** Creates a new, empty PersistentTree, using the specified {@link Comparator}.
+	 * @param keyComparator A Comparator to compare keys. Usually, this will be one
+	 *  of the ones provided in {@link Comparators}.
+	 */
+	public PersistentTree(Comparator keyComparator) {
+		this(keyComparator, null, 0);
+	}
+
+	private PersistentTree(Comparator keyComparator, PersistentTreeNode root, int size) {
+		this.comparator = keyComparator;
+		this.root = root;
+		this.size = size;
+	}
+
+	/** Returns the tree's current version, which later changes to this tree won't
+	 *  affect. This takes constant time.
+	 */
+	public PersistentTree snapshot() {
+		return new PersistentTree(comparator, root, size);
+	}
+
+	/** Returns a new version of this tree, with key mapped to value. This tree
+	 *  isn't changed.
+	 */
+	public PersistentTree with(Object key, Object value) {
+		if(key == null)
+			throw new InvalidKeyException("Can't insert null keys");
+		Object[] oldValue = new Object[1];
+		PersistentTreeNode newRoot = insert(root, key, value, oldValue);
+		if(newRoot == root)
+			return this;
+		return new PersistentTree(comparator, newRoot,
+				oldValue[0] == NOT_FOUND ? size + 1 : size);
+	}
+
+	/** Returns a new version of this tree, without key. This tree isn't changed. */
+	public PersistentTree without(Object key) {
+		Object[] oldValue = new Object[1];
+		PersistentTreeNode newRoot = delete(root, key, oldValue);
+		if(oldValue[0] == NOT_FOUND)
+			return this;
+		return new PersistentTree(comparator, newRoot, size - 1);
+	}
+
+	PersistentTreeNode getRoot() {
+		return root;
+	}
+
+	/** Returns a copy of the subtree starting at node, with key mapped to value.
+	 *
+	 * @param oldValue Where to store key's previous value, or NOT_FOUND.
+	 * @return The new subtree, or node itself if nothing changed.
+	 */
+	private PersistentTreeNode insert(PersistentTreeNode node, Object key, Object value,
+			Object[] oldValue) {
+		if(node == null) {
+			oldValue[0] = NOT_FOUND;
+			return new PersistentTreeNode(key, value, null, null);
+		}
+
+		int compareValue = comparator.compare(key, node.key);
+		if(compareValue == 0) {
+			oldValue[0] = node.value;
+			if(node.value == value)
+				return node;
+			return new PersistentTreeNode(node.key, value, node.left, node.right);
+		}
+
+		if(compareValue < 0) {
+			PersistentTreeNode newLeft = insert(node.left, key, value, oldValue);
+			return newLeft == node.left ? node : balance(node, newLeft, node.right);
+		}
+		PersistentTreeNode newRight = insert(node.right, key, value, oldValue);
+		return newRight == node.right ? node : balance(node, node.left, newRight);
+	}
+
+	/** Returns a copy of the subtree starting at node, without key.
+	 *
+	 * @param oldValue Where to store key's value, or NOT_FOUND.
+	 * @return The new subtree, or node itself if key isn't in it.
+	 */
+	private PersistentTreeNode delete(PersistentTreeNode node, Object key, Object[] oldValue) {
+		if(node == null) {
+			oldValue[0] = NOT_FOUND;
+			return null;
+		}
+
+		int compareValue = comparator.compare(key, node.key);
+		if(compareValue < 0) {
+			PersistentTreeNode newLeft = delete(node.left, key, oldValue);
+			return newLeft == node.left ? node : balance(node, newLeft, node.right);
+		}
+		if(compareValue > 0) {
+			PersistentTreeNode newRight = delete(node.right, key, oldValue);
+			return newRight == node.right ? node : balance(node, node.left, newRight);
+		}
+
+		oldValue[0] = node.value;
+		if(node.left == null)
+			return node.right;
+		if(node.right == null)
+			return node.left;
+		// the successor takes the removed node's place
+		PersistentTreeNode successor = node.right;
+		while(successor.left != null)
+			successor = successor.left;
+		return balance(successor, node.left, deleteFirst(node.right));
+	}
+
+	/** Returns a copy of the subtree starting at node, without its first node. */
+	private static PersistentTreeNode deleteFirst(PersistentTreeNode node) {
+		if(node.left == null)
+			return node.right;
+		return balance(node, deleteFirst(node.left), node.right);
+	}
+
+	private static int heightOf(PersistentTreeNode node) {
+		return node == null ? 0 : node.height;
+	}
+
+	/** Creates a node with top's key and value and the given children, rotating
+	 *  them as needed to keep the subtree balanced. The children's heights must
+	 *  differ by 2 at the most.
+	 */
+	private static PersistentTreeNode balance(PersistentTreeNode top,
+			PersistentTreeNode left, PersistentTreeNode right) {
+		int leftHeight = heightOf(left);
+		int rightHeight = heightOf(right);
+		if(leftHeight > rightHeight + 1) {
+			if(heightOf(left.left) >= heightOf(left.right))
+				return new PersistentTreeNode(left.key, left.value, left.left,
+						new PersistentTreeNode(top.key, top.value, left.right, right));
+			PersistentTreeNode middle = left.right;
+			return new PersistentTreeNode(middle.key, middle.value,
+					new PersistentTreeNode(left.key, left.value, left.left, middle.left),
+					new PersistentTreeNode(top.key, top.value, middle.right, right));
+		}
+		if(rightHeight > leftHeight + 1) {
+			if(heightOf(right.right) >= heightOf(right.left))
+				return new PersistentTreeNode(right.key, right.value,
+						new PersistentTreeNode(top.key, top.value, left, right.left), right.right);
+			PersistentTreeNode middle = right.left;
+			return new PersistentTreeNode(middle.key, middle.value,
+					new PersistentTreeNode(top.key, top.value, left, middle.left),
+					new PersistentTreeNode(right.key, right.value, middle.right, right.right));
+		}
+		return new PersistentTreeNode(top.key, top.value, left, right);
+	}
+
+	private PersistentTreeNode findNodeWithKey(Object key) {
+		PersistentTreeNode curNode = root;
+		while(curNode != null) {
+			int compareValue = comparator.compare(key, curNode.key);
+			if(compareValue == 0)
+				return curNode;
+
+			if(compareValue < 0)
+				curNode = curNode.left;
+			else
+				curNode = curNode.right;
+		}
+		return null;
+	}
+
+	public void clear() {
+		root = null;
+		size = 0;
+	}
+
+	public boolean containsKey(Object key) {
+		return findNodeWithKey(key) != null;
+	}
+
+	public Object get(Object key) {
+		PersistentTreeNode node = findNodeWithKey(key);
+		return node == null ? null : node.value;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public Object put(Object key, Object value) {
+		if(key == null)
+			throw new InvalidKeyException("Can't insert null keys");
+		Object[] oldValue = new Object[1];
+		root = insert(root, key, value, oldValue);
+		if(oldValue[0] == NOT_FOUND) {
+			++size;
+			return null;
+		}
+		return oldValue[0];
+	}
+
+	public void putAll(Map other) {
+		if(comparator != other.getKeyComparator())
+			throw new InvalidOperationException(
+					"putAll can't work on maps with different comparators");
+		MapIterator it = other.iterator();
+		while(it.hasNext()) {
+			Map.Entry entry = it.next();
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	public boolean equals(Object other) {
+		if(!(other instanceof Map))
+			return false;
+
+		Map otherMap = (Map)other;
+		if(otherMap.size() != size)
+			return false;
+
+		MapIterator it = otherMap.iterator();
+		while(it.hasNext()) {
+			Map.Entry cur = it.next();
+			PersistentTreeNode node = findNodeWithKey(cur.getKey());
+			if(node == null)
+				return false;
+			Object value = cur.getValue();
+			if(value == null ? node.value != null : !value.equals(node.value))
+				return false;
+		}
+		return true;
+	}
+
+	public int hashCode() {
+		MapIterator it = iterator();
+		int result = 0;
+		while(it.hasNext())
+			result += it.next().hashCode();
+		return result;
+	}
+
+	public Object remove(Object key) {
+		Object[] oldValue = new Object[1];
+		root = delete(root, key, oldValue);
+		if(oldValue[0] == NOT_FOUND)
+			return null;
+		--size;
+		return oldValue[0];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public Comparator getKeyComparator() {
+		return comparator;
+	}
+
+	/** Returns an iterator over the tree's current version. Changes made to the
+	 *  tree while iterating, including through the iterator's remove, don't
+	 *  affect which entries it returns.
+	 */
+	public MapIterator iterator() {
+		return new PersistentTreeIterator(this);
+	}
+}
+
+/** A node of a {@link PersistentTree}. Its fields are final, so that once a node
+ *  is reachable from another thread, that thread sees it fully built.
+ */
+class PersistentTreeNode {
+	PersistentTreeNode(Object key, Object value, PersistentTreeNode left,
+			PersistentTreeNode right) {
+		this.key = key;
+		this.value = value;
+		this.left = left;
+		this.right = right;
+		int leftHeight = left == null ? 0 : left.height;
+		int rightHeight = right == null ? 0 : right.height;
+		this.height = (byte)((leftHeight > rightHeight ? leftHeight : rightHeight) + 1);
+	}
+
+	final Object key;
+	final Object value;
+	final PersistentTreeNode left, right;
+	final byte height;
+}
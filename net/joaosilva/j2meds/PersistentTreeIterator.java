@@ -0,0 +1,72 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+import java.util.NoSuchElementException;
+
+import net.joaosilva.j2meds.Map.Entry;
+
+/** Goes through one version of a {@link PersistentTree}, which never changes. */
+class PersistentTreeIterator implements MapIterator {
+	/** The nodes still to be returned, along with their right subtrees, with
+	 *  the next one on top.
+	 */
+	private PersistentTreeNode[] nodesToProcess;
+	private int stackSize;
+	private PersistentTree source;
+	private Object curKey;
+
+	public PersistentTreeIterator(PersistentTree source) {
+		this.source = source;
+		PersistentTreeNode root = source.getRoot();
+		nodesToProcess = new PersistentTreeNode[root == null ? 1 : root.height];
+		pushLeftNodes(root);
+	}
+
+	/** Pushes node and all nodes to its left. Since the tree is balanced, the
+	 *  stack never gets deeper than the root's height.
+	 */
+	private void pushLeftNodes(PersistentTreeNode node) {
+		while(node != null) {
+			nodesToProcess[stackSize++] = node;
+			node = node.left;
+		}
+	}
+
+	public boolean hasNext() {
+		return stackSize > 0;
+	}
+
+	public Entry next() {
+		if(stackSize == 0)
+			throw new NoSuchElementException();
+		PersistentTreeNode node = nodesToProcess[--stackSize];
+		nodesToProcess[stackSize] = null;
+		pushLeftNodes(node.right);
+		curKey = node.key;
+		return new Entry(node.key, node.value);
+	}
+
+	/** Removes the last entry returned from the tree. The iterator keeps going
+	 *  through the version it started on, so nothing has to be looked up again.
+	 */
+	public void remove() {
+		if(curKey == null)
+			throw new InvalidOperationException(
+					"remove can only be called once after each call to next");
+		source.remove(curKey);
+		curKey = null;
+	}
+}
@@ -0,0 +1,102 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package net.joaosilva.j2meds;
+
+import jmunit.framework.cldc11.TestCase;
+
+public class PersistentTreeTest extends TestCase {
+
+	public PersistentTreeTest() {
+		super(3, "PersistentTreeTest");
+	}
+
+	public void test(int testNumber) {
+		switch(testNumber) {
+		case 0:
+			testPutGetRemove();
+			break;
+		case 1:
+			testSnapshots();
+			break;
+		case 2:
+			testEquals();
+			break;
+
+		default:
+			break;
+		}
+	}
+
+	public void testPutGetRemove() {
+		PersistentTree t = new PersistentTree(Comparators.STRING);
+		assertTrue(t.isEmpty());
+		assertNull(t.put("test", new Integer(0)));
+		assertEquals(0, ((Integer)t.put("test", new Integer(1))).intValue());
+		assertEquals(1, t.size());
+		assertEquals(1, ((Integer)t.get("test")).intValue());
+		assertNull(t.remove("some key that isn't there"));
+		assertEquals(1, ((Integer)t.remove("test")).intValue());
+		assertTrue(t.isEmpty());
+		assertFalse(t.containsKey("test"));
+	}
+
+	public void testSnapshots() {
+		PersistentTree t = new PersistentTree(Comparators.INTEGER);
+		for(int i = 0; i < 100; ++i)
+			t.put(new Integer(i), null);
+		PersistentTree snapshot = t.snapshot();
+		for(int i = 0; i < 100; i += 2)
+			t.remove(new Integer(i));
+		assertEquals(50, t.size());
+		assertEquals(100, snapshot.size());
+		assertTrue(snapshot.containsKey(new Integer(0)));
+
+		PersistentTree withKey = snapshot.with(new Integer(100), null);
+		assertEquals(101, withKey.size());
+		assertFalse(snapshot.containsKey(new Integer(100)));
+		PersistentTree withoutKey = snapshot.without(new Integer(0));
+		assertEquals(99, withoutKey.size());
+		assertTrue(snapshot.containsKey(new Integer(0)));
+
+		// removing through an iterator doesn't disturb it
+		int count = 0;
+		MapIterator it = snapshot.iterator();
+		while(it.hasNext()) {
+			it.next();
+			it.remove();
+			++count;
+		}
+		assertEquals(100, count);
+		assertTrue(snapshot.isEmpty());
+		assertEquals(101, withKey.size());
+	}
+	
+	public void testEquals() {
+		PersistentTree t = new PersistentTree(Comparators.INTEGER);
+		BinaryTree b = new BinaryTree(Comparators.INTEGER);
+		for(int i = 0; i < 50; ++i) {
+			t.put(new Integer(i), new Integer(i));
+			b.put(new Integer(i), new Integer(i));
+		}
+		assertTrue(t.equals(b));
+		assertEquals(b.hashCode(), t.hashCode());
+		t.put(new Integer(7), new Integer(8));
+		assertFalse(t.equals(b));
+		t.put(new Integer(7), null);
+		assertFalse(t.equals(b));
+		assertFalse(b.equals(t));
+	}
+}
@@ -0,0 +1,302 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+/** A map from strings, stored as a compressed trie (a radix tree).
+ *
+ *  Each node holds the part of the key which tells it apart from its siblings,
+ *  so a prefix shared by many keys is stored once, and finding a key takes time
+ *  proportional to its length rather than to the number of keys. Keys are
+ *  iterated in the same order {@link Comparators#STRING} sorts them in, which
+ *  makes it easy to go through all the keys starting with a given prefix, with
+ *  {@link #prefixIterator(String)}.
+ *
+ *  Keys must be non-null Strings. The empty string is a valid key.
+ */
+public class RadixTreeMap implements Map {
+	/** Holds the empty key, and is never removed or merged. */
+	private RadixTreeNode root;
+	private int size;
+
+	public RadixTreeMap() {
+		clear();
+	}
+
+	public void clear() {
+		root = new RadixTreeNode("");
+		size = 0;
+	}
+
+	RadixTreeNode getRoot() {
+		return root;
+	}
+
+	/** Returns the length of the common prefix of label and key's characters
+	 *  starting at offset.
+	 */
+	static int commonPrefixLength(String label, String key, int offset) {
+		int length = Math.min(label.length(), key.length() - offset);
+		int i = 0;
+		while(i < length && label.charAt(i) == key.charAt(offset + i))
+			++i;
+		return i;
+	}
+
+	/** Returns the node holding key, or null if there's none, whether or not it
+	 *  has a value.
+	 */
+	private RadixTreeNode findNode(String key) {
+		RadixTreeNode node = root;
+		int offset = 0;
+		while(offset < key.length()) {
+			int index = node.findChild(key.charAt(offset));
+			if(index < 0)
+				return null;
+			node = node.children[index];
+			if(!key.startsWith(node.label, offset))
+				return null;
+			offset += node.label.length();
+		}
+		return node;
+	}
+
+	public boolean containsKey(Object key) {
+		RadixTreeNode node = findNode((String)key);
+		return node != null && node.hasValue;
+	}
+
+	public Object get(Object key) {
+		RadixTreeNode node = findNode((String)key);
+		return node == null ? null : node.value;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public Object put(Object key, Object value) {
+		if(key == null)
+			throw new InvalidKeyException("Can't insert null keys");
+
+		String stringKey = (String)key;
+		RadixTreeNode node = root;
+		int offset = 0;
+		while(offset < stringKey.length()) {
+			int index = node.findChild(stringKey.charAt(offset));
+			if(index < 0) {
+				RadixTreeNode leaf = new RadixTreeNode(stringKey.substring(offset));
+				node.insertChild(-(index + 1), leaf);
+				node = leaf;
+				break;
+			}
+
+			RadixTreeNode child = node.children[index];
+			int common = commonPrefixLength(child.label, stringKey, offset);
+			if(common < child.label.length()) {
+				// the key leaves the child's label half way, so the label is split
+				RadixTreeNode middle = new RadixTreeNode(child.label.substring(0, common));
+				child.label = child.label.substring(common);
+				middle.insertChild(0, child);
+				node.children[index] = middle;
+				child = middle;
+			}
+			node = child;
+			offset += common;
+		}
+
+		Object oldValue = node.value;
+		node.value = value;
+		if(!node.hasValue) {
+			node.hasValue = true;
+			++size;
+		}
+		return oldValue;
+	}
+
+	public void putAll(Map other) {
+		if(other.getKeyComparator() != Comparators.STRING)
+			throw new InvalidOperationException(
+					"putAll can't work on maps with different comparators");
+		MapIterator it = other.iterator();
+		while(it.hasNext()) {
+			Map.Entry entry = it.next();
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	public boolean equals(Object other) {
+		if(!(other instanceof Map))
+			return false;
+
+		Map otherMap = (Map)other;
+		if(otherMap.size() != size)
+			return false;
+
+		MapIterator it = otherMap.iterator();
+		while(it.hasNext()) {
+			Map.Entry cur = it.next();
+			RadixTreeNode node = findNode((String)cur.getKey());
+			if(node == null || !node.hasValue)
+				return false;
+			Object value = cur.getValue();
+			if(value == null ? node.value != null : !value.equals(node.value))
+				return false;
+		}
+		return true;
+	}
+
+	public int hashCode() {
+		MapIterator it = iterator();
+		int result = 0;
+		while(it.hasNext())
+			result += it.next().hashCode();
+		return result;
+	}
+
+	public Object remove(Object key) {
+		String stringKey = (String)key;
+		RadixTreeNode parent = null;
+		RadixTreeNode node = root;
+		int index = -1;
+		int offset = 0;
+		while(offset < stringKey.length()) {
+			index = node.findChild(stringKey.charAt(offset));
+			if(index < 0)
+				return null;
+			parent = node;
+			node = node.children[index];
+			if(!stringKey.startsWith(node.label, offset))
+				return null;
+			offset += node.label.length();
+		}
+		if(!node.hasValue)
+			return null;
+
+		Object oldValue = node.value;
+		node.value = null;
+		node.hasValue = false;
+		--size;
+
+		// nodes without a value must have at least two children, other than the root
+		if(node != root) {
+			if(node.childCount == 0) {
+				parent.removeChild(index);
+				if(parent != root && !parent.hasValue && parent.childCount == 1)
+					parent.mergeWithChild();
+			}
+			else if(node.childCount == 1)
+				node.mergeWithChild();
+		}
+		return oldValue;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/** Returns {@link Comparators#STRING}, whose order the keys are kept in. */
+	public Comparator getKeyComparator() {
+		return Comparators.STRING;
+	}
+
+	public MapIterator iterator() {
+		return new RadixTreeMapIterator(this, "");
+	}
+
+	/** Returns an iterator over the entries whose keys start with prefix, in
+	 *  ascending order.
+	 */
+	public MapIterator prefixIterator(String prefix) {
+		return new RadixTreeMapIterator(this, prefix);
+	}
+}
+
+/** A node of a {@link RadixTreeMap}. Its children are sorted by the first
+ *  character of their labels, which is different for each of them.
+ */
+class RadixTreeNode {
+	RadixTreeNode(String label) {
+		this.label = label;
+	}
+
+	/** The part of the key between this node's parent and itself. */
+	String label;
+	Object value;
+	/** Whether a key ends at this node, since values may be null. */
+	boolean hasValue;
+	RadixTreeNode[] children;
+	/** The first character of each child's label, to search them without loading them. */
+	char[] firstChars;
+	int childCount;
+
+	/** Looks for the child whose label starts with c, with a binary search.
+	 *
+	 * @return The child's index, if found. Otherwise, -(i + 1), where i is the
+	 *         index at which such a child would be inserted.
+	 */
+	int findChild(char c) {
+		int low = 0;
+		int high = childCount - 1;
+		while(low <= high) {
+			int middle = (low + high) >>> 1;
+			char middleChar = firstChars[middle];
+			if(middleChar == c)
+				return middle;
+			if(c < middleChar)
+				high = middle - 1;
+			else
+				low = middle + 1;
+		}
+		return -(low + 1);
+	}
+
+	void insertChild(int index, RadixTreeNode child) {
+		if(children == null) {
+			children = new RadixTreeNode[2];
+			firstChars = new char[2];
+		}
+		else if(childCount == children.length) {
+			RadixTreeNode[] newChildren = new RadixTreeNode[childCount * 2];
+			System.arraycopy(children, 0, newChildren, 0, childCount);
+			children = newChildren;
+			char[] newFirstChars = new char[childCount * 2];
+			System.arraycopy(firstChars, 0, newFirstChars, 0, childCount);
+			firstChars = newFirstChars;
+		}
+		System.arraycopy(children, index, children, index + 1, childCount - index);
+		System.arraycopy(firstChars, index, firstChars, index + 1, childCount - index);
+		children[index] = child;
+		firstChars[index] = child.label.charAt(0);
+		++childCount;
+	}
+
+	void removeChild(int index) {
+		--childCount;
+		System.arraycopy(children, index + 1, children, index, childCount - index);
+		System.arraycopy(firstChars, index + 1, firstChars, index, childCount - index);
+		children[childCount] = null;
+	}
+
+	/** Takes the place of its only child, which is dropped. */
+	void mergeWithChild() {
+		RadixTreeNode child = children[0];
+		label = label + child.label;
+		value = child.value;
+		hasValue = child.hasValue;
+		children = child.children;
+		firstChars = child.firstChars;
+		childCount = child.childCount;
+	}
+}
@@ -0,0 +1,171 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+import java.util.NoSuchElementException;
+
+import net.joaosilva.j2meds.Map.Entry;
+
+/** Goes through a {@link RadixTreeMap}'s keys in ascending order, depth first,
+ *  rebuilding each key as it goes down.
+ *
+ *  It always finds the next entry ahead of time, so that it knows when the
+ *  keys stop starting with the prefix.
+ */
+class RadixTreeMapIterator implements MapIterator {
+	private RadixTreeMap source;
+	private String prefix;
+	/** The nodes from the root down to the current one. */
+	private RadixTreeNode[] nodes;
+	/** For each node in the stack, the next child to go to, or -1 if the node
+	 *  itself wasn't visited yet.
+	 */
+	private int[] nextChildren;
+	/** For each node in the stack, the length of the key up to its parent. */
+	private int[] keyLengths;
+	private int stackSize;
+	private StringBuffer keyBuffer;
+	private String nextKey;
+	private Object nextValue;
+	private String curKey;
+
+	/** Creates a new iterator over the keys starting with prefix, which may be
+	 *  empty to go through the whole map.
+	 */
+	public RadixTreeMapIterator(RadixTreeMap source, String prefix) {
+		this.source = source;
+		this.prefix = prefix;
+		nodes = new RadixTreeNode[8];
+		nextChildren = new int[8];
+		keyLengths = new int[8];
+		keyBuffer = new StringBuffer();
+		seek(prefix);
+		findNext();
+	}
+
+	private void push(RadixTreeNode node) {
+		if(stackSize == nodes.length) {
+			RadixTreeNode[] newNodes = new RadixTreeNode[stackSize * 2];
+			System.arraycopy(nodes, 0, newNodes, 0, stackSize);
+			nodes = newNodes;
+			int[] newNextChildren = new int[stackSize * 2];
+			System.arraycopy(nextChildren, 0, newNextChildren, 0, stackSize);
+			nextChildren = newNextChildren;
+			int[] newKeyLengths = new int[stackSize * 2];
+			System.arraycopy(keyLengths, 0, newKeyLengths, 0, stackSize);
+			keyLengths = newKeyLengths;
+		}
+		keyLengths[stackSize] = keyBuffer.length();
+		keyBuffer.append(node.label);
+		nodes[stackSize] = node;
+		nextChildren[stackSize++] = -1;
+	}
+
+	/** Rebuilds the stack so that the next entry found is the first one whose
+	 *  key is greater than or equal to key.
+	 */
+	private void seek(String key) {
+		while(stackSize > 0)
+			nodes[--stackSize] = null;
+		keyBuffer.setLength(0);
+		push(source.getRoot());
+		int offset = 0;
+		while(offset < key.length()) {
+			int top = stackSize - 1;
+			RadixTreeNode node = nodes[top];
+			// the node's own key is a proper prefix of key, so it's less than key
+			int index = node.findChild(key.charAt(offset));
+			if(index < 0) {
+				nextChildren[top] = -(index + 1);
+				return;
+			}
+
+			RadixTreeNode child = node.children[index];
+			int common = RadixTreeMap.commonPrefixLength(child.label, key, offset);
+			if(common == child.label.length()) {
+				nextChildren[top] = index + 1;
+				push(child);
+				offset += common;
+			}
+			else {
+				// the child's keys are either all greater than key, or all less
+				boolean greater = offset + common == key.length() ||
+						child.label.charAt(common) > key.charAt(offset + common);
+				nextChildren[top] = greater ? index : index + 1;
+				return;
+			}
+		}
+	}
+
+	/** Goes on with the depth first walk until the next node with a value, and
+	 *  makes it the next entry if its key starts with the prefix.
+	 */
+	private void findNext() {
+		nextKey = null;
+		nextValue = null;
+		while(stackSize > 0) {
+			int top = stackSize - 1;
+			RadixTreeNode node = nodes[top];
+			int nextChild = nextChildren[top];
+			if(nextChild < 0) {
+				nextChildren[top] = 0;
+				if(node.hasValue) {
+					String key = keyBuffer.toString();
+					if(key.startsWith(prefix)) {
+						nextKey = key;
+						nextValue = node.value;
+					}
+					// the keys are in order, so there are none with the prefix past it
+					return;
+				}
+			}
+			else if(nextChild < node.childCount) {
+				nextChildren[top] = nextChild + 1;
+				push(node.children[nextChild]);
+			}
+			else {
+				keyBuffer.setLength(keyLengths[top]);
+				nodes[--stackSize] = null;
+			}
+		}
+	}
+
+	public boolean hasNext() {
+		return nextKey != null;
+	}
+
+	public Entry next() {
+		if(nextKey == null)
+			throw new NoSuchElementException();
+		Entry result = new Entry(nextKey, nextValue);
+		curKey = nextKey;
+		findNext();
+		return result;
+	}
+
+	public void remove() {
+		if(curKey == null)
+			throw new InvalidOperationException(
+					"remove can only be called once after each call to next");
+		source.remove(curKey);
+		curKey = null;
+
+		// removing may have merged nodes, so find the next key again
+		if(nextKey != null) {
+			seek(nextKey);
+			findNext();
+		}
+	}
+}
@@ -0,0 +1,83 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package net.joaosilva.j2meds;
+
+import jmunit.framework.cldc11.TestCase;
+
+public class RadixTreeMapTest extends TestCase {
+
+	public RadixTreeMapTest() {
+		super(2, "RadixTreeMapTest");
+	}
+
+	public void test(int testNumber) {
+		switch(testNumber) {
+		case 0:
+			testPutGetRemove();
+			break;
+		case 1:
+			testPrefixIterator();
+			break;
+
+		default:
+			break;
+		}
+	}
+
+	public void testPutGetRemove() {
+		RadixTreeMap m = new RadixTreeMap();
+		assertTrue(m.isEmpty());
+		assertNull(m.put("metrics.cpu.user", new Integer(1)));
+		assertNull(m.put("metrics.cpu.system", new Integer(2)));
+		assertNull(m.put("metrics.cpu", new Integer(3)));
+		assertNull(m.put("", new Integer(4)));
+		assertEquals(1, ((Integer)m.put("metrics.cpu.user", new Integer(11))).intValue());
+		assertEquals(4, m.size());
+		assertEquals(11, ((Integer)m.get("metrics.cpu.user")).intValue());
+		assertEquals(3, ((Integer)m.get("metrics.cpu")).intValue());
+		assertFalse(m.containsKey("metrics"));
+		assertFalse(m.containsKey("metrics.cpu.use"));
+		assertNull(m.remove("metrics.c"));
+		assertEquals(3, ((Integer)m.remove("metrics.cpu")).intValue());
+		assertEquals(4, ((Integer)m.remove("")).intValue());
+		assertEquals(2, m.size());
+		assertEquals(2, ((Integer)m.get("metrics.cpu.system")).intValue());
+	}
+
+	public void testPrefixIterator() {
+		RadixTreeMap m = new RadixTreeMap();
+		String[] keys = { "b", "a/c", "a", "a/b/d", "ab", "a/b", "a/" };
+		for(int i = 0; i < keys.length; ++i)
+			m.put(keys[i], null);
+
+		// the same order as Comparators.STRING
+		String[] expected = { "a", "a/", "a/b", "a/b/d", "a/c", "ab", "b" };
+		MapIterator it = m.iterator();
+		for(int i = 0; i < expected.length; ++i)
+			assertEquals(0, ((String)it.next().getKey()).compareTo(expected[i]));
+		assertFalse(it.hasNext());
+
+		it = m.prefixIterator("a/");
+		for(int i = 1; i <= 4; ++i) {
+			assertEquals(0, ((String)it.next().getKey()).compareTo(expected[i]));
+			it.remove();
+		}
+		assertFalse(it.hasNext());
+		assertEquals(3, m.size());
+		assertFalse(m.prefixIterator("a/").hasNext());
+		assertFalse(m.prefixIterator("c").hasNext());
+	}
+}
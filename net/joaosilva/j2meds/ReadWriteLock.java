@@ -0,0 +1,76 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+/** A lock which lets any number of threads read at once, while writers get
+ *  exclusive access.
+ *
+ *  Waiting writers go before new readers, so that a steady flow of readers
+ *  can't keep writers out forever. The lock isn't reentrant: a thread holding
+ *  it mustn't try to lock it again, not even for reading.
+ */
+public class ReadWriteLock {
+	private int readers;
+	private int waitingWriters;
+	private boolean writing;
+
+	/** Waits until there are no writers, holding or waiting for the lock, and
+	 *  then locks it for reading.
+	 */
+	public synchronized void lockRead() {
+		boolean interrupted = false;
+		while(writing || waitingWriters > 0) {
+			try {
+				wait();
+			} catch(InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		++readers;
+		if(interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	public synchronized void unlockRead() {
+		if(readers == 0)
+			throw new InvalidOperationException("The lock isn't locked for reading");
+		if(--readers == 0)
+			notifyAll();
+	}
+
+	/** Waits until no other thread holds the lock, and then locks it for writing. */
+	public synchronized void lockWrite() {
+		boolean interrupted = false;
+		++waitingWriters;
+		while(writing || readers > 0) {
+			try {
+				wait();
+			} catch(InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		--waitingWriters;
+		writing = true;
+		if(interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	public synchronized void unlockWrite() {
+		if(!writing)
+			throw new InvalidOperationException("The lock isn't locked for writing");
+		writing = false;
+		notifyAll();
+	}
+}
@@ -0,0 +1,27 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+/** Interface for classes meaning to combine results in {@link BinaryTree#reduce}
+ *  and {@link BinaryTree#mapReduce}.
+ *
+ *  Results are combined in the order of the keys they come from, but not
+ *  necessarily from left to right, so the reduction must be associative.
+ *  It may be called from several threads at once.
+ */
+public interface Reducer {
+	/** Combines two non-null results, first coming from lower keys than second. */
+	public Object reduce(Object first, Object second);
+}
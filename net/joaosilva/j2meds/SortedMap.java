@@ -0,0 +1,54 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+/** A {@link Map} which keeps its keys sorted, according to its key {@link Comparator}.
+ * 
+ *  The methods looking for keys return null when there's no such key, since
+ *  maps don't allow null keys. Likewise, a null bound means unbounded.
+ */
+public interface SortedMap extends Map {
+	/** Returns the smallest key, or null if the map is empty. */
+	Object firstKey();
+	/** Returns the largest key, or null if the map is empty. */
+	Object lastKey();
+	/** Returns the largest key less than or equal to key, or null if there's none. */
+	Object floorKey(Object key);
+	/** Returns the smallest key greater than or equal to key, or null if there's none. */
+	Object ceilingKey(Object key);
+	/** Returns the largest key strictly less than key, or null if there's none. */
+	Object lowerKey(Object key);
+	/** Returns the smallest key strictly greater than key, or null if there's none. */
+	Object higherKey(Object key);
+	
+	/** Returns an iterator which starts at a given key.
+	 * 
+	 * @param startKey The key to start at. Iterating in ascending order, the first
+	 *        entry is the one with the smallest key greater than or equal to startKey.
+	 *        In descending order, it's the one with the largest key less than or
+	 *        equal to it. If null, iteration starts at the first (or last) entry.
+	 * @param descending Whether to iterate from the largest keys to the smallest.
+	 */
+	MapIterator iterator(Object startKey, boolean descending);
+	
+	/** Returns a view of the part of this map whose keys go from fromKey, inclusive,
+	 *  to toKey, exclusive. Changes to either map are visible in the other, and
+	 *  putting keys out of that range in the view throws an {@link InvalidKeyException}. 
+	 * 
+	 * @param fromKey The view's lowest key, or null for no lower bound.
+	 * @param toKey The key right after the view's highest one, or null for no upper bound.
+	 */
+	SortedMap subMap(Object fromKey, Object toKey);
+}
@@ -0,0 +1,295 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+/** A view of a range of keys of a {@link SortedMap}, which works on top of the
+ *  map's own navigation methods, so that it works with any SortedMap.
+ *  
+ *  Every lookup costs one lookup in the underlying map, and iterating costs one
+ *  extra comparison per entry, to find the end of the range. Unless the map is a
+ *  {@link BinaryTree} with order statistics, size() has to count the entries in
+ *  the range.
+ */
+class SortedSubMap implements SortedMap {
+	private SortedMap parent;
+	private Comparator comparator;
+	/** The lowest key in the view, or null if unbounded. */
+	private Object fromKey;
+	/** The key right after the view's highest one, or null if unbounded. */
+	private Object toKey;
+	
+	public SortedSubMap(SortedMap parent, Object fromKey, Object toKey) {
+		this.parent = parent;
+		this.comparator = parent.getKeyComparator();
+		if(fromKey != null && toKey != null && comparator.compare(fromKey, toKey) > 0)
+			throw new InvalidKeyException("fromKey can't be greater than toKey");
+		this.fromKey = fromKey;
+		this.toKey = toKey;
+	}
+	
+	private boolean isTooLow(Object key) {
+		return fromKey != null && comparator.compare(key, fromKey) < 0;
+	}
+	
+	private boolean isTooHigh(Object key) {
+		return toKey != null && comparator.compare(key, toKey) >= 0;
+	}
+	
+	private boolean isInRange(Object key) {
+		return !isTooLow(key) && !isTooHigh(key);
+	}
+	
+	public void clear() {
+		MapIterator it = iterator();
+		while(it.hasNext()) {
+			it.next();
+			it.remove();
+		}
+	}
+
+	public boolean containsKey(Object key) {
+		return isInRange(key) && parent.containsKey(key);
+	}
+
+	public Object get(Object key) {
+		if(!isInRange(key))
+			return null;
+		return parent.get(key);
+	}
+
+	public boolean isEmpty() {
+		return firstKey() == null;
+	}
+
+	public Object put(Object key, Object value) {
+		if(key == null)
+			throw new InvalidKeyException("Can't insert null keys");
+		if(!isInRange(key))
+			throw new InvalidKeyException("Key out of the sub map's range");
+		return parent.put(key, value);
+	}
+
+	public void putAll(Map other) {
+		if(comparator != other.getKeyComparator())
+			throw new InvalidOperationException(
+					"putAll can't work on maps with different comparators");
+		MapIterator it = other.iterator();
+		while(it.hasNext()) {
+			Map.Entry entry = it.next();
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	public boolean equals(Object other) {
+		if(!(other instanceof Map))
+			return false;
+		
+		Map otherMap = (Map)other;
+		if(otherMap.size() != size())
+			return false;
+		
+		MapIterator it = otherMap.iterator();
+		while(it.hasNext()) {
+			Map.Entry cur = it.next();
+			if(!containsKey(cur.getKey()))
+				return false;
+			Object value = cur.getValue();
+			Object ownValue = parent.get(cur.getKey());
+			if(value == null ? ownValue != null : !value.equals(ownValue))
+				return false;
+		}
+		return true;
+	}
+
+	public int hashCode() {
+		MapIterator it = iterator();
+		int result = 0;
+		while(it.hasNext())
+			result += it.next().hashCode();
+		return result;
+	}
+
+	public Object remove(Object key) {
+		if(!isInRange(key))
+			return null;
+		return parent.remove(key);
+	}
+
+	public int size() {
+		if(parent instanceof BinaryTree && ((BinaryTree)parent).hasOrderStatistics())
+			return ((BinaryTree)parent).countInRange(fromKey, toKey);
+		int result = 0;
+		MapIterator it = iterator();
+		while(it.hasNext()) {
+			it.next();
+			++result;
+		}
+		return result;
+	}
+
+	public Comparator getKeyComparator() {
+		return comparator;
+	}
+
+	public MapIterator iterator() {
+		return iterator(null, false);
+	}
+
+	public Object firstKey() {
+		Object key = fromKey == null ? parent.firstKey() : parent.ceilingKey(fromKey);
+		return key == null || isTooHigh(key) ? null : key;
+	}
+
+	public Object lastKey() {
+		Object key = toKey == null ? parent.lastKey() : parent.lowerKey(toKey);
+		return key == null || isTooLow(key) ? null : key;
+	}
+
+	public Object floorKey(Object key) {
+		if(isTooHigh(key))
+			return lastKey();
+		Object result = parent.floorKey(key);
+		return result == null || isTooLow(result) ? null : result;
+	}
+
+	public Object ceilingKey(Object key) {
+		if(isTooLow(key))
+			return firstKey();
+		Object result = parent.ceilingKey(key);
+		return result == null || isTooHigh(result) ? null : result;
+	}
+
+	public Object lowerKey(Object key) {
+		if(toKey != null && comparator.compare(key, toKey) > 0)
+			return lastKey();
+		Object result = parent.lowerKey(key);
+		return result == null || isTooLow(result) ? null : result;
+	}
+
+	public Object higherKey(Object key) {
+		if(isTooLow(key))
+			return firstKey();
+		Object result = parent.higherKey(key);
+		return result == null || isTooHigh(result) ? null : result;
+	}
+
+	public MapIterator iterator(Object startKey, boolean descending) {
+		if(descending) {
+			if(startKey == null || isTooHigh(startKey))
+				startKey = lastKey();
+			if(startKey == null)
+				return new SortedSubMapIterator(parent, null, null, true);
+			return new SortedSubMapIterator(parent, parent.iterator(startKey, true),
+					fromKey, true);
+		}
+		
+		if(startKey == null || isTooLow(startKey))
+			startKey = fromKey;
+		return new SortedSubMapIterator(parent, parent.iterator(startKey, false),
+				toKey, false);
+	}
+
+	public SortedMap subMap(Object newFromKey, Object newToKey) {
+		if(newFromKey == null || isTooLow(newFromKey))
+			newFromKey = fromKey;
+		if(newToKey == null || (toKey != null && comparator.compare(newToKey, toKey) > 0))
+			newToKey = toKey;
+		return new SortedSubMap(parent, newFromKey, newToKey);
+	}
+}
+
+/** Iterates over a SortedMap from a given key until a bound. */
+class SortedSubMapIterator implements MapIterator {
+	private SortedMap source;
+	private MapIterator iterator;
+	private Object bound;
+	private boolean descending;
+	/** The entry read ahead to check it was within the bound, if any. */
+	private Map.Entry nextEntry;
+	/** The key of the entry last returned by next. */
+	private Object curKey;
+	/** True if the underlying iterator has moved past curKey's entry. */
+	private boolean readAhead;
+	private boolean finished;
+	
+	/** Creates an iterator over source. 
+	 * 
+	 * @param iterator An iterator over source, positioned at the first entry to
+	 *        return. If it's null, this iterator is empty.
+	 * @param bound The key at which to stop. Iterating in ascending order it's excluded,
+	 *        in descending order it's included. If it's null, there's no bound.
+	 */
+	public SortedSubMapIterator(SortedMap source, MapIterator iterator, Object bound,
+			boolean descending) {
+		this.source = source;
+		this.iterator = iterator;
+		this.bound = bound;
+		this.descending = descending;
+		finished = iterator == null;
+	}
+	
+	private boolean isPastBound(Object key) {
+		if(bound == null)
+			return false;
+		int compareValue = source.getKeyComparator().compare(key, bound);
+		return descending ? compareValue < 0 : compareValue >= 0;
+	}
+
+	public boolean hasNext() {
+		if(nextEntry != null)
+			return true;
+		if(finished || !iterator.hasNext())
+			return false;
+		
+		Map.Entry entry = iterator.next();
+		readAhead = true;
+		if(isPastBound(entry.getKey())) {
+			finished = true;
+			return false;
+		}
+		nextEntry = entry;
+		return true;
+	}
+
+	public Map.Entry next() {
+		if(!hasNext())
+			throw new java.util.NoSuchElementException();
+		Map.Entry result = nextEntry;
+		nextEntry = null;
+		readAhead = false;
+		curKey = result.getKey();
+		return result;
+	}
+
+	public void remove() {
+		if(curKey == null)
+			throw new InvalidOperationException(
+					"remove can only be called once after each call to next");
+		if(!readAhead)
+			iterator.remove();
+		else {
+			/* the underlying iterator is past the current entry, so remove it
+			 * from the map and start over right after it.
+			 */
+			source.remove(curKey);
+			if(!finished) {
+				iterator = source.iterator(curKey, descending);
+				if(nextEntry != null)
+					iterator.next();
+			}
+		}
+		curKey = null;
+	}
+}
@@ -0,0 +1,250 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+/** A self adjusting binary tree: every access moves the key it looked for up
+ *  to the root, rotating the nodes on the way, so that keys used often stay
+ *  near the top.
+ *
+ *  Any sequence of operations takes O(log n) amortized time each, and when a
+ *  few keys get most of the accesses, finding them takes far fewer comparisons
+ *  than in a balanced tree. The price is that get and containsKey change the
+ *  tree too, so like {@link CacheMap}, and unlike the other maps in this
+ *  package, a SplayTree can't be read from several threads at once. A
+ *  {@link ConcurrentMap} wrapping one lets a single thread in at a time, even
+ *  to read.
+ *
+ *  Splaying is done top down, in a single pass without recursion or parent
+ *  links. Like {@link BinaryTree}, null keys are not allowed.
+ */
+public class SplayTree implements Map {
+	private SplayTreeNode root;
+	private int size;
+	private Comparator comparator;
+	/** Collects the subtrees split off while splaying, to avoid creating it each time. */
+	private SplayTreeNode header;
+
+	/** Creates a new SplayTree, using the specified {@link Comparator}.
+	 * @param keyComparator A Comparator to compare keys. Usually, this will be one
+	 *  of the ones provided in {@link Comparators}.
+	 */
+	public SplayTree(Comparator keyComparator) {
+		this.comparator = keyComparator;
+		header = new SplayTreeNode(null, null);
+	}
+
+	SplayTreeNode getRoot() {
+		return root;
+	}
+
+	/** Moves the node holding key to the root, or if there's none, the last node
+	 *  found looking for it, which holds either the next key below key or the
+	 *  next one above. The tree must not be empty.
+	 *
+	 * @return The result of comparing key with the new root's key.
+	 */
+	private int splay(Object key) {
+		SplayTreeNode left = header;
+		SplayTreeNode right = header;
+		SplayTreeNode top = root;
+		int compareValue;
+		header.left = header.right = null;
+		while(true) {
+			compareValue = comparator.compare(key, top.key);
+			if(compareValue < 0) {
+				if(top.left == null)
+					break;
+				if(comparator.compare(key, top.left.key) < 0) {
+					// zig-zig: rotates right before linking
+					SplayTreeNode newTop = top.left;
+					top.left = newTop.right;
+					newTop.right = top;
+					top = newTop;
+					if(top.left == null)
+						break;
+				}
+				// links top into the tree of keys greater than key
+				right.left = top;
+				right = top;
+				top = top.left;
+			}
+			else if(compareValue > 0) {
+				if(top.right == null)
+					break;
+				if(comparator.compare(key, top.right.key) > 0) {
+					SplayTreeNode newTop = top.right;
+					top.right = newTop.left;
+					newTop.left = top;
+					top = newTop;
+					if(top.right == null)
+						break;
+				}
+				left.right = top;
+				left = top;
+				top = top.right;
+			}
+			else
+				break;
+		}
+
+		// puts the tree back together, with top at the root
+		left.right = top.left;
+		right.left = top.right;
+		top.left = header.right;
+		top.right = header.left;
+		header.left = header.right = null;
+		root = top;
+		return compareValue;
+	}
+
+	public void clear() {
+		root = null;
+		size = 0;
+	}
+
+	public boolean containsKey(Object key) {
+		return root != null && splay(key) == 0;
+	}
+
+	public Object get(Object key) {
+		if(root == null || splay(key) != 0)
+			return null;
+		return root.value;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public Object put(Object key, Object value) {
+		if(key == null)
+			throw new InvalidKeyException("Can't insert null keys");
+		if(root == null) {
+			root = new SplayTreeNode(key, value);
+			size = 1;
+			return null;
+		}
+
+		int compareValue = splay(key);
+		if(compareValue == 0) {
+			Object oldValue = root.value;
+			root.value = value;
+			return oldValue;
+		}
+
+		// the new node goes above the root, which falls on one of its sides
+		SplayTreeNode newNode = new SplayTreeNode(key, value);
+		if(compareValue < 0) {
+			newNode.left = root.left;
+			newNode.right = root;
+			root.left = null;
+		}
+		else {
+			newNode.right = root.right;
+			newNode.left = root;
+			root.right = null;
+		}
+		root = newNode;
+		++size;
+		return null;
+	}
+
+	public void putAll(Map other) {
+		if(comparator != other.getKeyComparator())
+			throw new InvalidOperationException(
+					"putAll can't work on maps with different comparators");
+		MapIterator it = other.iterator();
+		while(it.hasNext()) {
+			Map.Entry entry = it.next();
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	public boolean equals(Object other) {
+		// looking up our own keys while iterating over them would reshape the tree under the iterator
+		if(other == this)
+			return true;
+		if(!(other instanceof Map))
+			return false;
+
+		Map otherMap = (Map)other;
+		if(otherMap.size() != size)
+			return false;
+
+		MapIterator it = otherMap.iterator();
+		while(it.hasNext()) {
+			Map.Entry cur = it.next();
+			if(!containsKey(cur.getKey()))
+				return false;
+			Object value = cur.getValue();
+			if(value == null ? root.value != null : !value.equals(root.value))
+				return false;
+		}
+		return true;
+	}
+
+	public int hashCode() {
+		MapIterator it = iterator();
+		int result = 0;
+		while(it.hasNext())
+			result += it.next().hashCode();
+		return result;
+	}
+
+	public Object remove(Object key) {
+		if(root == null || splay(key) != 0)
+			return null;
+
+		Object oldValue = root.value;
+		SplayTreeNode right = root.right;
+		if(root.left == null)
+			root = right;
+		else {
+			// splaying the left subtree for key brings up its largest key, leaving no right child
+			root = root.left;
+			splay(key);
+			root.right = right;
+		}
+		--size;
+		return oldValue;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public Comparator getKeyComparator() {
+		return comparator;
+	}
+
+	/** Returns an iterator over the entries in ascending order of their keys.
+	 *  Calling any method other than the iterator's own while iterating
+	 *  reshapes the tree, which the iterator can't cope with.
+	 */
+	public MapIterator iterator() {
+		return new SplayTreeIterator(this);
+	}
+}
+
+class SplayTreeNode {
+	SplayTreeNode(Object key, Object value) {
+		this.key = key;
+		this.value = value;
+	}
+
+	Object key;
+	Object value;
+	SplayTreeNode left, right;
+}
@@ -0,0 +1,97 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+import java.util.NoSuchElementException;
+
+import net.joaosilva.j2meds.Map.Entry;
+
+/** Goes through a {@link SplayTree} in order, without splaying it. */
+class SplayTreeIterator implements MapIterator {
+	/** The nodes whose keys are still to be returned, along with their right
+	 *  subtrees, with the next one on top.
+	 */
+	private SplayTreeNode[] nodesToProcess;
+	private int stackSize;
+	private SplayTree source;
+	private Object curKey;
+
+	public SplayTreeIterator(SplayTree source) {
+		this.source = source;
+		nodesToProcess = new SplayTreeNode[16];
+		pushLeftNodes(source.getRoot());
+	}
+
+	private void push(SplayTreeNode node) {
+		if(stackSize == nodesToProcess.length) {
+			SplayTreeNode[] newStack = new SplayTreeNode[stackSize * 2];
+			System.arraycopy(nodesToProcess, 0, newStack, 0, stackSize);
+			nodesToProcess = newStack;
+		}
+		nodesToProcess[stackSize++] = node;
+	}
+
+	private void pushLeftNodes(SplayTreeNode node) {
+		while(node != null) {
+			push(node);
+			node = node.left;
+		}
+	}
+
+	public boolean hasNext() {
+		return stackSize > 0;
+	}
+
+	public Entry next() {
+		if(stackSize == 0)
+			throw new NoSuchElementException();
+		SplayTreeNode node = nodesToProcess[--stackSize];
+		nodesToProcess[stackSize] = null;
+		pushLeftNodes(node.right);
+		curKey = node.key;
+		return new Entry(node.key, node.value);
+	}
+
+	public void remove() {
+		if(curKey == null)
+			throw new InvalidOperationException(
+					"remove can only be called once after each call to next");
+		Object nextKey = stackSize > 0 ? nodesToProcess[stackSize - 1].key : null;
+		source.remove(curKey);
+		curKey = null;
+
+		// removing splayed the tree, so find the next key again
+		while(stackSize > 0)
+			nodesToProcess[--stackSize] = null;
+		if(nextKey != null)
+			seek(nextKey);
+	}
+
+	/** Rebuilds the stack so that the next key returned is key, which is in the
+	 *  tree. Only the nodes whose keys are greater than key are kept.
+	 */
+	private void seek(Object key) {
+		Comparator comparator = source.getKeyComparator();
+		SplayTreeNode node = source.getRoot();
+		while(node != null) {
+			int compareValue = comparator.compare(key, node.key);
+			if(compareValue <= 0)
+				push(node);
+			if(compareValue == 0)
+				break;
+			node = compareValue < 0 ? node.left : node.right;
+		}
+	}
+}
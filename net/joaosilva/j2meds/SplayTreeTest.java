@@ -0,0 +1,101 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package net.joaosilva.j2meds;
+
+import jmunit.framework.cldc11.TestCase;
+
+public class SplayTreeTest extends TestCase {
+
+	public SplayTreeTest() {
+		super(3, "SplayTreeTest");
+	}
+
+	public void test(int testNumber) {
+		switch(testNumber) {
+		case 0:
+			testPutGetRemove();
+			break;
+		case 1:
+			testSplaying();
+			break;
+		case 2:
+			testIterator();
+			break;
+
+		default:
+			break;
+		}
+	}
+
+	public void testPutGetRemove() {
+		SplayTree t = new SplayTree(Comparators.STRING);
+		assertTrue(t.isEmpty());
+		assertNull(t.get("test"));
+		assertNull(t.put("test", new Integer(0)));
+		assertEquals(0, ((Integer)t.put("test", new Integer(1))).intValue());
+		assertEquals(1, t.size());
+		assertEquals(1, ((Integer)t.get("test")).intValue());
+		assertNull(t.remove("some key that isn't there"));
+		assertEquals(1, ((Integer)t.remove("test")).intValue());
+		assertTrue(t.isEmpty());
+		assertFalse(t.containsKey("test"));
+	}
+
+	public void testSplaying() {
+		SplayTree t = new SplayTree(Comparators.INTEGER);
+		for(int i = 0; i < 1000; ++i)
+			t.put(new Integer(i * 7 % 1000), new Integer(-i));
+		assertEquals(1000, t.size());
+		for(int i = 0; i < 1000; i += 3) {
+			assertTrue(t.containsKey(new Integer(i)));
+			assertEquals(i, ((Integer)t.getRoot().key).intValue());
+		}
+		// a missing key leaves one of its neighbours at the root
+		t.remove(new Integer(500));
+		assertNull(t.get(new Integer(500)));
+		int rootKey = ((Integer)t.getRoot().key).intValue();
+		assertTrue(rootKey == 499 || rootKey == 501);
+		for(int i = 0; i < 1000; i += 2)
+			t.remove(new Integer(i));
+		assertEquals(500, t.size());
+		for(int i = 0; i < 1000; ++i)
+			assertEquals(i % 2 != 0, t.containsKey(new Integer(i)));
+
+		BinaryTree b = new BinaryTree(Comparators.INTEGER);
+		b.putAll(t);
+		assertTrue(t.equals(b));
+		assertTrue(b.equals(t));
+		assertEquals(b.hashCode(), t.hashCode());
+	}
+
+	public void testIterator() {
+		SplayTree t = new SplayTree(Comparators.INTEGER);
+		for(int i = 99; i >= 0; --i)
+			t.put(new Integer(i), null);
+		MapIterator it = t.iterator();
+		int expected = 0;
+		while(it.hasNext()) {
+			int key = ((Integer)it.next().getKey()).intValue();
+			assertEquals(expected++, key);
+			if(key % 3 == 0)
+				it.remove();
+		}
+		assertEquals(100, expected);
+		assertEquals(66, t.size());
+		assertFalse(t.containsKey(new Integer(30)));
+		assertTrue(t.containsKey(new Integer(31)));
+	}
+}
@@ -0,0 +1,30 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/** Writes strings in modified UTF-8, so they can't take more than 65535 bytes. */
+public class StringCodec implements Codec {
+	public void write(DataOutputStream out, Object object) throws IOException {
+		out.writeUTF((String)object);
+	}
+
+	public Object read(DataInputStream in) throws IOException {
+		return in.readUTF();
+	}
+}
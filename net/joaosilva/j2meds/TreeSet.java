@@ -0,0 +1,327 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+/** A sorted set, stored in a binary tree like {@link BinaryTree}'s but whose
+ *  nodes hold only a key. Using a BinaryTree with dummy values as a set wastes
+ *  a reference per node, and an {@link Map.Entry} per step when iterating,
+ *  neither of which this does.
+ *
+ *  As in BinaryTree, null keys are not allowed, and the tree is only kept
+ *  balanced if created with the {@link BinaryTree#BALANCED} option.
+ */
+public class TreeSet {
+	/** A dummy node, prior to the root. Both its children point to the root. */
+	private TreeSetNode dummy;
+	private TreeSetNode root;
+	private int size;
+	private Comparator comparator;
+	private boolean balanced;
+
+	/** The nodes visited by the last call to findPathTo, starting with the dummy node. */
+	private TreeSetNode[] path;
+	/** The result of the last comparison made by findPathTo. */
+	private int lastComparison;
+
+	/** Creates a new, unbalanced, TreeSet, using the specified {@link Comparator}.
+	 * @param keyComparator A Comparator to compare keys. Usually, this will be one
+	 *  of the ones provided in {@link Comparators}.
+	 */
+	public TreeSet(Comparator keyComparator) {
+		this(keyComparator, 0);
+	}
+
+	/** Creates a new TreeSet, using the specified {@link Comparator} and options.
+	 * @param keyComparator A Comparator to compare keys. Usually, this will be one
+	 *  of the ones provided in {@link Comparators}.
+	 * @param options {@link BinaryTree#BALANCED}, or 0 for an unbalanced tree.
+	 *        Other BinaryTree options are ignored.
+	 */
+	public TreeSet(Comparator keyComparator, int options) {
+		this.comparator = keyComparator;
+		this.balanced = (options & BinaryTree.BALANCED) != 0;
+		dummy = new TreeSetNode(null);
+		path = new TreeSetNode[16];
+		clear();
+	}
+
+	public void clear() {
+		root = dummy.left = dummy.right = null;
+		size = 0;
+	}
+
+	/** Returns true if this set was created with the {@link BinaryTree#BALANCED} option. */
+	public boolean isBalanced() {
+		return balanced;
+	}
+
+	TreeSetNode getRoot() {
+		return root;
+	}
+
+	private void setPath(int index, TreeSetNode node) {
+		if(index == path.length) {
+			TreeSetNode[] newPath = new TreeSetNode[path.length * 2];
+			System.arraycopy(path, 0, newPath, 0, path.length);
+			path = newPath;
+		}
+		path[index] = node;
+	}
+
+	/** Walks down from the root looking for a key, storing the nodes it goes
+	 *  through in path, which always starts with the dummy node.
+	 *
+	 * @return If the key is found, the length of the path, whose last node holds
+	 *         the key. Otherwise, minus the length of the path, whose last node is
+	 *         the one below which the key would have to be inserted.
+	 */
+	private int findPathTo(Object key) {
+		path[0] = dummy;
+		int depth = 1;
+		TreeSetNode curNode = root;
+		while(curNode != null) {
+			setPath(depth++, curNode);
+			lastComparison = comparator.compare(key, curNode.key);
+			if(lastComparison == 0)
+				return depth;
+
+			if(lastComparison < 0)
+				curNode = curNode.left;
+			else
+				curNode = curNode.right;
+		}
+		return -depth;
+	}
+
+	public boolean contains(Object key) {
+		TreeSetNode curNode = root;
+		while(curNode != null) {
+			int compareValue = comparator.compare(key, curNode.key);
+			if(compareValue == 0)
+				return true;
+
+			if(compareValue < 0)
+				curNode = curNode.left;
+			else
+				curNode = curNode.right;
+		}
+		return false;
+	}
+
+	public boolean isEmpty() {
+		return root == null;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public Comparator getKeyComparator() {
+		return comparator;
+	}
+
+	private void replaceChild(TreeSetNode parent, TreeSetNode oldChild,
+			TreeSetNode newChild) {
+		if(parent == dummy)
+			root = dummy.left = dummy.right = newChild;
+		else if(parent.left == oldChild)
+			parent.left = newChild;
+		else
+			parent.right = newChild;
+	}
+
+	/** Adds key to the set.
+	 *
+	 * @return True if the key was added, false if it was already there.
+	 */
+	public boolean add(Object key) {
+		if(key == null)
+			throw new InvalidKeyException("Can't insert null keys");
+
+		int depth = findPathTo(key);
+		if(depth > 0)
+			return false;
+
+		depth = -depth;
+		TreeSetNode parent = path[depth - 1];
+		TreeSetNode newNode = new TreeSetNode(key);
+		if(parent == dummy)
+			root = dummy.left = dummy.right = newNode;
+		else if(lastComparison < 0)
+			parent.left = newNode;
+		else
+			parent.right = newNode;
+		++size;
+
+		if(balanced) {
+			for(int i = depth - 1; i > 0; --i) {
+				TreeSetNode node = path[i];
+				int oldHeight = node.height;
+				TreeSetNode newTop = rebalance(node);
+				if(newTop != node) {
+					replaceChild(path[i - 1], node, newTop);
+					break;
+				}
+				if(node.height == oldHeight)
+					break;
+			}
+		}
+		return true;
+	}
+
+	/** Removes key from the set.
+	 *
+	 * @return True if the key was removed, false if it wasn't there.
+	 */
+	public boolean remove(Object key) {
+		if(root == null)
+			return false;
+		int depth = findPathTo(key);
+		if(depth < 0)
+			return false;
+
+		TreeSetNode nodeToRemove = path[depth - 1];
+		TreeSetNode parent = path[depth - 2];
+		if(nodeToRemove.left == null || nodeToRemove.right == null) {
+			replaceChild(parent, nodeToRemove,
+					nodeToRemove.left != null ? nodeToRemove.left : nodeToRemove.right);
+			--depth;
+		}
+		else {
+			int removedIndex = depth - 1;
+			TreeSetNode successor = nodeToRemove.right;
+			while(successor.left != null) {
+				setPath(depth++, successor);
+				successor = successor.left;
+			}
+			replaceChild(path[depth - 1], successor, successor.right);
+			successor.left = nodeToRemove.left;
+			successor.right = nodeToRemove.right;
+			successor.height = nodeToRemove.height;
+			replaceChild(parent, nodeToRemove, successor);
+			path[removedIndex] = successor;
+		}
+		nodeToRemove.left = nodeToRemove.right = null;
+		--size;
+
+		if(balanced) {
+			for(int i = depth - 1; i > 0; --i) {
+				TreeSetNode node = path[i];
+				int oldHeight = node.height;
+				TreeSetNode newTop = rebalance(node);
+				if(newTop != node)
+					replaceChild(path[i - 1], node, newTop);
+				if(newTop.height == oldHeight)
+					break;
+			}
+		}
+		return true;
+	}
+
+	private static int heightOf(TreeSetNode node) {
+		return node == null ? 0 : node.height;
+	}
+
+	private static void updateHeight(TreeSetNode node) {
+		int leftHeight = heightOf(node.left);
+		int rightHeight = heightOf(node.right);
+		node.height = (byte)((leftHeight > rightHeight ? leftHeight : rightHeight) + 1);
+	}
+
+	private static TreeSetNode rotateLeft(TreeSetNode node) {
+		TreeSetNode newTop = node.right;
+		node.right = newTop.left;
+		newTop.left = node;
+		updateHeight(node);
+		updateHeight(newTop);
+		return newTop;
+	}
+
+	private static TreeSetNode rotateRight(TreeSetNode node) {
+		TreeSetNode newTop = node.left;
+		node.left = newTop.right;
+		newTop.right = node;
+		updateHeight(node);
+		updateHeight(newTop);
+		return newTop;
+	}
+
+	private static TreeSetNode rebalance(TreeSetNode node) {
+		int balance = heightOf(node.left) - heightOf(node.right);
+		if(balance > 1) {
+			if(heightOf(node.left.left) < heightOf(node.left.right))
+				node.left = rotateLeft(node.left);
+			return rotateRight(node);
+		}
+		if(balance < -1) {
+			if(heightOf(node.right.right) < heightOf(node.right.left))
+				node.right = rotateRight(node.right);
+			return rotateLeft(node);
+		}
+		updateHeight(node);
+		return node;
+	}
+
+	/** Tells whether other is a TreeSet with the same keys, as told by this
+	 *  set's comparator.
+	 */
+	public boolean equals(Object other) {
+		if(other == this)
+			return true;
+		if(!(other instanceof TreeSet))
+			return false;
+
+		TreeSet otherSet = (TreeSet)other;
+		if(otherSet.size() != size)
+			return false;
+
+		SetIterator it = otherSet.iterator();
+		while(it.hasNext()) {
+			if(!contains(it.next()))
+				return false;
+		}
+		return true;
+	}
+
+	/** Returns the sum of the keys' hash codes. */
+	public int hashCode() {
+		SetIterator it = iterator();
+		int result = 0;
+		while(it.hasNext())
+			result += it.next().hashCode();
+		return result;
+	}
+
+	/** Returns an iterator over the set's keys, in ascending order. */
+	public SetIterator iterator() {
+		return new TreeSetIterator(this);
+	}
+}
+
+class TreeSetNode {
+	public TreeSetNode(Object newKey) {
+		key = newKey;
+		height = 1;
+	}
+
+	TreeSetNode left;
+	TreeSetNode right;
+
+	Object key;
+	/** The height of the subtree starting at this node. Only kept up to date
+	 *  in balanced sets.
+	 */
+	byte height;
+}
@@ -0,0 +1,89 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+class TreeSetIterator implements SetIterator {
+	private TreeSetNode[] nodesToProcess;
+	private int stackSize;
+	private TreeSetNode curNode;
+	private TreeSet source;
+
+	public TreeSetIterator(TreeSet source) {
+		this.source = source;
+		curNode = null;
+		nodesToProcess = new TreeSetNode[16];
+		pushAllNodesToTheLeftOf(source.getRoot());
+	}
+
+	private void push(TreeSetNode node) {
+		if(stackSize == nodesToProcess.length) {
+			TreeSetNode[] newStack = new TreeSetNode[stackSize * 2];
+			System.arraycopy(nodesToProcess, 0, newStack, 0, stackSize);
+			nodesToProcess = newStack;
+		}
+		nodesToProcess[stackSize++] = node;
+	}
+
+	private void pushAllNodesToTheLeftOf(TreeSetNode node) {
+		TreeSetNode iterNode = node;
+		while(iterNode != null) {
+			push(iterNode);
+			iterNode = iterNode.left;
+		}
+	}
+
+	public boolean hasNext() {
+		return stackSize > 0;
+	}
+
+	public Object next() {
+		if(stackSize == 0)
+			throw new java.util.NoSuchElementException();
+		curNode = nodesToProcess[--stackSize];
+		nodesToProcess[stackSize] = null;
+		pushAllNodesToTheLeftOf(curNode.right);
+
+		return curNode.key;
+	}
+
+	public void remove() {
+		if(curNode == null)
+			throw new InvalidOperationException(
+					"remove can only be called once after each call to next");
+		source.remove(curNode.key);
+		curNode = null;
+
+		// removing may have moved nodes around, so find the next node again
+		if(stackSize > 0) {
+			Object key = nodesToProcess[stackSize - 1].key;
+			Comparator comparator = source.getKeyComparator();
+			while(stackSize > 0)
+				nodesToProcess[--stackSize] = null;
+			TreeSetNode iterNode = source.getRoot();
+			while(iterNode != null) {
+				int compareValue = comparator.compare(key, iterNode.key);
+				if(compareValue <= 0)
+					push(iterNode);
+				if(compareValue == 0)
+					break;
+
+				if(compareValue < 0)
+					iterNode = iterNode.left;
+				else
+					iterNode = iterNode.right;
+			}
+		}
+	}
+}
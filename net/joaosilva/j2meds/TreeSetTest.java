@@ -0,0 +1,94 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package net.joaosilva.j2meds;
+
+import jmunit.framework.cldc11.TestCase;
+
+public class TreeSetTest extends TestCase {
+
+	public TreeSetTest() {
+		super(3, "TreeSetTest");
+	}
+
+	public void test(int testNumber) {
+		switch(testNumber) {
+		case 0:
+			testAddContainsRemove();
+			break;
+		case 1:
+			testBalanced();
+			break;
+		case 2:
+			testIterator();
+			break;
+
+		default:
+			break;
+		}
+	}
+
+	public void testAddContainsRemove() {
+		TreeSet s = new TreeSet(Comparators.STRING);
+		assertTrue(s.isEmpty());
+		assertTrue(s.add("test"));
+		assertFalse(s.add("test"));
+		assertEquals(1, s.size());
+		assertTrue(s.contains("test"));
+		assertFalse(s.remove("some key that isn't there"));
+		assertTrue(s.remove("test"));
+		assertTrue(s.isEmpty());
+		assertFalse(s.contains("test"));
+	}
+
+	public void testBalanced() {
+		TreeSet s = new TreeSet(Comparators.INTEGER, BinaryTree.BALANCED);
+		for(int i = 0; i < 1024; ++i)
+			s.add(new Integer(i));
+		// a perfectly balanced tree of 1023 nodes plus one more
+		assertEquals(11, s.getRoot().height);
+		for(int i = 0; i < 1024; i += 2)
+			s.remove(new Integer(i));
+		assertEquals(512, s.size());
+		for(int i = 0; i < 1024; ++i)
+			assertEquals(i % 2 != 0, s.contains(new Integer(i)));
+
+		TreeSet other = new TreeSet(Comparators.INTEGER);
+		for(int i = 1023; i > 0; i -= 2)
+			other.add(new Integer(i));
+		assertTrue(s.equals(other));
+		assertEquals(other.hashCode(), s.hashCode());
+		other.remove(new Integer(1));
+		assertFalse(s.equals(other));
+	}
+
+	public void testIterator() {
+		TreeSet s = new TreeSet(Comparators.INTEGER, BinaryTree.BALANCED);
+		for(int i = 99; i >= 0; --i)
+			s.add(new Integer(i));
+		SetIterator it = s.iterator();
+		int expected = 0;
+		while(it.hasNext()) {
+			int key = ((Integer)it.next()).intValue();
+			assertEquals(expected++, key);
+			if(key % 3 == 0)
+				it.remove();
+		}
+		assertEquals(100, expected);
+		assertEquals(66, s.size());
+		assertFalse(s.contains(new Integer(30)));
+		assertTrue(s.contains(new Integer(31)));
+	}
+}
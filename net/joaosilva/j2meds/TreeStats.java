@@ -0,0 +1,113 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+/** Statistics about a {@link BinaryTree}'s use and shape, as returned by
+ *  {@link BinaryTree#getStats()}.
+ *
+ *  Counts start when statistics are enabled on the tree. Searches are the walks
+ *  down from the root done by put, get, remove and the like; each one compares
+ *  the key once per node it visits, so its depth is also its comparison count.
+ */
+public class TreeStats {
+	long puts;
+	long gets;
+	long removes;
+	long iterators;
+	long searches;
+	long comparisons;
+	int maxSearchDepth;
+	int height;
+	int[] depthHistogram;
+
+	TreeStats() {
+	}
+
+	/** Makes a copy of the counts, to which the tree's shape is added. */
+	TreeStats copy() {
+		TreeStats result = new TreeStats();
+		result.puts = puts;
+		result.gets = gets;
+		result.removes = removes;
+		result.iterators = iterators;
+		result.searches = searches;
+		result.comparisons = comparisons;
+		result.maxSearchDepth = maxSearchDepth;
+		return result;
+	}
+
+	void recordSearch(int depth) {
+		++searches;
+		comparisons += depth;
+		if(depth > maxSearchDepth)
+			maxSearchDepth = depth;
+	}
+
+	/** Returns how many times put was called. */
+	public long getPutCount() {
+		return puts;
+	}
+
+	/** Returns how many times get, containsKey or one of the navigation methods,
+	 *  such as floorKey, was called.
+	 */
+	public long getGetCount() {
+		return gets;
+	}
+
+	/** Returns how many times remove was called. */
+	public long getRemoveCount() {
+		return removes;
+	}
+
+	/** Returns how many iterators were created. */
+	public long getIteratorCount() {
+		return iterators;
+	}
+
+	/** Returns how many times the comparator was called by searches. */
+	public long getComparisonCount() {
+		return comparisons;
+	}
+
+	/** Returns the average number of comparisons per put, get and remove. */
+	public float getComparisonsPerOperation() {
+		long operations = puts + gets + removes;
+		return operations == 0 ? 0 : (float)comparisons / operations;
+	}
+
+	/** Returns the average depth reached by searches. */
+	public float getAverageSearchDepth() {
+		return searches == 0 ? 0 : (float)comparisons / searches;
+	}
+
+	/** Returns the deepest any search went. */
+	public int getMaxSearchDepth() {
+		return maxSearchDepth;
+	}
+
+	/** Returns the tree's height when the statistics were taken. */
+	public int getHeight() {
+		return height;
+	}
+
+	/** Returns how many nodes were at each depth when the statistics were taken.
+	 *  The root is at depth 1, so the histogram has height + 1 elements, the
+	 *  first one being 0.
+	 */
+	public int[] getDepthHistogram() {
+		return depthHistogram;
+	}
+}
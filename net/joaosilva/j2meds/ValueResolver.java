@@ -0,0 +1,29 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+/** Interface for classes meaning to decide which value a key keeps when it's
+ *  in both trees passed to {@link BinaryTree#union}.
+ */
+public interface ValueResolver {
+	/** Picks the value a key keeps.
+	 *
+	 * @param key The key, as found in the tree union was called on.
+	 * @param value The key's value in the tree union was called on.
+	 * @param otherValue The key's value in the tree passed to union.
+	 * @return The value the key ends up with.
+	 */
+	public Object resolve(Object key, Object value, Object otherValue);
+}
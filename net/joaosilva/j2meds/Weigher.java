@@ -0,0 +1,27 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds;
+
+/** Interface for classes meaning to tell how much of a {@link CacheMap}'s
+ *  capacity an entry takes.
+ */
+public interface Weigher {
+	/** Computes an entry's weight.
+	 *
+	 * @return The entry's weight, which must not be negative. It must stay the
+	 *         same for as long as the entry is in the cache.
+	 */
+	public int weigh(Object key, Object value);
+}
@@ -0,0 +1,91 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds.benchmark;
+
+import java.util.Random;
+
+import net.joaosilva.j2meds.BinaryTree;
+import net.joaosilva.j2meds.Comparators;
+import net.joaosilva.j2meds.ConcurrentMap;
+import net.joaosilva.j2meds.Map;
+
+/** Measures how the throughput of a {@link ConcurrentMap} grows with the number
+ *  of threads using it, with a workload of 95% gets and 5% puts.
+ *
+ *  Run it with the largest thread count to try as the only argument. It prints
+ *  the operations per second for 1, 2, 4... threads, up to that count.
+ */
+public class ConcurrentMapBenchmark {
+	private static final int KEY_COUNT = 100000;
+	private static final long DURATION_MILLIS = 2000;
+	/** Out of 100 operations, how many are puts. */
+	private static final int PUT_PERCENTAGE = 5;
+
+	private static volatile boolean running;
+
+	public static void main(String[] args) throws InterruptedException {
+		int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		BinaryTree tree = new BinaryTree(Comparators.INTEGER, BinaryTree.BALANCED);
+		for(int i = 0; i < KEY_COUNT; ++i)
+			tree.put(new Integer(i), new Integer(i));
+		ConcurrentMap map = new ConcurrentMap(tree);
+
+		// a first run, so that the timed ones aren't slowed down by warming up
+		run(map, maxThreads);
+		for(int threadCount = 1; threadCount <= maxThreads; threadCount *= 2) {
+			long operations = run(map, threadCount);
+			System.out.println(threadCount + " threads: " +
+					operations * 1000 / DURATION_MILLIS + " operations per second");
+		}
+	}
+
+	/** Runs threadCount threads against the map for DURATION_MILLIS.
+	 *
+	 * @return The number of operations done by all the threads together.
+	 */
+	private static long run(final Map map, int threadCount) throws InterruptedException {
+		final long[] counts = new long[threadCount];
+		Thread[] threads = new Thread[threadCount];
+		running = true;
+		for(int i = 0; i < threadCount; ++i) {
+			final int index = i;
+			threads[i] = new Thread() {
+				public void run() {
+					Random random = new Random(index);
+					long count = 0;
+					while(running) {
+						Integer key = new Integer((random.nextInt() >>> 1) % KEY_COUNT);
+						if((random.nextInt() >>> 1) % 100 < PUT_PERCENTAGE)
+							map.put(key, key);
+						else
+							map.get(key);
+						++count;
+					}
+					counts[index] = count;
+				}
+			};
+			threads[i].start();
+		}
+
+		Thread.sleep(DURATION_MILLIS);
+		running = false;
+		long result = 0;
+		for(int i = 0; i < threadCount; ++i) {
+			threads[i].join();
+			result += counts[i];
+		}
+		return result;
+	}
+}
@@ -0,0 +1,102 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds.benchmark;
+
+import java.util.Random;
+
+import net.joaosilva.j2meds.BinaryTree;
+import net.joaosilva.j2meds.Comparators;
+import net.joaosilva.j2meds.ConcurrentMap;
+import net.joaosilva.j2meds.ConcurrentSkipListMap;
+import net.joaosilva.j2meds.Map;
+
+/** Compares the throughput of a {@link ConcurrentSkipListMap} with that of a
+ *  balanced {@link BinaryTree} in a {@link ConcurrentMap}, as the number of
+ *  threads using them grows, with a write heavy workload.
+ *
+ *  Run it with the largest thread count to try and, optionally, the percentage
+ *  of operations which change the map, half puts and half removes; by default,
+ *  8 threads and 50%. It prints the operations per second of each map for 1,
+ *  2, 4... threads, up to that count.
+ */
+public class ConcurrentSkipListMapBenchmark {
+	private static final int KEY_COUNT = 100000;
+	private static final long DURATION_MILLIS = 2000;
+
+	private static volatile boolean running;
+
+	public static void main(String[] args) throws InterruptedException {
+		int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		int writePercentage = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+		Map[] maps = { new ConcurrentSkipListMap(Comparators.INTEGER),
+				new ConcurrentMap(new BinaryTree(Comparators.INTEGER, BinaryTree.BALANCED)) };
+		String[] names = { "ConcurrentSkipListMap", "ConcurrentMap(BinaryTree)" };
+
+		for(int map = 0; map < maps.length; ++map) {
+			// half the keys are in the map, so that puts and removes both find work
+			for(int i = 0; i < KEY_COUNT; i += 2)
+				maps[map].put(new Integer(i), new Integer(i));
+			// a first run, so that the timed ones aren't slowed down by warming up
+			run(maps[map], maxThreads, writePercentage);
+			for(int threadCount = 1; threadCount <= maxThreads; threadCount *= 2) {
+				long operations = run(maps[map], threadCount, writePercentage);
+				System.out.println(names[map] + ", " + threadCount + " threads: " +
+						operations * 1000 / DURATION_MILLIS + " operations per second");
+			}
+		}
+	}
+
+	/** Runs threadCount threads against the map for DURATION_MILLIS.
+	 *
+	 * @return The number of operations done by all the threads together.
+	 */
+	private static long run(final Map map, int threadCount, final int writePercentage)
+			throws InterruptedException {
+		final long[] counts = new long[threadCount];
+		Thread[] threads = new Thread[threadCount];
+		running = true;
+		for(int i = 0; i < threadCount; ++i) {
+			final int index = i;
+			threads[i] = new Thread() {
+				public void run() {
+					Random random = new Random(index);
+					long count = 0;
+					while(running) {
+						Integer key = new Integer((random.nextInt() >>> 1) % KEY_COUNT);
+						int operation = (random.nextInt() >>> 1) % 100;
+						if(operation < writePercentage / 2)
+							map.put(key, key);
+						else if(operation < writePercentage)
+							map.remove(key);
+						else
+							map.get(key);
+						++count;
+					}
+					counts[index] = count;
+				}
+			};
+			threads[i].start();
+		}
+
+		Thread.sleep(DURATION_MILLIS);
+		running = false;
+		long result = 0;
+		for(int i = 0; i < threadCount; ++i) {
+			threads[i].join();
+			result += counts[i];
+		}
+		return result;
+	}
+}
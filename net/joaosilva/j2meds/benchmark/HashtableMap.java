@@ -0,0 +1,89 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds.benchmark;
+
+import java.util.Enumeration;
+import java.util.Hashtable;
+
+import net.joaosilva.j2meds.Comparator;
+import net.joaosilva.j2meds.InvalidOperationException;
+import net.joaosilva.j2meds.Map;
+import net.joaosilva.j2meds.MapIterator;
+
+/** Lets a java.util.Hashtable, the only map CLDC has, be benchmarked like the
+ *  maps in this library. Only the methods the benchmarks use are supported.
+ */
+class HashtableMap implements Map {
+	private Hashtable table = new Hashtable();
+	private Comparator comparator;
+
+	public HashtableMap(Comparator keyComparator) {
+		this.comparator = keyComparator;
+	}
+
+	public void clear() {
+		table.clear();
+	}
+
+	public boolean containsKey(Object key) {
+		return table.containsKey(key);
+	}
+
+	public Object get(Object key) {
+		return table.get(key);
+	}
+
+	public boolean isEmpty() {
+		return table.isEmpty();
+	}
+
+	public Object put(Object key, Object value) {
+		return table.put(key, value);
+	}
+
+	public void putAll(Map other) {
+		throw new InvalidOperationException("Not supported");
+	}
+
+	public Object remove(Object key) {
+		return table.remove(key);
+	}
+
+	public int size() {
+		return table.size();
+	}
+
+	public Comparator getKeyComparator() {
+		return comparator;
+	}
+
+	public MapIterator iterator() {
+		final Enumeration keys = table.keys();
+		return new MapIterator() {
+			public boolean hasNext() {
+				return keys.hasMoreElements();
+			}
+
+			public Map.Entry next() {
+				Object key = keys.nextElement();
+				return new Map.Entry(key, table.get(key));
+			}
+
+			public void remove() {
+				throw new InvalidOperationException("Not supported");
+			}
+		};
+	}
+}
@@ -0,0 +1,254 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds.benchmark;
+
+import java.util.Random;
+
+import net.joaosilva.j2meds.BTreeMap;
+import net.joaosilva.j2meds.BinaryTree;
+import net.joaosilva.j2meds.Comparator;
+import net.joaosilva.j2meds.Comparators;
+import net.joaosilva.j2meds.Map;
+import net.joaosilva.j2meds.MapIterator;
+
+/** Measures put, get, iteration and remove on the maps in this library and on
+ *  java.util.Hashtable, for every key type in {@link Comparators}, several key
+ *  distributions and several sizes.
+ *
+ *  Run it with the sizes to try as arguments; by default, 1000, 10000 and
+ *  100000. Larger sizes, up to 10000000, need a desktop VM with a big heap.
+ *  Each line of the output is tab separated, with these columns:
+ *  <ul>
+ *  <li>map, key type, distribution, size and operation;</li>
+ *  <li>nanoseconds per operation, with the precision currentTimeMillis allows;</li>
+ *  <li>bytes allocated per operation, or -1 if the garbage collector ran while
+ *  measuring, which makes it unknown. These come from Runtime.freeMemory, which
+ *  desktop VMs only update a block at a time, so they're rough there;</li>
+ *  <li>for put, the bytes the map takes per entry once filled.</li>
+ *  </ul>
+ *
+ *  The operations are repeated until they took at least MIN_MILLIS altogether,
+ *  after WARMUP_CYCLES untimed runs.
+ */
+public class MapBenchmark {
+	private static final long MIN_MILLIS = 500;
+	private static final int WARMUP_CYCLES = 2;
+	/** Unbalanced trees fed sorted keys take quadratic time, so they're skipped above this size. */
+	private static final int MAX_DEGENERATE_SIZE = 10000;
+
+	private static final String[] TYPES = { "String", "Integer", "Short", "Long",
+			"Double", "Float" };
+	private static final Comparator[] COMPARATORS = { Comparators.STRING,
+			Comparators.INTEGER, Comparators.SHORT, Comparators.LONG, Comparators.DOUBLE,
+			Comparators.FLOAT };
+
+	private static final int RANDOM = 0;
+	private static final int SORTED = 1;
+	/** 90% of the operations go to the lowest 10% of the keys. */
+	private static final int SKEWED = 2;
+	private static final String[] DISTRIBUTIONS = { "random", "sorted", "skewed" };
+
+	private static final String[] MAPS = { "BinaryTree", "BinaryTree balanced",
+			"BTreeMap", "Hashtable" };
+
+	private static final int PUT = 0;
+	private static final int GET = 1;
+	private static final int ITERATE = 2;
+	private static final int REMOVE = 3;
+	private static final String[] OPERATIONS = { "put", "get", "iterate", "remove" };
+
+	private static Runtime runtime = Runtime.getRuntime();
+
+	public static void main(String[] args) {
+		int[] sizes = { 1000, 10000, 100000 };
+		if(args.length > 0) {
+			sizes = new int[args.length];
+			for(int i = 0; i < args.length; ++i)
+				sizes[i] = Integer.parseInt(args[i]);
+		}
+
+		System.out.println("map\ttype\tdistribution\tsize\toperation\tns/op\tbytes/op\tbytes/entry");
+		for(int s = 0; s < sizes.length; ++s) {
+			for(int type = 0; type < TYPES.length; ++type) {
+				// there are only 65536 shorts
+				if(type == 2 && sizes[s] > 65536)
+					continue;
+				Object[] keys = createKeys(type, sizes[s]);
+				for(int distribution = 0; distribution < DISTRIBUTIONS.length; ++distribution) {
+					Object[] sequence = createSequence(keys, distribution);
+					for(int map = 0; map < MAPS.length; ++map) {
+						if(map == 0 && distribution != RANDOM && sizes[s] > MAX_DEGENERATE_SIZE)
+							continue;
+						run(createMap(map, COMPARATORS[type]), sequence,
+								MAPS[map] + "\t" + TYPES[type] + "\t" +
+								DISTRIBUTIONS[distribution] + "\t" + sizes[s]);
+					}
+				}
+			}
+		}
+	}
+
+	private static Map createMap(int map, Comparator comparator) {
+		switch(map) {
+		case 0:
+			return new BinaryTree(comparator);
+		case 1:
+			return new BinaryTree(comparator, BinaryTree.BALANCED);
+		case 2:
+			return new BTreeMap(comparator);
+		default:
+			return new HashtableMap(comparator);
+		}
+	}
+
+	/** Creates count distinct keys of a type, in ascending order. */
+	private static Object[] createKeys(int type, int count) {
+		Object[] keys = new Object[count];
+		StringBuffer buffer = new StringBuffer();
+		for(int i = 0; i < count; ++i) {
+			switch(type) {
+			case 0:
+				// zero padded, so that the strings sort like the numbers
+				buffer.setLength(0);
+				buffer.append(i);
+				while(buffer.length() < 8)
+					buffer.insert(0, '0');
+				keys[i] = buffer.toString();
+				break;
+			case 1:
+				keys[i] = new Integer(i);
+				break;
+			case 2:
+				keys[i] = new Short((short)(i - 32768));
+				break;
+			case 3:
+				keys[i] = new Long(i * 1000003L);
+				break;
+			case 4:
+				keys[i] = new Double(i / 3.0);
+				break;
+			default:
+				keys[i] = new Float(i);
+				break;
+			}
+		}
+		return keys;
+	}
+
+	/** Returns the order in which the keys are put, looked up and removed. */
+	private static Object[] createSequence(Object[] keys, int distribution) {
+		Object[] sequence = new Object[keys.length];
+		Random random = new Random(keys.length);
+		if(distribution == SKEWED) {
+			int hotCount = keys.length / 10 + 1;
+			for(int i = 0; i < sequence.length; ++i) {
+				int index = (random.nextInt() >>> 1) % 10 < 9 ?
+						(random.nextInt() >>> 1) % hotCount :
+						(random.nextInt() >>> 1) % keys.length;
+				sequence[i] = keys[index];
+			}
+			return sequence;
+		}
+
+		System.arraycopy(keys, 0, sequence, 0, keys.length);
+		if(distribution == RANDOM) {
+			for(int i = sequence.length - 1; i > 0; --i) {
+				int j = (random.nextInt() >>> 1) % (i + 1);
+				Object swap = sequence[i];
+				sequence[i] = sequence[j];
+				sequence[j] = swap;
+			}
+		}
+		return sequence;
+	}
+
+	private static long usedMemory() {
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/** Runs cycles of put, get, iterate and remove over the whole sequence, and
+	 *  prints the results for each operation.
+	 *
+	 *  Memory is measured in the first cycle after warming up, with a garbage
+	 *  collection before each operation. That would slow the timed cycles down
+	 *  too much, so they're all run after it.
+	 */
+	private static void run(Map map, Object[] sequence, String description) {
+		long[] millis = new long[OPERATIONS.length];
+		long[] operations = new long[OPERATIONS.length];
+		long[] bytesPerOperation = new long[OPERATIONS.length];
+		long bytesPerEntry = 0;
+		Object value = new Object();
+		for(int cycle = 0; cycle <= WARMUP_CYCLES || millis[PUT] + millis[GET] +
+				millis[ITERATE] + millis[REMOVE] < MIN_MILLIS; ++cycle) {
+			boolean measuringMemory = cycle == WARMUP_CYCLES;
+			boolean timing = cycle > WARMUP_CYCLES;
+			for(int operation = 0; operation < OPERATIONS.length; ++operation) {
+				long usedBefore = 0;
+				if(measuringMemory) {
+					System.gc();
+					usedBefore = usedMemory();
+				}
+				long start = System.currentTimeMillis();
+				switch(operation) {
+				case PUT:
+					for(int i = 0; i < sequence.length; ++i)
+						map.put(sequence[i], value);
+					break;
+				case GET:
+					for(int i = 0; i < sequence.length; ++i)
+						map.get(sequence[i]);
+					break;
+				case ITERATE:
+					MapIterator it = map.iterator();
+					while(it.hasNext())
+						it.next();
+					break;
+				default:
+					for(int i = 0; i < sequence.length; ++i)
+						map.remove(sequence[i]);
+					break;
+				}
+				long elapsed = System.currentTimeMillis() - start;
+				int count = operation == ITERATE ? map.size() : sequence.length;
+				if(timing) {
+					millis[operation] += elapsed;
+					operations[operation] += count;
+				}
+				if(measuringMemory) {
+					long usedAfter = usedMemory();
+					// if the collector ran, the memory used may have gone down instead of up
+					bytesPerOperation[operation] = usedAfter < usedBefore || count == 0 ? -1 :
+							(usedAfter - usedBefore) / count;
+					if(operation == PUT && map.size() > 0) {
+						System.gc();
+						bytesPerEntry = (usedMemory() - usedBefore) / map.size();
+					}
+				}
+			}
+		}
+
+		for(int operation = 0; operation < OPERATIONS.length; ++operation) {
+			StringBuffer line = new StringBuffer(description);
+			line.append('\t').append(OPERATIONS[operation]);
+			line.append('\t').append(operations[operation] == 0 ? 0 :
+					millis[operation] * 1000000 / operations[operation]);
+			line.append('\t').append(bytesPerOperation[operation]);
+			if(operation == PUT)
+				line.append('\t').append(bytesPerEntry);
+			System.out.println(line.toString());
+		}
+	}
+}
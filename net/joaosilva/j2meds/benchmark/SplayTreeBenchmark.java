@@ -0,0 +1,150 @@
+/*    Copyright 2013 Joo Miguel Ferreira da Silva
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package net.joaosilva.j2meds.benchmark;
+
+import java.util.Random;
+
+import net.joaosilva.j2meds.BinaryTree;
+import net.joaosilva.j2meds.Comparators;
+import net.joaosilva.j2meds.Map;
+import net.joaosilva.j2meds.SplayTree;
+
+/** Compares {@link SplayTree} with the unbalanced and balanced {@link BinaryTree}
+ *  when looking up keys that follow a Zipf distribution, where the key ranked
+ *  k is looked up with a probability proportional to 1/k, and with uniformly
+ *  random lookups for reference.
+ *
+ *  The keys are Integers put in random order, so the unbalanced tree is only
+ *  as deep as a random tree, and the ranks are given to the keys at random too,
+ *  so that the most used keys aren't also neighbours. Zipf distributions with
+ *  other exponents would need Math.pow, which CLDC lacks.
+ *
+ *  Run it with the sizes to try as arguments; by default, 1000, 10000 and
+ *  100000. Each line of the output has the map, the size, the distribution and
+ *  the nanoseconds per get, tab separated, measured over at least MIN_MILLIS
+ *  after WARMUP_CYCLES untimed runs.
+ */
+public class SplayTreeBenchmark {
+	private static final long MIN_MILLIS = 500;
+	private static final int WARMUP_CYCLES = 2;
+	/** How many lookups are done in each cycle, for every key in the map. */
+	private static final int LOOKUPS_PER_KEY = 10;
+
+	private static final String[] MAPS = { "SplayTree", "BinaryTree", "BinaryTree balanced" };
+	private static final String[] DISTRIBUTIONS = { "zipf", "uniform" };
+
+	public static void main(String[] args) {
+		int[] sizes = { 1000, 10000, 100000 };
+		if(args.length > 0) {
+			sizes = new int[args.length];
+			for(int i = 0; i < args.length; ++i)
+				sizes[i] = Integer.parseInt(args[i]);
+		}
+
+		System.out.println("map\tsize\tdistribution\tns/get");
+		for(int s = 0; s < sizes.length; ++s) {
+			Random random = new Random(sizes[s]);
+			Object[] keys = new Object[sizes[s]];
+			for(int i = 0; i < keys.length; ++i)
+				keys[i] = new Integer(i);
+			shuffle(keys, random);
+
+			for(int distribution = 0; distribution < DISTRIBUTIONS.length; ++distribution) {
+				Object[] lookups = distribution == 0 ? createZipfLookups(keys, random) :
+						createUniformLookups(keys, random);
+				for(int map = 0; map < MAPS.length; ++map) {
+					Map m = createMap(map);
+					for(int i = 0; i < keys.length; ++i)
+						m.put(keys[i], keys[i]);
+					System.out.println(MAPS[map] + "\t" + sizes[s] + "\t" +
+							DISTRIBUTIONS[distribution] + "\t" + run(m, lookups));
+				}
+			}
+		}
+	}
+
+	private static Map createMap(int map) {
+		switch(map) {
+		case 0:
+			return new SplayTree(Comparators.INTEGER);
+		case 1:
+			return new BinaryTree(Comparators.INTEGER);
+		default:
+			return new BinaryTree(Comparators.INTEGER, BinaryTree.BALANCED);
+		}
+	}
+
+	private static void shuffle(Object[] array, Random random) {
+		for(int i = array.length - 1; i > 0; --i) {
+			int j = (random.nextInt() >>> 1) % (i + 1);
+			Object swap = array[i];
+			array[i] = array[j];
+			array[j] = swap;
+		}
+	}
+
+	/** Returns lookups of keys, where keys[k] is ranked k + 1. */
+	private static Object[] createZipfLookups(Object[] keys, Random random) {
+		// cumulative[k] is the probability of picking one of the first k + 1 keys
+		double[] cumulative = new double[keys.length];
+		double total = 0;
+		for(int k = 0; k < keys.length; ++k) {
+			total += 1.0 / (k + 1);
+			cumulative[k] = total;
+		}
+		for(int k = 0; k < keys.length; ++k)
+			cumulative[k] /= total;
+
+		Object[] lookups = new Object[keys.length * LOOKUPS_PER_KEY];
+		for(int i = 0; i < lookups.length; ++i) {
+			double p = random.nextDouble();
+			// finds the first rank whose cumulative probability is above p
+			int low = 0;
+			int high = keys.length - 1;
+			while(low < high) {
+				int middle = (low + high) >>> 1;
+				if(cumulative[middle] > p)
+					high = middle;
+				else
+					low = middle + 1;
+			}
+			lookups[i] = keys[low];
+		}
+		return lookups;
+	}
+
+	private static Object[] createUniformLookups(Object[] keys, Random random) {
+		Object[] lookups = new Object[keys.length * LOOKUPS_PER_KEY];
+		for(int i = 0; i < lookups.length; ++i)
+			lookups[i] = keys[(random.nextInt() >>> 1) % keys.length];
+		return lookups;
+	}
+
+	/** Returns the nanoseconds each lookup took on average. */
+	private static long run(Map map, Object[] lookups) {
+		long millis = 0;
+		long operations = 0;
+		for(int cycle = 0; cycle < WARMUP_CYCLES || millis < MIN_MILLIS; ++cycle) {
+			long start = System.currentTimeMillis();
+			for(int i = 0; i < lookups.length; ++i)
+				map.get(lookups[i]);
+			if(cycle >= WARMUP_CYCLES) {
+				millis += System.currentTimeMillis() - start;
+				operations += lookups.length;
+			}
+		}
+		return millis * 1000000 / operations;
+	}
+}